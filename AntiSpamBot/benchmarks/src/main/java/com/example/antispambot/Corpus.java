@@ -0,0 +1,128 @@
+package com.example.antispambot;
+
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Синтетические корпуса для бенчмарков. Генерация детерминирована (фиксированное зерно),
+ * поэтому результаты разных сборок сравнимы.
+ */
+final class Corpus {
+    private static final String LATIN = "abcdefghijklmnopqrstuvwxyz";
+    private static final String CYRILLIC = "абвгдеёжзийклмнопрстуфхцчшщъыьэюя";
+    // Подмены, которыми спамеры маскируют слова
+    private static final String OBFUSCATE_FROM = "aeoicl";
+    private static final String OBFUSCATE_TO = "@30!с1";
+
+    /**
+     * Тип сообщений в корпусе.
+     */
+    enum Kind {
+        LATIN, CYRILLIC, OBFUSCATED, LONG
+    }
+
+    private Corpus() {
+    }
+
+    /**
+     * Список запрещённых слов заданного размера (латиница и кириллица вперемешку).
+     */
+    static List<String> bannedWords(int size, long seed) {
+        Random random = new Random(seed);
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            String alphabet = random.nextBoolean() ? LATIN : CYRILLIC;
+            words.add(word(random, alphabet, 5 + random.nextInt(8)));
+        }
+        return new ArrayList<>(words);
+    }
+
+    /**
+     * Сообщения заданного типа. Небольшая доля обфусцированных сообщений содержит слова из списка.
+     */
+    static String[] messages(Kind kind, int count, List<String> banned, long seed) {
+        Random random = new Random(seed);
+        String[] messages = new String[count];
+        for (int i = 0; i < count; i++) {
+            switch (kind) {
+                case LATIN:
+                    messages[i] = sentence(random, LATIN, 6 + random.nextInt(10));
+                    break;
+                case CYRILLIC:
+                    messages[i] = capitalize(sentence(random, CYRILLIC, 6 + random.nextInt(10))) + ", ок?";
+                    break;
+                case OBFUSCATED:
+                    String bait = banned.get(random.nextInt(banned.size()));
+                    messages[i] = sentence(random, LATIN, 3) + " " + obfuscate(random, bait) + "!!! "
+                            + sentence(random, LATIN, 3);
+                    break;
+                default:
+                    messages[i] = sentence(random, random.nextBoolean() ? LATIN : CYRILLIC, 300);
+                    break;
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Обновление с текстовым сообщением от указанного пользователя.
+     */
+    static Update update(String text, long userId, long chatId) {
+        User user = new User();
+        user.setId(userId);
+        Chat chat = new Chat();
+        chat.setId(chatId);
+        Message message = new Message();
+        message.setMessageId(1);
+        message.setText(text);
+        message.setChat(chat);
+        message.setFrom(user);
+        Update update = new Update();
+        update.setMessage(message);
+        return update;
+    }
+
+    private static String sentence(Random random, String alphabet, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(word(random, alphabet, 2 + random.nextInt(9)));
+        }
+        return sb.toString();
+    }
+
+    private static String word(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String obfuscate(Random random, String word) {
+        StringBuilder sb = new StringBuilder(word.length() * 2);
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            int index = OBFUSCATE_FROM.indexOf(c);
+            sb.append(index >= 0 && random.nextBoolean() ? OBFUSCATE_TO.charAt(index) : Character.toUpperCase(c));
+            if (random.nextInt(5) == 0) {
+                sb.append('.');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String capitalize(String s) {
+        return s.isEmpty() ? s : Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+}
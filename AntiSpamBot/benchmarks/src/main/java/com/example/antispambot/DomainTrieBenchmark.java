@@ -0,0 +1,70 @@
+package com.example.antispambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка ссылок в сообщениях по списку доменов разного размера: время проверки
+ * не должно зависеть от размера списка.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class DomainTrieBenchmark {
+    private static final int MESSAGES = 1024;
+    private static final String[] ZONES = {"com", "net", "org", "ru", "io", "info", "xyz", "top"};
+
+    @Param({"1000", "1000000"})
+    public int domains;
+
+    private DomainTrie trie;
+    // Сообщения со ссылками: половина на домены из списка, половина на случайные
+    private String[] messages;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        trie = new DomainTrie(domains);
+        String[] listed = new String[domains];
+        for (int i = 0; i < domains; i++) {
+            listed[i] = randomDomain(random);
+            trie.add(i % 10 == 0 ? "*." + listed[i] : listed[i]);
+        }
+        messages = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            String domain = i % 2 == 0 ? listed[random.nextInt(domains)] : randomDomain(random);
+            messages[i] = "Лучшие предложения недели, подробнее по ссылке https://" + domain
+                    + "/offer?id=" + i + " и в нашем канале";
+        }
+    }
+
+    @Benchmark
+    public boolean containsBlocked() {
+        return LinkExtractor.containsBlocked(messages[next++ & (MESSAGES - 1)], trie);
+    }
+
+    private static String randomDomain(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = 5 + random.nextInt(10);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.append('.').append(ZONES[random.nextInt(ZONES.length)]).toString();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.antispambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение слов с запрещённым списком: проверка расстояния Левенштейна для одной пары
+ * и поиск по индексам (Ахо — Корасик и симметричное удаление) при разных размерах списка.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FuzzyMatchBenchmark {
+    private static final int TOKENS = 1024;
+
+    @Param({"10", "1000", "100000"})
+    public int bannedSize;
+
+    private List<String> banned;
+    private AhoCorasickMatcher matcher;
+    private FuzzyMatcher fuzzy;
+    // Нормализованные токены: половина похожа на запрещённые слова, половина случайна
+    private String[] tokens;
+    private final int[] row = new int[64];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        banned = Corpus.bannedWords(bannedSize, 1);
+        matcher = AhoCorasickMatcher.compile(banned);
+        fuzzy = FuzzyMatcher.compile(banned);
+        String[] obfuscated = Corpus.messages(Corpus.Kind.OBFUSCATED, TOKENS / 2, banned, 3);
+        String[] plain = Corpus.messages(Corpus.Kind.CYRILLIC, TOKENS / 2, banned, 4);
+        tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS / 2; i++) {
+            tokens[2 * i] = longestToken(obfuscated[i]);
+            tokens[2 * i + 1] = longestToken(plain[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean withinDistance() {
+        int i = next++ & (TOKENS - 1);
+        String token = tokens[i];
+        String word = banned.get(i % banned.size());
+        return FuzzyMatcher.withinDistance(token, 0, token.length(), word, FuzzyMatcher.MAX_DISTANCE, row);
+    }
+
+    @Benchmark
+    public boolean exactMatch() {
+        return matcher.containsAny(tokens[next++ & (TOKENS - 1)]);
+    }
+
+    @Benchmark
+    public boolean fuzzyMatch() {
+        return fuzzy.matches(tokens[next++ & (TOKENS - 1)]);
+    }
+
+    private static String longestToken(String message) {
+        NormalizedText normalized = TextNormalizer.normalize(message);
+        int best = 0;
+        for (int t = 1; t < normalized.tokenCount(); t++) {
+            if (normalized.tokenEnd(t) - normalized.tokenStart(t)
+                    > normalized.tokenEnd(best) - normalized.tokenStart(best)) {
+                best = t;
+            }
+        }
+        return normalized.subSequence(normalized.tokenStart(best), normalized.tokenEnd(best)).toString();
+    }
+}
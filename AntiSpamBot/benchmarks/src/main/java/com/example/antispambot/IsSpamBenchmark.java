@@ -0,0 +1,91 @@
+package com.example.antispambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Полная проверка сообщения через {@link SpamFilterService#isSpam(Update)}: частота, повторы,
+ * нормализация и поиск запрещённых слов. Каждый вызов идёт от нового пользователя, чтобы
+ * проверка частоты не отсекала сообщения раньше поиска слов. Текстов всего {@value #MESSAGES},
+ * поэтому с кэшем вердиктов ({@code verdictCache > 0}) измеряются в основном попадания в кэш,
+ * а без него — сам поиск слов.
+ * <p>
+ * Масштабирование по потокам: запуски с разными {@code -t} в командной строке JMH
+ * или вариант {@link #isSpamAllThreads()}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IsSpamBenchmark {
+    private static final int MESSAGES = 1024;
+
+    @Param({"10", "1000", "100000"})
+    public int bannedSize;
+
+    @Param({"LATIN", "CYRILLIC", "OBFUSCATED", "LONG"})
+    public String kind;
+
+    @Param({"0", "65536"})
+    public int verdictCache;
+
+    private SpamFilterService service;
+    private String[] messages;
+    private final AtomicLong threadCounter = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        List<String> banned = Corpus.bannedWords(bannedSize, 1);
+        service = new SpamFilterService(new UserStateStore(1_000_000, 60));
+        service.addBannedWords(banned);
+        service.setVerdictCacheSize(verdictCache);
+        messages = Corpus.messages(Corpus.Kind.valueOf(kind), MESSAGES, banned, 5);
+    }
+
+    @Benchmark
+    public boolean isSpam(Sender sender) {
+        return check(sender);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean isSpamAllThreads(Sender sender) {
+        return check(sender);
+    }
+
+    private boolean check(Sender sender) {
+        long user = sender.nextUser++;
+        Update update = Corpus.update(messages[(int) user & (MESSAGES - 1)], user, -100L - (user & 63));
+        return service.isSpam(update);
+    }
+
+    /**
+     * Счётчик пользователей своего потока: общий атомарный счётчик исказил бы масштабирование.
+     */
+    @State(Scope.Thread)
+    public static class Sender {
+        long nextUser;
+
+        @Setup
+        public void setUp(IsSpamBenchmark benchmark) {
+            nextUser = (benchmark.threadCounter.incrementAndGet() << 40) + 1;
+        }
+    }
+}
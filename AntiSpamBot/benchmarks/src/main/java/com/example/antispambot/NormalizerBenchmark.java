@@ -0,0 +1,58 @@
+package com.example.antispambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нормализация текста: отдельное слово (публичный normalizeWord) и сообщение целиком
+ * с разбиением на токены, как это делает isSpam.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NormalizerBenchmark {
+    private static final int MESSAGES = 1024;
+
+    @Param({"LATIN", "CYRILLIC", "OBFUSCATED", "LONG"})
+    public String kind;
+
+    private String[] messages;
+    private String[] words;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        messages = Corpus.messages(Corpus.Kind.valueOf(kind), MESSAGES, Corpus.bannedWords(100, 1), 2);
+        words = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            String message = messages[i];
+            int space = message.indexOf(' ', message.length() / 2);
+            words[i] = space < 0 ? message : message.substring(space + 1, Math.min(message.length(), space + 16));
+        }
+    }
+
+    @Benchmark
+    public String normalizeWord() {
+        return SpamFilterService.normalizeWord(words[next++ & (MESSAGES - 1)]);
+    }
+
+    @Benchmark
+    public int normalizeMessage() {
+        NormalizedText normalized = TextNormalizer.normalize(messages[next++ & (MESSAGES - 1)]);
+        return normalized.tokenCount();
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.antispambot;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Неизменяемый автомат Ахо–Корасик для поиска любого из множества шаблонов в тексте за один проход.
+ * Переходы хранятся в плоских массивах (CSR: для каждого состояния — отсортированный диапазон рёбер),
+ * поэтому поиск не выделяет память и не требует блокировок.
+ */
+final class AhoCorasickMatcher {
+    // Для состояния s рёбра лежат в диапазоне [edgeStart[s], edgeStart[s + 1]), отсортированы по символу
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    // Суффиксные (fail) ссылки
+    private final int[] fail;
+    // true, если в состоянии заканчивается шаблон (с учётом цепочки fail-ссылок)
+    private final boolean[] accepting;
+    // Шаблон, который заканчивается в состоянии (индекс в patterns), или -1
+    private final int[] patternAt;
+    // Ближайшее по цепочке fail-ссылок состояние, в котором заканчивается шаблон, или -1
+    private final int[] outputLink;
+    private final String[] patterns;
+
+    private AhoCorasickMatcher(int[] edgeStart, char[] edgeChars, int[] edgeTargets,
+                               int[] fail, boolean[] accepting, int[] patternAt, int[] outputLink,
+                               String[] patterns) {
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.accepting = accepting;
+        this.patternAt = patternAt;
+        this.outputLink = outputLink;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Строит автомат по набору шаблонов. Пустой шаблон (как и {@code String.contains("")})
+     * совпадает с любым текстом.
+     *
+     * @param patterns шаблоны для поиска
+     * @return скомпилированный автомат
+     */
+    static AhoCorasickMatcher compile(Collection<String> patterns) {
+        String[] sorted = patterns.toArray(new String[0]);
+        Arrays.sort(sorted);
+        int n = 0;
+        int totalLength = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || !sorted[i].equals(sorted[n - 1])) {
+                sorted[n++] = sorted[i];
+                totalLength += sorted[i].length();
+            }
+        }
+
+        // Каждое состояние соответствует диапазону [lo, hi) отсортированных шаблонов с общим префиксом
+        // длины depth. Дети нумеруются по мере обхода, поэтому нумерация совпадает с порядком BFS.
+        int maxStates = totalLength + 1;
+        int[] lo = new int[maxStates];
+        int[] hi = new int[maxStates];
+        int[] depth = new int[maxStates];
+        int[] terminal = new int[maxStates];
+        Arrays.fill(terminal, -1);
+        int[] edgeStart = new int[maxStates + 1];
+        char[] edgeChars = new char[maxStates];
+        int[] edgeTargets = new int[maxStates];
+
+        int states = 1;
+        int edges = 0;
+        hi[0] = n;
+        for (int node = 0; node < states; node++) {
+            edgeStart[node] = edges;
+            int d = depth[node];
+            int i = lo[node];
+            // Шаблон, равный префиксу, при сортировке идёт раньше своих продолжений
+            while (i < hi[node] && sorted[i].length() == d) {
+                terminal[node] = i;
+                i++;
+            }
+            while (i < hi[node]) {
+                char c = sorted[i].charAt(d);
+                int j = i + 1;
+                while (j < hi[node] && sorted[j].charAt(d) == c) {
+                    j++;
+                }
+                int child = states++;
+                lo[child] = i;
+                hi[child] = j;
+                depth[child] = d + 1;
+                edgeChars[edges] = c;
+                edgeTargets[edges] = child;
+                edges++;
+                i = j;
+            }
+        }
+        edgeStart[states] = edges;
+
+        int[] fail = new int[states];
+        boolean[] accepting = new boolean[states];
+        int[] outputLink = new int[states];
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(
+                Arrays.copyOf(edgeStart, states + 1),
+                Arrays.copyOf(edgeChars, edges),
+                Arrays.copyOf(edgeTargets, edges),
+                fail, accepting, Arrays.copyOf(terminal, states), outputLink, Arrays.copyOf(sorted, n));
+
+        accepting[0] = terminal[0] >= 0;
+        outputLink[0] = -1;
+        for (int node = 0; node < states; node++) {
+            for (int e = edgeStart[node]; e < edgeStart[node + 1]; e++) {
+                int child = edgeTargets[e];
+                int target = 0;
+                if (node != 0) {
+                    int f = fail[node];
+                    while (true) {
+                        int t = matcher.next(f, edgeChars[e]);
+                        if (t >= 0) {
+                            target = t;
+                            break;
+                        }
+                        if (f == 0) {
+                            break;
+                        }
+                        f = fail[f];
+                    }
+                }
+                fail[child] = target;
+                accepting[child] = terminal[child] >= 0 || accepting[target];
+                outputLink[child] = terminal[target] >= 0 ? target : outputLink[target];
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * @return true, если строка содержит хотя бы один из шаблонов как подстроку
+     */
+    boolean containsAny(CharSequence text) {
+        return containsAny(text, 0, text.length());
+    }
+
+    /**
+     * Проверяет фрагмент [from, to) текста на вхождение любого из шаблонов.
+     *
+     * @return true, если фрагмент содержит хотя бы один из шаблонов как подстроку
+     */
+    boolean containsAny(CharSequence text, int from, int to) {
+        if (accepting[0]) {
+            return true;
+        }
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            int t;
+            while ((t = next(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = t < 0 ? 0 : t;
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Проверяет фрагмент [from, to) текста на вхождение любого из шаблонов, кроме исключённых.
+     * Исключения проверяются только при совпадении, поэтому поиск без совпадений стоит столько же,
+     * сколько {@link #containsAny(CharSequence, int, int)}.
+     *
+     * @param excluded шаблоны, вхождения которых не учитываются
+     */
+    boolean containsAny(CharSequence text, int from, int to, Set<String> excluded) {
+        if (excluded.isEmpty()) {
+            return containsAny(text, from, to);
+        }
+        if (accepting[0] && hasAllowed(0, excluded)) {
+            return true;
+        }
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            int t;
+            while ((t = next(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = t < 0 ? 0 : t;
+            if (accepting[state] && hasAllowed(state, excluded)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Отмечает все шаблоны, которые входят во фрагмент [from, to) текста.
+     *
+     * @param matched отметки по номерам шаблонов в порядке сортировки (длиной не меньше {@link #size()})
+     */
+    void markMatches(CharSequence text, int from, int to, boolean[] matched) {
+        markOutputs(0, matched);
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            int t;
+            while ((t = next(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = t < 0 ? 0 : t;
+            if (accepting[state]) {
+                markOutputs(state, matched);
+            }
+        }
+    }
+
+    private void markOutputs(int state, boolean[] matched) {
+        for (int s = patternAt[state] >= 0 ? state : outputLink[state]; s >= 0; s = outputLink[s]) {
+            matched[patternAt[s]] = true;
+        }
+    }
+
+    // Заканчивается ли в состоянии (с учётом цепочки fail-ссылок) неисключённый шаблон
+    private boolean hasAllowed(int state, Set<String> excluded) {
+        for (int s = patternAt[state] >= 0 ? state : outputLink[state]; s >= 0; s = outputLink[s]) {
+            if (!excluded.contains(patterns[patternAt[s]])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return количество различных шаблонов в автомате
+     */
+    int size() {
+        return patterns.length;
+    }
+
+    // Переход по символу c из состояния state или -1, если ребра нет
+    private int next(int state, char c) {
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char m = edgeChars[mid];
+            if (m < c) {
+                low = mid + 1;
+            } else if (m > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+}
@@ -2,15 +2,17 @@ package com.example.antispambot;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.bots.AbsSender;
 import java.util.*;
 
 /**
@@ -22,14 +24,195 @@ public class AntiSpamBot extends TelegramLongPollingBot {
 
     private static final Logger logger = LoggerFactory.getLogger(AntiSpamBot.class);
     private final BotConfig config = BotConfig.getInstance();
-    private final SpamFilterService spamService = new SpamFilterService();
+    // Общие для ботов процесса движок фильтра и планировщик исходящих вызовов
+    private final BotHost host;
+    // Имя бота в параметре bots (пустое, если бот один) и его имя пользователя (null — из bot.username);
+    // токен хранит родительский класс (см. botToken)
+    private final String name;
+    private final String username;
+    // Состояние пользователей (включая режим редактирования) с вытеснением неактивных
+    private final UserStateStore userStates = new UserStateStore(
+            config.getIntProperty("userstate.maxUsers", SpamFilterService.DEFAULT_MAX_USERS),
+            config.getIntProperty("userstate.ttlSeconds", SpamFilterService.DEFAULT_USER_TTL_SECONDS));
+    // Счётчики правил и задержки этапов (команда /status и HTTP-эндпоинт для Prometheus)
+    private final Metrics metrics = new Metrics();
+    private final SpamFilterService spamService;
+    // Пользователи, которым разрешено обучать классификатор командами /spam и /ham
+    private final Set<Long> trainerIds = parseUserIds(config.getProperty("classifier.trainerIds"));
+    // Сохранение счётчиков спама бота между перезапусками (null, если не настроено); общий список слов
+    // и правила чатов сохраняет BotHost
+    private final PersistentState persistence;
+    // Применение параметров, которые меняются без перезапуска
+    private final Runnable configReloadListener = this::applyReloadableConfig;
+    // Больше слов в настройках не показываем: сообщение Telegram ограничено 4096 символами
+    private static final int MAX_LISTED_WORDS = 50;
+    // Сколько слов показывать в каждом списке отчёта /shadow
+    private static final int MAX_SHADOW_WORDS = 15;
 
-    // Состояния редактирования списка запрещённых слов для каждого пользователя
+    // Состояния редактирования списка запрещённых слов (хранятся как режим пользователя, NONE = NO_MODE)
     private enum EditState { NONE, WAITING_FOR_ADD, WAITING_FOR_REMOVE }
-    private final Map<Long, EditState> editingStates = new HashMap<>();
+
+    // Параллельная обработка обновлений с сохранением порядка внутри каждого чата
+    private final UpdateDispatcher dispatcher =
+            new UpdateDispatcher(config.getIntProperty("processing.workers", 0), this::processUpdate, metrics);
+
+    // Пропуск дорогих проверок, когда обработка отстаёт от входящего потока
+    private final LoadShedder loadShedder = new LoadShedder(metrics);
+
+    // Исходящие вызовы Telegram API: асинхронно, с учётом лимитов и повторами
+    private final OutboundActionQueue outbound;
+    // Ограничение и блокировка пользователей, которые продолжают спамить
+    private final EscalationEngine escalation;
+
+    public AntiSpamBot() {
+        this(new BotHost(BotConfig.getInstance()), "", null, null, null);
+    }
+
+    /**
+     * Отдельный бот для прогона без Telegram со своими общими ресурсами: состояние не сохраняется,
+     * модель классификатора не перезаписывается, сервер метрик не запускается (см. {@link BotHost#offline}).
+     *
+     * @param outboundSender кому отправлять исходящие вызовы вместо Telegram (например, {@link FakeTelegramBackend})
+     */
+    AntiSpamBot(AbsSender outboundSender) {
+        // Прогон без Telegram токен не использует, поэтому bot.token может быть не задан
+        this(BotHost.offline(BotConfig.getInstance()), "", null, "offline", outboundSender);
+    }
+
+    /**
+     * @param host     общие ресурсы ботов процесса
+     * @param name     имя бота в параметре bots или пустая строка, если бот один
+     * @param username имя бота или null, чтобы взять bot.username
+     * @param token    токен бота или null, чтобы взять bot.token
+     */
+    AntiSpamBot(BotHost host, String name, String username, String token, AbsSender outboundSender) {
+        super(createBotOptions(), botToken(token));
+        this.host = host;
+        this.name = name;
+        this.username = username;
+        spamService = new SpamFilterService(host.getEngine(), userStates, metrics, new RaidDetector(
+                config.getIntProperty("raid.threshold", SpamFilterService.DEFAULT_RAID_THRESHOLD),
+                config.getIntProperty("raid.windowSeconds", SpamFilterService.DEFAULT_RAID_WINDOW_SECONDS),
+                config.getIntProperty("raid.windowMessages", SpamFilterService.DEFAULT_RAID_WINDOW_MESSAGES),
+                config.getIntProperty("raid.maxDistance", RaidDetector.DEFAULT_MAX_DISTANCE),
+                config.getIntProperty("raid.maxChats", SpamFilterService.DEFAULT_RAID_MAX_CHATS)));
+        outbound = new OutboundActionQueue(outboundSender != null ? outboundSender : this,
+                config.getIntProperty("outbound.maxPending", 10000),
+                config.getIntProperty("outbound.globalPerSecond", 30),
+                config.getIntProperty("outbound.groupPerMinute", 20),
+                config.getIntProperty("outbound.privatePerSecond", 1),
+                metrics, host.getOutboundScheduler());
+        escalation = new EscalationEngine(outbound, metrics);
+        spamService.setRaidListener(escalation);
+        spamService.setLoadShedder(loadShedder);
+        dispatcher.setLoadShedder(loadShedder);
+        persistence = host.openUserState(name, spamService, userStates);
+        applyReloadableConfig();
+        config.addReloadListener(configReloadListener);
+        host.register(this, name);
+    }
+
+    // Параметры, которые перечитываются при изменении внешнего файла конфигурации
+    private void applyReloadableConfig() {
+        spamService.setSpamThreshold(config.getIntProperty("spam.threshold", SpamFilterService.SPAM_THRESHOLD));
+        spamService.setFloodIntervalMillis(config.getIntProperty("spam.floodIntervalMillis",
+                (int) SpamFilterService.DEFAULT_FLOOD_INTERVAL_MILLIS));
+        String revoke = config.getProperty("escalation.revokeMessages");
+        escalation.configure(
+                config.getIntProperty("escalation.muteAfter", spamService.getSpamThreshold()),
+                config.getIntProperty("escalation.banAfter", 0),
+                config.getIntProperty("escalation.muteMinutes", 60),
+                revoke == null || revoke.trim().isEmpty() || Boolean.parseBoolean(revoke.trim()),
+                EscalationEngine.Sanction.parse(config.getProperty("escalation.raidSanction"),
+                        EscalationEngine.Sanction.NONE));
+        loadShedder.configure(
+                config.getIntProperty("load.reducePending", 1000),
+                config.getIntProperty("load.reduceLagMillis", 2000),
+                config.getIntProperty("load.minimalPending", 5000),
+                config.getIntProperty("load.minimalLagMillis", 10000));
+    }
+
+    private static Set<Long> parseUserIds(String value) {
+        Set<Long> ids = new HashSet<>();
+        if (value != null) {
+            for (String id : value.split(",")) {
+                if (!id.trim().isEmpty()) {
+                    try {
+                        ids.add(Long.parseLong(id.trim()));
+                    } catch (NumberFormatException e) {
+                        logger.error("Некорректный идентификатор пользователя в classifier.trainerIds: '{}'", id);
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    // Потоки HTTP-клиента, на которых выполняются асинхронные вызовы executeAsync
+    private static DefaultBotOptions createBotOptions() {
+        DefaultBotOptions options = new DefaultBotOptions();
+        options.setMaxThreads(BotConfig.getInstance().getIntProperty("outbound.httpThreads", 8));
+        return options;
+    }
+
+    Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return имя бота в параметре bots или пустая строка, если бот один
+     */
+    String getName() {
+        return name;
+    }
 
     @Override
     public void onUpdateReceived(Update update) {
+        long received = System.nanoTime();
+        if (dropSanctioned(update)) {
+            // Отброшенное обновление обработано при приёме: без замера его не досчитался бы UpdateReplayer
+            metrics.recordLatency(Metrics.Stage.UPDATE, System.nanoTime() - received);
+            return;
+        }
+        dispatcher.dispatch(update);
+    }
+
+    // Сообщения, которые наказанный пользователь успел отправить до применения ограничения,
+    // удаляются без проверки фильтром и без места в очереди обработки
+    private boolean dropSanctioned(Update update) {
+        if (!update.hasMessage() || update.getMessage().getFrom() == null) {
+            return false;
+        }
+        Message message = update.getMessage();
+        EscalationEngine.Sanction sanction = escalation.activeSanction(
+                message.getChatId(), message.getFrom().getId(), System.currentTimeMillis());
+        if (sanction == EscalationEngine.Sanction.NONE) {
+            return false;
+        }
+        metrics.messageDropped();
+        // При блокировке с отзывом сообщений Telegram удалит их сам
+        if (!escalation.revokesMessages(sanction)) {
+            DeleteMessage deleteMessage = new DeleteMessage();
+            deleteMessage.setChatId(String.valueOf(message.getChatId()));
+            deleteMessage.setMessageId(message.getMessageId());
+            outbound.submit(message.getChatId(), deleteMessage);
+        }
+        return true;
+    }
+
+    @Override
+    public void onClosing() {
+        config.removeReloadListener(configReloadListener);
+        dispatcher.close();
+        if (persistence != null) {
+            persistence.close();
+        }
+        outbound.close();
+        host.unregister(this);
+        super.onClosing();
+    }
+
+    private void processUpdate(Update update) {
         if (update.hasCallbackQuery()) {
             processCallbackQuery(update);
             return;
@@ -41,7 +224,7 @@ public class AntiSpamBot extends TelegramLongPollingBot {
             logger.info("Получено сообщение: '{}' от пользователя: {}", messageText, userId);
 
             // Если пользователь находится в режиме редактирования запрещённых слов, обрабатываем ввод
-            if (editingStates.getOrDefault(userId, EditState.NONE) != EditState.NONE) {
+            if (getEditState(userId) != EditState.NONE) {
                 processEditingInput(update);
                 return;
             }
@@ -49,9 +232,11 @@ public class AntiSpamBot extends TelegramLongPollingBot {
             if (messageText.startsWith("/")) {
                 processCommand(update);
             } else {
-                if (spamService.isSpam(update)) {
-                    deleteSpamMessage(update);
+                Metrics.Rule rule = spamService.check(update);
+                if (rule != null) {
+                    deleteSpamMessage(update, rule);
                     int spamCount = spamService.getSpamCount(userId);
+                    escalation.escalate(chatId, userId, System.currentTimeMillis());
                   //  sendTextMessage(chatId, "Пожалуйста, не спамьте! (" + spamCount + " предупреждение)");
                 }
             }
@@ -71,14 +256,46 @@ public class AntiSpamBot extends TelegramLongPollingBot {
             case "/status":
                 sendTextMessage(chatId, spamService.getStatus());
                 break;
+            case "/shadow":
+                ShadowEvaluator shadow = spamService.getEngine().getShadow();
+                sendTextMessage(chatId, shadow == null
+                        ? "Теневой список не задан (параметр shadow.wordsFile)." : shadow.report(MAX_SHADOW_WORDS));
+                break;
             case "/editbanned":
                 sendEditBannedMenu(chatId);
                 break;
+            case "/spam":
+            case "/ham":
+                processFeedback(update, command.equals("/spam"));
+                break;
             default:
                 sendTextMessage(chatId, "Неизвестная команда. Используйте /help для получения списка команд.");
         }
     }
 
+    // Отзыв администратора ответом на сообщение: /spam — удалить и обучить как спам, /ham — как обычное
+    private void processFeedback(Update update, boolean spam) {
+        Message message = update.getMessage();
+        long chatId = message.getChatId();
+        if (!trainerIds.contains(message.getFrom().getId())) {
+            sendTextMessage(chatId, "Обучать фильтр могут только пользователи из classifier.trainerIds.");
+            return;
+        }
+        Message target = message.getReplyToMessage();
+        if (target == null || !target.hasText()) {
+            sendTextMessage(chatId, "Отправьте команду ответом на текстовое сообщение.");
+            return;
+        }
+        spamService.learn(target.getText(), spam);
+        if (spam) {
+            DeleteMessage deleteMessage = new DeleteMessage();
+            deleteMessage.setChatId(String.valueOf(chatId));
+            deleteMessage.setMessageId(target.getMessageId());
+            outbound.submit(chatId, deleteMessage);
+        }
+        sendTextMessage(chatId, spam ? "Сообщение отмечено как спам." : "Сообщение отмечено как не спам.");
+    }
+
     // Обработка callback-запросов от inline-кнопок
     private void processCallbackQuery(Update update) {
         CallbackQuery callbackQuery = update.getCallbackQuery();
@@ -91,24 +308,22 @@ public class AntiSpamBot extends TelegramLongPollingBot {
                     "/start - Приветствие\n" +
                     "/help - Список команд\n" +
                     "/status - Статистика\n" +
-                    "/editbanned - Редактировать запрещённые слова");
+                    "/shadow - Отчёт теневой проверки списка-кандидата\n" +
+                    "/editbanned - Редактировать запрещённые слова\n" +
+                    "/spam, /ham - Отметить сообщение (ответом на него) для обучения фильтра");
         } else if (data.equals("show_settings")) {
             sendSettings(chatId);
         } else if (data.equals("edit_add")) {
-            editingStates.put(userId, EditState.WAITING_FOR_ADD);
+            setEditState(userId, EditState.WAITING_FOR_ADD);
             sendTextMessage(chatId, "Введите слово, которое хотите добавить в список запрещённых:");
         } else if (data.equals("edit_remove")) {
-            editingStates.put(userId, EditState.WAITING_FOR_REMOVE);
+            setEditState(userId, EditState.WAITING_FOR_REMOVE);
             sendTextMessage(chatId, "Введите слово, которое хотите удалить из списка запрещённых:");
         }
 
         AnswerCallbackQuery answer = new AnswerCallbackQuery();
         answer.setCallbackQueryId(callbackQuery.getId());
-        try {
-            execute(answer);
-        } catch (TelegramApiException e) {
-            logger.error("Ошибка при отправке ответа на callback: ", e);
-        }
+        outbound.submit(chatId, answer);
     }
 
     // Обработка ввода пользователя в режиме редактирования списка запрещённых слов
@@ -116,19 +331,33 @@ public class AntiSpamBot extends TelegramLongPollingBot {
         long chatId = update.getMessage().getChatId();
         long userId = update.getMessage().getFrom().getId();
         String input = update.getMessage().getText().trim();
-        EditState state = editingStates.getOrDefault(userId, EditState.NONE);
+        EditState state = getEditState(userId);
+        // В группах правится список этого чата, в личной переписке с ботом — общий список
+        boolean groupChat = chatId < 0;
         if (state == EditState.WAITING_FOR_ADD) {
-            spamService.addBannedWord(input);
-            sendTextMessage(chatId, "Слово '" + input + "' добавлено в список запрещённых.");
+            boolean added = groupChat ? spamService.addBannedWord(chatId, input) : spamService.addBannedWord(input);
+            if (added) {
+                sendTextMessage(chatId, "Слово '" + input + "' добавлено в список запрещённых.");
+            } else {
+                sendTextMessage(chatId, "Слово '" + input + "' не добавлено: оно уже есть в списке или не содержит букв и цифр.");
+            }
         } else if (state == EditState.WAITING_FOR_REMOVE) {
-            boolean removed = spamService.removeBannedWord(input);
+            boolean removed = groupChat ? spamService.removeBannedWord(chatId, input) : spamService.removeBannedWord(input);
             if (removed) {
                 sendTextMessage(chatId, "Слово '" + input + "' удалено из списка запрещённых.");
             } else {
                 sendTextMessage(chatId, "Слово '" + input + "' не найдено в списке запрещённых.");
             }
         }
-        editingStates.put(userId, EditState.NONE);
+        setEditState(userId, EditState.NONE);
+    }
+
+    private EditState getEditState(long userId) {
+        return EditState.values()[userStates.getMode(userId)];
+    }
+
+    private void setEditState(long userId, EditState state) {
+        userStates.setMode(userId, state.ordinal(), System.currentTimeMillis());
     }
 
     private void sendHelpMessage(long chatId) {
@@ -136,7 +365,9 @@ public class AntiSpamBot extends TelegramLongPollingBot {
                 "/start - Приветственное сообщение\n" +
                 "/help - Список команд\n" +
                 "/status - Статистика работы бота\n" +
-                "/editbanned - Редактировать список запрещённых слов";
+                "/shadow - Отчёт теневой проверки списка-кандидата\n" +
+                "/editbanned - Редактировать список запрещённых слов\n" +
+                "/spam, /ham - Ответом на сообщение: обучить фильтр (спам / не спам)";
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
         List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
 
@@ -159,12 +390,20 @@ public class AntiSpamBot extends TelegramLongPollingBot {
 
     private void sendSettings(long chatId) {
         String settingsText = "Настройки анти-спам фильтра:\n" +
-                "Порог предупреждений: " + SpamFilterService.SPAM_THRESHOLD + "\n" +
-                "Запрещённые слова: " + spamService.getBannedWords() + "\n" +
-                "Время между сообщениями: 2000 мс";
+                "Порог предупреждений: " + spamService.getSpamThreshold() + "\n" +
+                "Запрещённые слова: " + formatBannedWords(spamService.getBannedWords(chatId)) + "\n" +
+                "Время между сообщениями: " + spamService.getFloodIntervalMillis() + " мс";
         sendTextMessage(chatId, settingsText);
     }
 
+    // Большие списки (из файлов) целиком в сообщение не помещаются
+    private String formatBannedWords(Set<String> words) {
+        if (words.size() <= MAX_LISTED_WORDS) {
+            return words.toString();
+        }
+        return words.size() + " (из файлов списков " + spamService.getListWordCount() + ")";
+    }
+
     private void sendEditBannedMenu(long chatId) {
         String text = "Редактирование списка запрещённых слов. Выберите действие:";
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
@@ -198,42 +437,39 @@ public class AntiSpamBot extends TelegramLongPollingBot {
         if (markup != null) {
             message.setReplyMarkup(markup);
         }
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            logger.error("Ошибка отправки сообщения: ", e);
-        }
+        outbound.submit(chatId, message);
     }
 
-    private void deleteSpamMessage(Update update) {
+    private void deleteSpamMessage(Update update, Metrics.Rule rule) {
         long chatId = update.getMessage().getChatId();
         int messageId = update.getMessage().getMessageId();
         DeleteMessage deleteMessage = new DeleteMessage();
         deleteMessage.setChatId(String.valueOf(chatId));
         deleteMessage.setMessageId(messageId);
-        try {
-            execute(deleteMessage);
+        // Ошибки (после исчерпания повторов) журналирует очередь
+        String text = update.getMessage().getText();
+        outbound.submit(chatId, deleteMessage).thenRun(() -> {
             logger.info("Сообщение с id {} удалено из чата {}", messageId, chatId);
-        } catch (TelegramApiException e) {
-            logger.error("Ошибка при удалении сообщения с id {}: ", messageId, e);
-        }
+            // Удаление подтверждено: дообучаем классификатор
+            spamService.spamDeleted(text, rule);
+        });
     }
 
     @Override
     public String getBotUsername() {
-        String botUsername = config.getProperty("bot.username");
+        String botUsername = username != null ? username : config.getProperty("bot.username");
         if (botUsername == null || botUsername.trim().isEmpty()) {
             throw new RuntimeException("bot.username не задан в конфигурации.");
         }
         return botUsername;
     }
 
-    @Override
-    public String getBotToken() {
-        String token = config.getProperty("bot.token");
-        if (token == null || token.trim().isEmpty()) {
+    // Токен передаётся родительскому классу в конструкторе, поэтому проверяется сразу
+    private static String botToken(String token) {
+        String botToken = token != null ? token : BotConfig.getInstance().getProperty("bot.token");
+        if (botToken == null || botToken.trim().isEmpty()) {
             throw new RuntimeException("bot.token не задан в конфигурации.");
         }
-        return token;
+        return botToken;
     }
 }
\ No newline at end of file
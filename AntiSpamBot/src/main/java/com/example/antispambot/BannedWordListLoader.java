@@ -0,0 +1,143 @@
+package com.example.antispambot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Загрузка запрещённых слов из файлов списков (по слову на строку, комментарии после {@code #}).
+ * <p>
+ * Файлы читаются и автомат собирается в отдельном фоновом потоке, а готовый список публикуется
+ * в {@link SpamFilterEngine#setListWords} одной подменой ссылки: обработка сообщений загрузку не ждёт
+ * и до её окончания работает с прежним списком. Если какой-то файл не прочитан, остаётся прежний
+ * список целиком. Файлы отслеживаются и перечитываются при изменении; запросы, пришедшие во время
+ * загрузки, схлопываются в одну следующую загрузку.
+ */
+final class BannedWordListLoader implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BannedWordListLoader.class);
+
+    private final SpamFilterEngine engine;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final boolean watch;
+    // Создаётся при первом файле списка
+    private FileWatcher watcher;
+    private volatile List<Path> files = Collections.emptyList();
+    // Загруженные файлы и их время изменения и размер; только в потоке загрузки
+    private List<Path> loadedFiles = Collections.emptyList();
+    private List<String> loadedStamps = Collections.emptyList();
+
+    /**
+     * @param watch отслеживать ли изменения файлов
+     */
+    BannedWordListLoader(SpamFilterEngine engine, boolean watch) {
+        this.engine = engine;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "banned-words-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watch = watch;
+    }
+
+    /**
+     * Задаёт файлы списков и запускает загрузку, если файлы или их содержимое изменились.
+     *
+     * @return загрузка (для ожидания в тестах)
+     */
+    synchronized Future<?> setFiles(List<Path> files) {
+        this.files = Collections.unmodifiableList(new ArrayList<>(files));
+        if (watch) {
+            for (Path file : files) {
+                try {
+                    if (watcher == null) {
+                        watcher = new FileWatcher("banned-words-watcher");
+                    }
+                    watcher.watch(file, this::reload);
+                } catch (IOException e) {
+                    logger.error("Не удалось отслеживать файл {}: ", file, e);
+                }
+            }
+        }
+        return reload();
+    }
+
+    /**
+     * Перечитывает текущие файлы списков в фоне.
+     */
+    Future<?> reload() {
+        long request = requests.incrementAndGet();
+        return executor.submit(() -> load(request));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            watcher.close();
+        }
+        executor.shutdownNow();
+    }
+
+    private void load(long request) {
+        // Пока ждали очереди, пришёл ещё запрос: загрузим один раз по нему
+        if (request != requests.get()) {
+            return;
+        }
+        List<Path> current = files;
+        List<String> stamps = new ArrayList<>();
+        Set<String> words = new HashSet<>();
+        long started = System.nanoTime();
+        try {
+            for (Path file : current) {
+                stamps.add(Files.getLastModifiedTime(file).toMillis() + ":" + Files.size(file));
+            }
+            if (current.equals(loadedFiles) && stamps.equals(loadedStamps)) {
+                return;
+            }
+            for (Path file : current) {
+                read(file, words);
+            }
+        } catch (IOException e) {
+            logger.error("Списки запрещённых слов {} не прочитаны, остаётся прежний список: ", current, e);
+            return;
+        }
+        long read = System.nanoTime();
+        engine.setListWords(words);
+        loadedFiles = current;
+        loadedStamps = stamps;
+        logger.info("Загружено слов из файлов списков: {} (чтение {} мс, сборка автомата {} мс)",
+                engine.getListWordCount(), TimeUnit.NANOSECONDS.toMillis(read - started),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - read));
+    }
+
+    /**
+     * Добавляет в {@code words} слова файла списка.
+     */
+    static void read(Path file, Set<String> words) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                String word = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.antispambot;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Неизменяемый снимок списка запрещённых слов и построенных по нему индексов: общего списка
+ * или собственных слов чата (см. {@link ChatRuleSets}).
+ */
+final class BannedWords {
+    final Set<String> words;
+    final AhoCorasickMatcher matcher;
+    final FuzzyMatcher fuzzy;
+
+    private BannedWords(Set<String> words, AhoCorasickMatcher matcher, FuzzyMatcher fuzzy) {
+        this.words = words;
+        this.matcher = matcher;
+        this.fuzzy = fuzzy;
+    }
+
+    /**
+     * @param words нормализованные слова; набор не должен меняться после вызова
+     */
+    static BannedWords of(Set<String> words) {
+        return new BannedWords(Collections.unmodifiableSet(words),
+                AhoCorasickMatcher.compile(words), FuzzyMatcher.compile(words));
+    }
+}
@@ -4,19 +4,61 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Класс для загрузки конфигурационных параметров из файла config.properties.
+ * <p>
+ * Кроме файла из classpath можно указать внешний файл системным свойством
+ * {@code -Dconfig.file=/путь/config.properties}: его значения заменяют значения из classpath.
+ * Внешний файл отслеживается (см. {@link #startWatching()}) и перечитывается при изменении:
+ * новый набор параметров читается целиком и подменяет старый одной записью, поэтому параметры
+ * никогда не видны наполовину обновлёнными. Если файл не читается, остаются прежние значения.
  */
 public class BotConfig {
     private static final Logger logger = LoggerFactory.getLogger(BotConfig.class);
+    private static final String CONFIG_FILE_PROPERTY = "config.file";
     private static BotConfig instance;
-    private Properties properties;
+    // Значения из classpath; параметры внешнего файла читаются поверх них
+    private final Properties defaults;
+    private final Path externalFile;
+    private volatile Properties properties;
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    private FileWatcher watcher;
 
     private BotConfig() {
-        properties = new Properties();
-        try (InputStream input = getClass().getClassLoader().getResourceAsStream("config.properties")) {
+        this(loadClasspathConfig(), externalConfigFile());
+    }
+
+    /**
+     * @param externalFile внешний файл параметров или null
+     */
+    BotConfig(Properties defaults, Path externalFile) {
+        this.defaults = defaults;
+        this.externalFile = externalFile;
+        if (externalFile == null) {
+            properties = defaults;
+            return;
+        }
+        try {
+            properties = readExternal();
+            logger.info("Загружена внешняя конфигурация {}", externalFile);
+        } catch (IOException | IllegalArgumentException ex) {
+            logger.error("Ошибка загрузки конфигурации {}: ", externalFile, ex);
+            throw new RuntimeException("Ошибка загрузки конфигурации " + externalFile, ex);
+        }
+    }
+
+    private static Properties loadClasspathConfig() {
+        Properties properties = new Properties();
+        try (InputStream input = BotConfig.class.getClassLoader().getResourceAsStream("config.properties")) {
             if (input == null) {
                 logger.error("Файл config.properties не найден!");
                 throw new RuntimeException("Файл config.properties не найден!");
@@ -27,6 +69,12 @@ public class BotConfig {
             logger.error("Ошибка загрузки конфигурации: ", ex);
             throw new RuntimeException("Ошибка загрузки конфигурации", ex);
         }
+        return properties;
+    }
+
+    private static Path externalConfigFile() {
+        String file = System.getProperty(CONFIG_FILE_PROPERTY);
+        return file == null || file.trim().isEmpty() ? null : Paths.get(file.trim());
     }
 
     public static synchronized BotConfig getInstance() {
@@ -36,7 +84,97 @@ public class BotConfig {
         return instance;
     }
 
+    /**
+     * Значение параметра. Системное свойство с тем же именем ({@code -Dkey=value}) имеет приоритет
+     * над файлом: так параметры можно переопределить при запуске, не пересобирая jar.
+     */
     public String getProperty(String key) {
-        return properties.getProperty(key);
+        String override = System.getProperty(key);
+        return override != null ? override : properties.getProperty(key);
+    }
+
+    /**
+     * Возвращает целочисленный параметр или значение по умолчанию, если параметр не задан.
+     */
+    public int getIntProperty(String key, int defaultValue) {
+        String value = getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.error("Некорректное значение параметра {}: '{}', используется {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Добавляет обработчик, который вызывается после каждого перечитывания внешнего файла
+     * (в потоке наблюдения за файлом).
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    public void removeReloadListener(Runnable listener) {
+        reloadListeners.remove(listener);
+    }
+
+    /**
+     * Начинает отслеживать внешний файл параметров. Без внешнего файла ничего не делает.
+     */
+    public synchronized void startWatching() {
+        if (externalFile == null || watcher != null) {
+            return;
+        }
+        try {
+            watcher = new FileWatcher("config-watcher");
+            watcher.watch(externalFile, this::reload);
+            logger.info("Изменения конфигурации {} применяются без перезапуска", externalFile);
+        } catch (IOException e) {
+            logger.error("Не удалось отслеживать файл конфигурации {}: ", externalFile, e);
+        }
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Перечитывает внешний файл и уведомляет обработчики.
+     *
+     * @return false, если файл не прочитан и остались прежние значения
+     */
+    boolean reload() {
+        if (externalFile == null) {
+            return false;
+        }
+        try {
+            properties = readExternal();
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Конфигурация {} не перечитана, остаются прежние значения: ", externalFile, e);
+            return false;
+        }
+        logger.info("Конфигурация {} перечитана", externalFile);
+        for (Runnable listener : reloadListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                logger.error("Ошибка при применении новой конфигурации: ", e);
+            }
+        }
+        return true;
+    }
+
+    private Properties readExternal() throws IOException {
+        Properties loaded = new Properties(defaults);
+        try (Reader reader = Files.newBufferedReader(externalFile, StandardCharsets.UTF_8)) {
+            loaded.load(reader);
+        }
+        return loaded;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,323 @@
+package com.example.antispambot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Общие ресурсы ботов одного процесса.
+ * <p>
+ * Параметр {@code bots} перечисляет имена ботов, для каждого задаются {@code bot.<имя>.username}
+ * и {@code bot.<имя>.token}. Все боты используют один {@link SpamFilterEngine} (списки слов
+ * и скомпилированные автоматы хранятся в памяти один раз и загружаются при запуске один раз),
+ * один планировщик исходящих вызовов и один сервер метрик. Общий список слов и правила чатов
+ * сохраняются в корне {@code persistence.dir} и восстанавливаются один раз на все боты.
+ * Состояние пользователей (его счётчики спама сохраняются в подкаталоге бота), обнаружение
+ * рейдов, наказания, статистика и лимиты Telegram у каждого бота свои.
+ * Без параметра {@code bots} работает один бот с {@code bot.username} и {@code bot.token}.
+ * <p>
+ * Общие ресурсы освобождаются, когда закрывается последний бот.
+ * <p>
+ * Для прогона без Telegram ({@link #offline}) рабочие файлы и порты не используются: состояние
+ * не сохраняется, модель классификатора только читается, сервер метрик не запускается.
+ */
+final class BotHost {
+    private static final Logger logger = LoggerFactory.getLogger(BotHost.class);
+    // Подкаталог persistence.dir со счётчиками бота, если бот один
+    private static final String SINGLE_BOT_DIRECTORY = "bot";
+
+    private final BotConfig config;
+    private final SpamFilterEngine engine = new SpamFilterEngine();
+    // Один поток отправки на все боты; лимиты у каждого бота свои (см. OutboundActionQueue)
+    private final ScheduledExecutorService outboundScheduler = OutboundActionQueue.newScheduler();
+    // Фоновая загрузка файлов списков запрещённых слов (bannedWords.files)
+    private final BannedWordListLoader bannedWordLists = new BannedWordListLoader(engine, true);
+    // Классификатор по содержимому сообщений и файл его модели (null, если не настроены)
+    private final NaiveBayesClassifier classifier;
+    private final Path classifierModel;
+    private final MetricsServer metricsServer;
+    // Сохранение общего списка слов и правил чатов (null, если состояние не сохраняется)
+    private final PersistentState sharedState;
+    // Прогон без Telegram: не писать в рабочие файлы и не занимать порт метрик
+    private final boolean offline;
+    // Применение общих параметров, которые меняются без перезапуска
+    private final Runnable configReloadListener = this::applyReloadableConfig;
+    // Файл теневого списка, его время изменения и размер и доля выборки; только под блокировкой this
+    private String shadowStamp = "";
+    // Работающие боты; защищено блокировкой this
+    private final List<AntiSpamBot> bots = new ArrayList<>();
+    private boolean closed;
+
+    BotHost(BotConfig config) {
+        this(config, false);
+    }
+
+    private BotHost(BotConfig config, boolean offline) {
+        this.config = config;
+        this.offline = offline;
+        String modelFile = config.getProperty("classifier.modelFile");
+        classifierModel = modelFile == null || modelFile.trim().isEmpty() ? null : Paths.get(modelFile.trim());
+        engine.setVerdictCacheSize(
+                config.getIntProperty("cache.verdicts", SpamFilterEngine.DEFAULT_VERDICT_CACHE_SIZE));
+        classifier = openClassifier();
+        loadBlockedDomains();
+        sharedState = openSharedState();
+        applyReloadableConfig();
+        config.addReloadListener(configReloadListener);
+        metricsServer = offline ? null : startMetricsServer();
+    }
+
+    /**
+     * Общие ресурсы для прогона без Telegram (см. {@link UpdateReplayer}) с рабочей конфигурацией:
+     * прогон не должен менять сохранённое состояние и модель классификатора рабочего бота.
+     */
+    static BotHost offline(BotConfig config) {
+        return new BotHost(config, true);
+    }
+
+    /**
+     * Создаёт ботов, перечисленных в параметре {@code bots}, или одного бота, если параметр не задан.
+     *
+     * @param outboundSender кому отправлять исходящие вызовы вместо Telegram; null — самим ботам
+     */
+    List<AntiSpamBot> createBots(AbsSender outboundSender) {
+        List<AntiSpamBot> created = new ArrayList<>();
+        Set<String> names = parseNames(config.getProperty("bots"));
+        if (names.isEmpty()) {
+            created.add(new AntiSpamBot(this, "", null, null, outboundSender));
+            return created;
+        }
+        for (String name : names) {
+            String username = config.getProperty("bot." + name + ".username");
+            String token = config.getProperty("bot." + name + ".token");
+            if (username == null || username.trim().isEmpty() || token == null || token.trim().isEmpty()) {
+                throw new RuntimeException("Для бота " + name + " не заданы bot." + name + ".username и bot."
+                        + name + ".token");
+            }
+            created.add(new AntiSpamBot(this, name, username.trim(), token.trim(), outboundSender));
+        }
+        logger.info("Запущено ботов с общим фильтром: {}", created.size());
+        return created;
+    }
+
+    private static Set<String> parseNames(String value) {
+        Set<String> names = new LinkedHashSet<>();
+        if (value != null) {
+            for (String name : value.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    names.add(name.trim());
+                }
+            }
+        }
+        return names;
+    }
+
+    SpamFilterEngine getEngine() {
+        return engine;
+    }
+
+    ScheduledExecutorService getOutboundScheduler() {
+        return outboundScheduler;
+    }
+
+    /**
+     * Восстанавливает счётчики спама бота из его подкаталога {@code persistence.dir} и начинает их сохранять.
+     *
+     * @param name имя бота в параметре bots или пустая строка, если бот один
+     * @return сохранение счётчиков или null, если состояние не сохраняется
+     */
+    PersistentState openUserState(String name, SpamFilterService service, UserStateStore users) {
+        Path root = persistenceRoot();
+        if (root == null) {
+            return null;
+        }
+        return openState(root.resolve(name.isEmpty() ? SINGLE_BOT_DIRECTORY : name), null, service, users);
+    }
+
+    // Корень persistence.dir или null, если состояние не сохраняется
+    private Path persistenceRoot() {
+        String dir = config.getProperty("persistence.dir");
+        if (offline || dir == null || dir.trim().isEmpty()) {
+            return null;
+        }
+        return Paths.get(dir.trim());
+    }
+
+    // Общий список слов и правила чатов сохраняются в корне persistence.dir
+    private PersistentState openSharedState() {
+        Path root = persistenceRoot();
+        return root == null ? null : openState(root, engine, null, null);
+    }
+
+    private PersistentState openState(Path dir, SpamFilterEngine shared, SpamFilterService service,
+                                      UserStateStore users) {
+        long flushMillis = config.getIntProperty("persistence.flushMillis", 200);
+        long compactBytes = config.getIntProperty("persistence.compactMegabytes", 64) * 1024L * 1024L;
+        try {
+            return shared != null ? PersistentState.openShared(dir, shared, flushMillis, compactBytes)
+                    : PersistentState.openUsers(dir, service, users, flushMillis, compactBytes);
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось открыть каталог состояния " + dir, e);
+        }
+    }
+
+    /**
+     * Вызывается ботом после создания: его метрики становятся доступны на сервере метрик.
+     */
+    synchronized void register(AntiSpamBot bot, String name) {
+        bots.add(bot);
+        if (metricsServer != null) {
+            metricsServer.add(name.isEmpty() ? MetricsServer.PATH : MetricsServer.PATH + "/" + name, bot.getMetrics());
+        }
+    }
+
+    /**
+     * Вызывается ботом при остановке; с последним ботом освобождаются общие ресурсы.
+     */
+    void unregister(AntiSpamBot bot) {
+        synchronized (this) {
+            bots.remove(bot);
+            if (!bots.isEmpty() || closed) {
+                return;
+            }
+            closed = true;
+        }
+        config.removeReloadListener(configReloadListener);
+        bannedWordLists.close();
+        if (sharedState != null) {
+            sharedState.close();
+        }
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+        if (classifier != null && classifierModel != null && !offline) {
+            try {
+                classifier.save(classifierModel);
+            } catch (IOException e) {
+                logger.error("Не удалось сохранить модель классификатора: ", e);
+            }
+        }
+        ShadowEvaluator shadow = engine.getShadow();
+        if (shadow != null) {
+            engine.setShadow(null);
+            shadow.close();
+        }
+        outboundScheduler.shutdownNow();
+    }
+
+    // Общие параметры, которые перечитываются при изменении внешнего файла конфигурации
+    private void applyReloadableConfig() {
+        List<Path> files = new ArrayList<>();
+        String value = config.getProperty("bannedWords.files");
+        if (value != null) {
+            for (String file : value.split(",")) {
+                if (!file.trim().isEmpty()) {
+                    files.add(Paths.get(file.trim()));
+                }
+            }
+        }
+        bannedWordLists.setFiles(files);
+        configureShadow();
+    }
+
+    // Теневой список перечитывается, только если изменились файл или доля выборки: иначе статистика сбрасывалась бы
+    private synchronized void configureShadow() {
+        String file = config.getProperty("shadow.wordsFile");
+        int percent = config.getIntProperty("shadow.samplePercent", 5);
+        Path path = file == null || file.trim().isEmpty() ? null : Paths.get(file.trim());
+        ShadowEvaluator next = null;
+        String stamp = "";
+        if (path != null) {
+            Set<String> words = new LinkedHashSet<>();
+            try {
+                stamp = path + ":" + Files.getLastModifiedTime(path).toMillis() + ":" + Files.size(path) + ":" + percent;
+                if (stamp.equals(shadowStamp)) {
+                    return;
+                }
+                BannedWordListLoader.read(path, words);
+            } catch (IOException e) {
+                logger.error("Теневой список {} не прочитан, остаётся прежний: ", path, e);
+                return;
+            }
+            next = new ShadowEvaluator(words, Math.max(0, Math.min(100, percent)) / 100.0);
+            logger.info("Теневая проверка: слов {}, выборка {}%", words.size(), percent);
+        } else if (shadowStamp.isEmpty()) {
+            return;
+        }
+        ShadowEvaluator previous = engine.getShadow();
+        engine.setShadow(next);
+        shadowStamp = stamp;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    // Классификатор включается параметром classifier.enabled; модель читается из classifier.modelFile
+    private NaiveBayesClassifier openClassifier() {
+        if (!"true".equalsIgnoreCase(String.valueOf(config.getProperty("classifier.enabled")).trim())) {
+            return null;
+        }
+        NaiveBayesClassifier model = null;
+        if (classifierModel != null && Files.exists(classifierModel)) {
+            try {
+                model = NaiveBayesClassifier.load(classifierModel);
+                logger.info("Модель классификатора загружена: спам {}, не спам {}",
+                        model.getSpamDocuments(), model.getHamDocuments());
+            } catch (IOException e) {
+                logger.error("Не удалось прочитать модель классификатора {}, начинаем с пустой: ", classifierModel, e);
+            }
+        }
+        if (model == null) {
+            model = new NaiveBayesClassifier(
+                    config.getIntProperty("classifier.featureBits", NaiveBayesClassifier.DEFAULT_FEATURE_BITS));
+        }
+        engine.setClassifier(model, config.getIntProperty("classifier.thresholdPercent", 99) / 100.0,
+                config.getIntProperty("classifier.minDocuments", 200));
+        return model;
+    }
+
+    // Список заблокированных доменов читается из links.blocklistFile, если он задан
+    private void loadBlockedDomains() {
+        String file = config.getProperty("links.blocklistFile");
+        if (file == null || file.trim().isEmpty()) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            DomainTrie domains = DomainTrie.load(Paths.get(file.trim()));
+            engine.setBlockedDomains(domains);
+            logger.info("Загружено заблокированных доменов: {} за {} мс", domains.size(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (IOException e) {
+            logger.error("Не удалось прочитать список доменов {}: ", file, e);
+        }
+    }
+
+    // Эндпоинт метрик включается, только если задан metrics.port
+    private MetricsServer startMetricsServer() {
+        int port = config.getIntProperty("metrics.port", 0);
+        if (port <= 0) {
+            return null;
+        }
+        String bindAddress = config.getProperty("metrics.bindAddress");
+        try {
+            MetricsServer server = new MetricsServer(
+                    bindAddress == null || bindAddress.trim().isEmpty() ? "127.0.0.1" : bindAddress.trim(), port);
+            server.start();
+            return server;
+        } catch (IOException e) {
+            logger.error("Не удалось запустить сервер метрик на порту {}: ", port, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.antispambot;
+
+import com.example.antispambot.StateChangeListener.ChatWordState;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Списки запрещённых слов по чатам: общий список и правила чатов поверх него
+ * (слова, запрещённые только в чате, и слова общего списка, разрешённые в чате).
+ * <p>
+ * Общий список компилируется один раз и используется всеми чатами. Для чата со своими правилами
+ * отдельно компилируются только его собственные слова ({@link Overlay#words}), а разрешённые в чате
+ * слова общего списка отсеиваются среди совпадений общего автомата. Поэтому память растёт с числом
+ * правил чатов, а не с числом чатов, умноженным на размер общего списка, и изменение общего списка
+ * не пересобирает правила чатов. Собственные слова интернируются: чаты с одинаковыми добавленными
+ * словами используют один скомпилированный снимок.
+ * Чтение ({@link #base}, {@link #overlay}) идёт без блокировок; изменения собирают новый снимок
+ * и подменяют ссылку одной записью. Методы изменения вызываются под внешней блокировкой.
+ */
+final class ChatRuleSets {
+    private static final BannedWords EMPTY = BannedWords.of(Collections.<String>emptySet());
+
+    private volatile BannedWords base = EMPTY;
+    // Только чаты со своими правилами
+    private final Map<Long, Overlay> overlays = new ConcurrentHashMap<>();
+    // Добавленные слова -> скомпилированный снимок; снимки, на которые никто не ссылается, собирает GC
+    private final Map<Set<String>, WeakReference<BannedWords>> interned = new HashMap<>();
+
+    BannedWords base() {
+        return base;
+    }
+
+    /**
+     * Правила чата или null, если в чате действует общий список.
+     */
+    Overlay overlay(long chatId) {
+        return overlays.get(chatId);
+    }
+
+    /**
+     * Заменяет общий список уже скомпилированным снимком. Правила чатов не пересобираются.
+     */
+    void setBase(BannedWords compiled) {
+        base = compiled;
+    }
+
+    /**
+     * @return true, если слово запрещено в чате
+     */
+    boolean contains(long chatId, String word) {
+        Overlay overlay = overlays.get(chatId);
+        if (overlay == null) {
+            return base.words.contains(word);
+        }
+        return overlay.added.contains(word) || base.words.contains(word) && !overlay.excluded.contains(word);
+    }
+
+    /**
+     * Итоговый список чата. Для чата без своих правил — снимок общего списка, иначе новый набор.
+     */
+    Set<String> wordsOf(long chatId) {
+        BannedWords current = base;
+        Overlay overlay = overlays.get(chatId);
+        if (overlay == null) {
+            return current.words;
+        }
+        Set<String> words = new HashSet<>(current.words);
+        words.addAll(overlay.added);
+        words.removeAll(overlay.excluded);
+        return Collections.unmodifiableSet(words);
+    }
+
+    ChatWordState stateOf(long chatId, String word) {
+        Overlay overlay = overlays.get(chatId);
+        if (overlay == null) {
+            return ChatWordState.NONE;
+        }
+        if (overlay.added.contains(word)) {
+            return ChatWordState.ADDED;
+        }
+        return overlay.excluded.contains(word) ? ChatWordState.EXCLUDED : ChatWordState.NONE;
+    }
+
+    /**
+     * Меняет состояние слова в правилах чата.
+     */
+    void setChatWord(long chatId, String word, ChatWordState state) {
+        Overlay overlay = overlays.get(chatId);
+        Set<String> added = overlay == null ? new HashSet<String>() : new HashSet<>(overlay.added);
+        Set<String> excluded = overlay == null ? new HashSet<String>() : new HashSet<>(overlay.excluded);
+        added.remove(word);
+        excluded.remove(word);
+        if (state == ChatWordState.ADDED) {
+            added.add(word);
+        } else if (state == ChatWordState.EXCLUDED) {
+            excluded.add(word);
+        }
+        setOverlay(chatId, added, excluded);
+    }
+
+    /**
+     * Заменяет правила чата целиком. Пустые правила возвращают чат к общему списку.
+     */
+    void setOverlay(long chatId, Set<String> added, Set<String> excluded) {
+        if (added.isEmpty() && excluded.isEmpty()) {
+            overlays.remove(chatId);
+            return;
+        }
+        BannedWords words = added.isEmpty() ? EMPTY : intern(added);
+        overlays.put(chatId, new Overlay(words.words, Collections.unmodifiableSet(excluded), words));
+    }
+
+    /**
+     * Передаёт все правила чатов получателю.
+     */
+    void forEachChatWord(StateChangeListener target) {
+        for (Map.Entry<Long, Overlay> entry : overlays.entrySet()) {
+            for (String word : entry.getValue().added) {
+                target.chatWordChanged(entry.getKey(), word, ChatWordState.ADDED);
+            }
+            for (String word : entry.getValue().excluded) {
+                target.chatWordChanged(entry.getKey(), word, ChatWordState.EXCLUDED);
+            }
+        }
+    }
+
+    /**
+     * @return количество чатов со своими правилами
+     */
+    int overlayCount() {
+        return overlays.size();
+    }
+
+    private BannedWords intern(Set<String> words) {
+        WeakReference<BannedWords> reference = interned.get(words);
+        BannedWords compiled = reference == null ? null : reference.get();
+        if (compiled == null) {
+            purge();
+            compiled = BannedWords.of(new HashSet<>(words));
+            interned.put(compiled.words, new WeakReference<>(compiled));
+        }
+        return compiled;
+    }
+
+    private void purge() {
+        Iterator<WeakReference<BannedWords>> iterator = interned.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().get() == null) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Правила чата: собственные слова со своим небольшим автоматом и исключения из общего списка.
+     */
+    static final class Overlay {
+        final Set<String> added;
+        final Set<String> excluded;
+        final BannedWords words;
+
+        Overlay(Set<String> added, Set<String> excluded, BannedWords words) {
+            this.added = added;
+            this.excluded = excluded;
+            this.words = words;
+        }
+    }
+}
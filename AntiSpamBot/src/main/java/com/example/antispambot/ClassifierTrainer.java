@@ -0,0 +1,72 @@
+package com.example.antispambot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пакетное обучение классификатора по размеченному файлу без запуска бота.
+ * <p>
+ * Файл читается потоково, по строке на сообщение: метка ({@code spam}/{@code ham} или {@code 1}/{@code 0}),
+ * табуляция, текст. Если файл модели уже существует, модель дообучается.
+ * <p>
+ * Запуск: {@code ClassifierTrainer <размеченный.tsv> <модель.bin> [featureBits]}
+ */
+public class ClassifierTrainer {
+    private static final Logger logger = LoggerFactory.getLogger(ClassifierTrainer.class);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            logger.error("Использование: ClassifierTrainer <размеченный.tsv> <модель.bin> [featureBits]");
+            return;
+        }
+        Path input = Paths.get(args[0]);
+        Path model = Paths.get(args[1]);
+        NaiveBayesClassifier classifier;
+        if (Files.exists(model)) {
+            classifier = NaiveBayesClassifier.load(model);
+            logger.info("Дообучение модели {}: спам {}, не спам {}", model,
+                    classifier.getSpamDocuments(), classifier.getHamDocuments());
+        } else {
+            classifier = new NaiveBayesClassifier(
+                    args.length > 2 ? Integer.parseInt(args[2]) : NaiveBayesClassifier.DEFAULT_FEATURE_BITS);
+        }
+
+        long started = System.nanoTime();
+        long trained = 0;
+        long skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab <= 0) {
+                    skipped++;
+                    continue;
+                }
+                String label = line.substring(0, tab).trim();
+                if (label.equalsIgnoreCase("spam") || label.equals("1")) {
+                    classifier.train(line.substring(tab + 1), true);
+                } else if (label.equalsIgnoreCase("ham") || label.equals("0")) {
+                    classifier.train(line.substring(tab + 1), false);
+                } else {
+                    skipped++;
+                    continue;
+                }
+                trained++;
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        classifier.save(model);
+        logger.info("Обучено на {} сообщениях за {} мс ({} сообщений/с), пропущено строк {}; "
+                        + "в модели спам {}, не спам {}; модель записана в {} ({} байт)",
+                trained, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                elapsed == 0 ? 0 : trained * 1_000_000_000L / elapsed, skipped,
+                classifier.getSpamDocuments(), classifier.getHamDocuments(), model, Files.size(model));
+    }
+}
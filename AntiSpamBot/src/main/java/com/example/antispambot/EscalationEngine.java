@@ -0,0 +1,297 @@
+package com.example.antispambot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.BanChatMember;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.RestrictChatMember;
+import org.telegram.telegrambots.meta.api.objects.ChatPermissions;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Эскалация наказаний: пользователь, набравший в чате заданное количество спам-сообщений, лишается права
+ * писать в этот чат ({@code restrictChatMember}) или блокируется ({@code banChatMember}), при желании вместе
+ * с отзывом всех своих сообщений. Одно ограничение заменяет сотни вызовов {@code deleteMessage}.
+ * <p>
+ * Действующие наказания хранятся по чатам, чтобы сообщения, отправленные до того, как Telegram
+ * применил ограничение, отбрасывались при приёме без проверки фильтром ({@link #activeSanction}).
+ * Наказание запоминается сразу при отправке вызова и забывается, если Telegram его не применил
+ * (нет прав администратора, наказываемый — администратор, исчерпаны повторы): иначе сообщения
+ * такого пользователя отбрасывались бы без проверки и не удалялись.
+ * Блокировка помнится {@value #BAN_MEMORY_MINUTES} минут: позже заблокированный пользователь писать
+ * уже не может. Участники рейда наказываются разом, как только рейд обнаружен.
+ * Наказания применяются только в группах: в личном чате ограничивать некого.
+ * <p>
+ * Спам-сообщения считаются по чатам, а не по боту в целом: спам в одном чате не ведёт к наказанию
+ * в другом. Счёт забывается через {@value #OFFENCE_MEMORY_HOURS} ч без новых спам-сообщений в этом чате
+ * и при перезапуске не сохраняется.
+ */
+final class EscalationEngine implements RaidListener {
+    private static final Logger logger = LoggerFactory.getLogger(EscalationEngine.class);
+    private static final long BAN_MEMORY_MINUTES = 10;
+    private static final long OFFENCE_MEMORY_HOURS = 24;
+    // Через сколько новых наказаний вычищать истёкшие
+    private static final int PURGE_INTERVAL = 1024;
+
+    /**
+     * Наказание в порядке строгости.
+     */
+    enum Sanction {
+        NONE, MUTE, BAN;
+
+        static Sanction parse(String value, Sanction defaultValue) {
+            if (value == null || value.trim().isEmpty()) {
+                return defaultValue;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                logger.error("Некорректное наказание '{}', используется {}", value, defaultValue);
+                return defaultValue;
+            }
+        }
+    }
+
+    private final OutboundActionQueue outbound;
+    private final Metrics metrics;
+    // Чат -> пользователь -> действующее наказание
+    private final Map<Long, Map<Long, Active>> chats = new ConcurrentHashMap<>();
+    // Чат -> пользователь -> спам-сообщения в этом чате; счётчики меняются внутри compute
+    private final Map<Long, Map<Long, Offences>> offences = new ConcurrentHashMap<>();
+    private final AtomicInteger sinceLastPurge = new AtomicInteger();
+    // Параметры меняются без перезапуска (см. BotConfig)
+    private volatile int muteAfter;
+    private volatile int banAfter;
+    private volatile long muteMillis;
+    private volatile boolean revokeMessages;
+    private volatile Sanction raidSanction;
+
+    EscalationEngine(OutboundActionQueue outbound, Metrics metrics) {
+        this.outbound = outbound;
+        this.metrics = metrics;
+        configure(0, 0, 60, true, Sanction.NONE);
+    }
+
+    /**
+     * @param muteAfter      после скольких спам-сообщений лишать права писать (0 — никогда)
+     * @param banAfter       после скольких спам-сообщений блокировать (0 — никогда)
+     * @param muteMinutes    на сколько лишать права писать
+     * @param revokeMessages удалять ли при блокировке все сообщения пользователя в чате
+     * @param raidSanction   наказание для участников рейда
+     */
+    void configure(int muteAfter, int banAfter, int muteMinutes, boolean revokeMessages, Sanction raidSanction) {
+        this.muteAfter = muteAfter;
+        this.banAfter = banAfter;
+        this.muteMillis = TimeUnit.MINUTES.toMillis(Math.max(1, muteMinutes));
+        this.revokeMessages = revokeMessages;
+        this.raidSanction = raidSanction;
+    }
+
+    /**
+     * Учитывает спам-сообщение пользователя в чате и наказывает его, если количество его спам-сообщений
+     * в этом чате достигло порога, а такого или более строгого наказания в чате у него ещё нет.
+     *
+     * @return применённое наказание
+     */
+    Sanction escalate(long chatId, long userId, long now) {
+        if (chatId >= 0) {
+            return Sanction.NONE;
+        }
+        int spamCount = countOffence(chatId, userId, now);
+        int ban = banAfter;
+        int mute = muteAfter;
+        Sanction target = ban > 0 && spamCount >= ban ? Sanction.BAN
+                : mute > 0 && spamCount >= mute ? Sanction.MUTE : Sanction.NONE;
+        return apply(chatId, userId, target, now) ? target : Sanction.NONE;
+    }
+
+    /**
+     * Наказывает участников рейда одной пачкой.
+     */
+    @Override
+    public void raidDetected(long chatId, long userId, long[] participants) {
+        Sanction sanction = raidSanction;
+        if (sanction == Sanction.NONE) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int applied = apply(chatId, userId, sanction, now) ? 1 : 0;
+        for (long participant : participants) {
+            if (apply(chatId, participant, sanction, now)) {
+                applied++;
+            }
+        }
+        if (applied > 0) {
+            logger.info("Рейд в чате {}: наказано пользователей {} ({})", chatId, applied, sanction);
+        }
+    }
+
+    /**
+     * @return действующее наказание пользователя в чате
+     */
+    Sanction activeSanction(long chatId, long userId, long now) {
+        Map<Long, Active> users = chats.get(chatId);
+        if (users == null) {
+            return Sanction.NONE;
+        }
+        Active active = users.get(userId);
+        return active == null || active.until <= now ? Sanction.NONE : active.sanction;
+    }
+
+    /**
+     * @return true, если сообщения пользователя с таким наказанием Telegram удалит сам
+     */
+    boolean revokesMessages(Sanction sanction) {
+        return sanction == Sanction.BAN && revokeMessages;
+    }
+
+    private int countOffence(long chatId, long userId, long now) {
+        int[] count = new int[1];
+        offences.compute(chatId, (id, users) -> {
+            if (users == null) {
+                users = new HashMap<>();
+            }
+            Offences current = users.get(userId);
+            if (current == null || current.expired(now)) {
+                current = new Offences();
+                users.put(userId, current);
+            }
+            current.count++;
+            current.last = now;
+            count[0] = current.count;
+            return users;
+        });
+        purgeIfDue(now);
+        return count[0];
+    }
+
+    private boolean apply(long chatId, long userId, Sanction sanction, long now) {
+        if (sanction == Sanction.NONE || chatId >= 0) {
+            return false;
+        }
+        long until = now + (sanction == Sanction.BAN ? TimeUnit.MINUTES.toMillis(BAN_MEMORY_MINUTES) : muteMillis);
+        Active active = new Active(sanction, until);
+        boolean[] replaced = new boolean[1];
+        chats.compute(chatId, (id, users) -> {
+            if (users == null) {
+                users = new ConcurrentHashMap<>();
+            }
+            Active current = users.get(userId);
+            if (current == null || current.until <= now || current.sanction.ordinal() < sanction.ordinal()) {
+                users.put(userId, active);
+                replaced[0] = true;
+            }
+            return users;
+        });
+        if (!replaced[0]) {
+            return false;
+        }
+        if (sanction == Sanction.BAN) {
+            BanChatMember ban = new BanChatMember();
+            ban.setChatId(String.valueOf(chatId));
+            ban.setUserId(userId);
+            ban.setRevokeMessages(revokeMessages);
+            submit(chatId, userId, active, ban);
+        } else {
+            RestrictChatMember restrict = new RestrictChatMember();
+            restrict.setChatId(String.valueOf(chatId));
+            restrict.setUserId(userId);
+            restrict.setPermissions(mutedPermissions());
+            // Права применяются как заданы, без вывода одних из других
+            restrict.setUseIndependentChatPermissions(true);
+            restrict.setUntilDate((int) TimeUnit.MILLISECONDS.toSeconds(until));
+            submit(chatId, userId, active, restrict);
+        }
+        purgeIfDue(now);
+        return true;
+    }
+
+    private <T extends Serializable> void submit(long chatId, long userId, Active active, BotApiMethod<T> method) {
+        // Ошибки (например, нет прав администратора) журналирует очередь
+        outbound.submit(chatId, method).whenComplete((result, error) -> {
+            if (error == null) {
+                metrics.sanctionApplied(active.sanction == Sanction.BAN);
+                logger.info("Пользователь {} наказан в чате {}: {}", userId, chatId, method.getMethod());
+                return;
+            }
+            // Забываем только это наказание: его могло заменить более строгое
+            chats.computeIfPresent(chatId, (id, users) -> {
+                users.remove(userId, active);
+                return users.isEmpty() ? null : users;
+            });
+            logger.warn("Наказание пользователя {} в чате {} не применено, его сообщения снова проверяются", userId,
+                    chatId);
+        });
+    }
+
+    private static ChatPermissions mutedPermissions() {
+        ChatPermissions permissions = new ChatPermissions();
+        permissions.setCanSendMessages(false);
+        // Вместо устаревшего can_send_media_messages — отдельные права на каждый вид медиа
+        permissions.setCanSendAudios(false);
+        permissions.setCanSendDocuments(false);
+        permissions.setCanSendPhotos(false);
+        permissions.setCanSendVideos(false);
+        permissions.setCanSendVideoNotes(false);
+        permissions.setCanSendVoiceNotes(false);
+        permissions.setCanSendPolls(false);
+        permissions.setCanSendOtherMessages(false);
+        permissions.setCanAddWebPagePreviews(false);
+        return permissions;
+    }
+
+    private void purgeIfDue(long now) {
+        if (sinceLastPurge.incrementAndGet() >= PURGE_INTERVAL) {
+            sinceLastPurge.set(0);
+            purge(now);
+        }
+    }
+
+    // Убирает истёкшие наказания и счётчики и чаты без них
+    private void purge(long now) {
+        for (Long chatId : chats.keySet()) {
+            chats.computeIfPresent(chatId, (id, users) -> {
+                Iterator<Active> iterator = users.values().iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().until <= now) {
+                        iterator.remove();
+                    }
+                }
+                return users.isEmpty() ? null : users;
+            });
+        }
+        for (Long chatId : offences.keySet()) {
+            offences.computeIfPresent(chatId, (id, users) -> {
+                users.values().removeIf(current -> current.expired(now));
+                return users.isEmpty() ? null : users;
+            });
+        }
+    }
+
+    private static final class Offences {
+        int count;
+        long last;
+
+        boolean expired(long now) {
+            return last + TimeUnit.HOURS.toMillis(OFFENCE_MEMORY_HOURS) <= now;
+        }
+    }
+
+    private static final class Active {
+        final Sanction sanction;
+        final long until;
+
+        Active(Sanction sanction, long until) {
+            this.sanction = sanction;
+            this.until = until;
+        }
+    }
+}
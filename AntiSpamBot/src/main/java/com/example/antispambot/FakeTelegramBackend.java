@@ -0,0 +1,106 @@
+package com.example.antispambot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Заменитель Telegram Bot API внутри процесса для нагрузочных прогонов: запросы не уходят в сеть,
+ * а завершаются через случайную задержку; часть запросов отвечает 429 с {@code retry_after}.
+ * Считает вызовы по методам API и ответы 429.
+ */
+public class FakeTelegramBackend extends DefaultAbsSender implements AutoCloseable {
+    private static final ObjectReader RESPONSE_READER = new ObjectMapper().readerFor(ApiResponse.class);
+
+    private final long latencyMicros;
+    private final double tooManyRequestsShare;
+    private final int retryAfterSeconds;
+    private final ScheduledExecutorService completions;
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final LongAdder tooManyRequests = new LongAdder();
+
+    /**
+     * @param latencyMillis        средняя задержка ответа (равномерно от 0 до удвоенного значения)
+     * @param tooManyRequestsShare доля запросов, на которые приходит 429 (от 0 до 1)
+     * @param retryAfterSeconds    значение {@code retry_after} в ответах 429
+     */
+    public FakeTelegramBackend(double latencyMillis, double tooManyRequestsShare, int retryAfterSeconds) {
+        super(new DefaultBotOptions(), "fake");
+        this.latencyMicros = Math.max(0, Math.round(latencyMillis * 1000));
+        this.tooManyRequestsShare = tooManyRequestsShare;
+        this.retryAfterSeconds = retryAfterSeconds;
+        AtomicInteger counter = new AtomicInteger();
+        this.completions = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "fake-telegram-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    protected <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> sendApiMethodAsync(Method method) {
+        calls.computeIfAbsent(method.getMethod(), name -> new LongAdder()).increment();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean limited = random.nextDouble() < tooManyRequestsShare;
+        long delay = latencyMicros == 0 ? 0 : random.nextLong(2 * latencyMicros + 1);
+        completions.schedule(() -> {
+            if (limited) {
+                tooManyRequests.increment();
+                future.completeExceptionally(tooManyRequests());
+            } else {
+                // Результат вызовов бот не использует
+                future.complete(null);
+            }
+        }, delay, TimeUnit.MICROSECONDS);
+        return future;
+    }
+
+    /**
+     * @return количество вызовов по методам API (включая повторы после 429)
+     */
+    public Map<String, Long> getCallCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : calls.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    public long getTooManyRequestsCount() {
+        return tooManyRequests.sum();
+    }
+
+    @Override
+    public void close() {
+        completions.shutdownNow();
+    }
+
+    private TelegramApiRequestException tooManyRequests() {
+        try {
+            ApiResponse<?> response = RESPONSE_READER.readValue(
+                    "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after "
+                            + retryAfterSeconds + "\",\"parameters\":{\"retry_after\":" + retryAfterSeconds + "}}");
+            return new TelegramApiRequestException("Too Many Requests", response);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
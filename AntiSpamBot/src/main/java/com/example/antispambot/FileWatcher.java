@@ -0,0 +1,117 @@
+package com.example.antispambot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отслеживание изменений отдельных файлов через {@link WatchService}.
+ * <p>
+ * Следить можно только за каталогами, поэтому регистрируется каталог файла, а события
+ * фильтруются по имени. Обработчики вызываются в отдельном потоке, по одному разу на пачку событий:
+ * редакторы и {@code cp} записывают файл несколькими событиями, и после первого события поток
+ * немного ждёт, пока запись закончится. Замена файла переименованием ({@code mv новый старый})
+ * приходит как создание файла и тоже замечается.
+ */
+final class FileWatcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(FileWatcher.class);
+    private static final long SETTLE_MILLIS = 200;
+
+    private final WatchService watchService;
+    // Файл (абсолютный путь) -> обработчик изменения
+    private final Map<Path, Runnable> listeners = new ConcurrentHashMap<>();
+    private final Set<Path> directories = ConcurrentHashMap.newKeySet();
+    private final Thread thread;
+
+    FileWatcher(String threadName) throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Вызывает {@code onChange} после каждого изменения файла. Повторный вызов для того же файла
+     * заменяет обработчик.
+     */
+    void watch(Path file, Runnable onChange) throws IOException {
+        Path absolute = file.toAbsolutePath().normalize();
+        Path directory = absolute.getParent();
+        listeners.put(absolute, onChange);
+        if (directories.add(directory)) {
+            try {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException e) {
+                directories.remove(directory);
+                listeners.remove(absolute);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Не удалось закрыть WatchService: ", e);
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                collect(key, changed);
+                Thread.sleep(SETTLE_MILLIS);
+                while ((key = watchService.poll()) != null) {
+                    collect(key, changed);
+                }
+                for (Path file : changed) {
+                    Runnable listener = listeners.get(file);
+                    if (listener != null) {
+                        try {
+                            listener.run();
+                        } catch (RuntimeException e) {
+                            logger.error("Ошибка при обработке изменения файла {}: ", file, e);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Наблюдение остановлено
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // События потеряны: считаем изменёнными все файлы каталога
+                for (Path file : listeners.keySet()) {
+                    if (directory.equals(file.getParent())) {
+                        changed.add(file);
+                    }
+                }
+            } else {
+                changed.add(directory.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+    }
+}
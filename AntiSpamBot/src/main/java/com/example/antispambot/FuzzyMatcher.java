@@ -0,0 +1,366 @@
+package com.example.antispambot;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Неизменяемый индекс для нечёткого поиска запрещённых слов (симметричные удаления, как в SymSpell).
+ * Для каждого слова заранее индексируются хэши всех вариантов с удалением до {@link #MAX_DISTANCE} символов,
+ * поэтому токен проверяет только небольшой набор кандидатов, а не весь список.
+ * Кандидаты подтверждаются ленточным (banded) расстоянием Левенштейна с ранним выходом.
+ */
+final class FuzzyMatcher {
+    // Максимальный допустимый порог расстояния (для токенов длиннее 7 символов)
+    static final int MAX_DISTANCE = 2;
+
+    private static final long HASH_SEED = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    private static final ThreadLocal<int[]> ROW = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[64];
+        }
+    };
+
+    private final String[] words;
+    // Открытая адресация: хэш варианта -> диапазон [slotStart, slotEnd) в postings
+    private final long[] slotKeys;
+    private final int[] slotStart;
+    private final int[] slotEnd;
+    private final int[] postings;
+    private final int mask;
+    private final int maxWordLength;
+
+    private FuzzyMatcher(String[] words, long[] slotKeys, int[] slotStart, int[] slotEnd,
+                         int[] postings, int maxWordLength) {
+        this.words = words;
+        this.slotKeys = slotKeys;
+        this.slotStart = slotStart;
+        this.slotEnd = slotEnd;
+        this.postings = postings;
+        this.mask = slotKeys.length - 1;
+        this.maxWordLength = maxWordLength;
+    }
+
+    /**
+     * Порог расстояния Левенштейна в зависимости от длины нормализованного токена.
+     */
+    static int maxDistanceFor(int tokenLength) {
+        return tokenLength <= 4 ? 0 : (tokenLength <= 7 ? 1 : 2);
+    }
+
+    /**
+     * Строит индекс по набору нормализованных запрещённых слов.
+     */
+    static FuzzyMatcher compile(Collection<String> bannedWords) {
+        String[] words = bannedWords.toArray(new String[0]);
+        int maxWordLength = 0;
+        long variants = 0;
+        for (String word : words) {
+            maxWordLength = Math.max(maxWordLength, word.length());
+            variants += variantCount(word.length(), deletionsFor(word.length()));
+        }
+        if (variants > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("Слишком большой список запрещённых слов: " + words.length);
+        }
+
+        // Первый проход: считаем варианты по хэшам во временной таблице
+        int tempCapacity = tableCapacity((int) variants);
+        long[] tempKeys = new long[tempCapacity];
+        int[] tempCounts = new int[tempCapacity];
+        int unique = 0;
+        for (String word : words) {
+            int deletions = deletionsFor(word.length());
+            int length = word.length();
+            for (int i = -1; i < length; i++) {
+                for (int j = i < 0 ? length : i + 1; j <= length; j++) {
+                    if (countDeleted(i, j, length) > deletions) {
+                        continue;
+                    }
+                    long hash = hashWithout(word, 0, word.length(), i, j);
+                    int slot = findSlot(tempKeys, tempCounts, tempCapacity - 1, hash);
+                    if (tempCounts[slot] == 0) {
+                        tempKeys[slot] = hash;
+                        unique++;
+                    }
+                    tempCounts[slot]++;
+                }
+            }
+        }
+
+        // Итоговая таблица подбирается по числу уникальных хэшей, а postings размещаются подряд
+        int capacity = tableCapacity(unique);
+        long[] slotKeys = new long[capacity];
+        int[] slotStart = new int[capacity];
+        int[] slotEnd = new int[capacity];
+        int offset = 0;
+        for (int t = 0; t < tempCapacity; t++) {
+            if (tempCounts[t] != 0) {
+                int slot = findSlot(slotKeys, slotEnd, capacity - 1, tempKeys[t]);
+                slotKeys[slot] = tempKeys[t];
+                slotStart[slot] = offset;
+                offset += tempCounts[t];
+                // Пока идёт заполнение, slotEnd хранит позицию записи; ненулевое значение = слот занят
+                slotEnd[slot] = slotStart[slot] + 1;
+            }
+        }
+        int[] postings = new int[offset];
+        int[] fill = new int[capacity];
+        for (int s = 0; s < capacity; s++) {
+            fill[s] = slotStart[s];
+        }
+        for (int id = 0; id < words.length; id++) {
+            String word = words[id];
+            int deletions = deletionsFor(word.length());
+            int length = word.length();
+            for (int i = -1; i < length; i++) {
+                for (int j = i < 0 ? length : i + 1; j <= length; j++) {
+                    if (countDeleted(i, j, length) > deletions) {
+                        continue;
+                    }
+                    long hash = hashWithout(word, 0, word.length(), i, j);
+                    int slot = findSlot(slotKeys, slotEnd, capacity - 1, hash);
+                    // Одинаковые варианты одного слова (например, "aab" без первой или второй "a") не дублируем
+                    if (fill[slot] == slotStart[slot] || postings[fill[slot] - 1] != id) {
+                        postings[fill[slot]++] = id;
+                    }
+                }
+            }
+        }
+        for (int s = 0; s < capacity; s++) {
+            if (slotEnd[s] != 0) {
+                slotEnd[s] = fill[s];
+            }
+        }
+        return new FuzzyMatcher(words, slotKeys, slotStart, slotEnd, postings, maxWordLength);
+    }
+
+    /**
+     * @return true, если токен отличается от какого-либо запрещённого слова не более чем на
+     * {@link #maxDistanceFor(int)} правок
+     */
+    boolean matches(CharSequence token) {
+        return matches(token, 0, token.length());
+    }
+
+    /**
+     * Проверяет фрагмент [from, to) как отдельный токен. Не выделяет память.
+     */
+    boolean matches(CharSequence text, int from, int to) {
+        return matches(text, from, to, Collections.<String>emptySet());
+    }
+
+    /**
+     * Проверяет фрагмент [from, to) как отдельный токен, не учитывая исключённые слова.
+     *
+     * @param excluded слова, похожесть на которые не учитывается
+     */
+    boolean matches(CharSequence text, int from, int to, Set<String> excluded) {
+        int length = to - from;
+        int k = maxDistanceFor(length);
+        if (words.length == 0 || length > maxWordLength + k) {
+            return false;
+        }
+        int[] row = ROW.get();
+        if (row.length <= maxWordLength) {
+            row = new int[maxWordLength + 1];
+            ROW.set(row);
+        }
+        int lastSkip = k > 0 ? length : 0;
+        for (int i = -1; i < lastSkip; i++) {
+            for (int j = i < 0 || k < 2 ? length : i + 1; j <= length; j++) {
+                if (countDeleted(i, j, length) <= k
+                        && probe(hashWithout(text, from, to, i, j), text, from, to, k, row, excluded)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Проверяет фрагмент [from, to) как отдельный токен без раннего выхода и отмечает для каждого слова,
+     * сколько раз оно было кандидатом на сравнение расстояния (так набор кандидатов общего индекса
+     * раскладывается по словам) и совпало ли оно.
+     *
+     * @param comparisons сравнения по номерам слов в порядке списка, переданного в {@link #compile}
+     * @param matched     отметки совпавших слов по тем же номерам
+     */
+    void profile(CharSequence text, int from, int to, long[] comparisons, boolean[] matched) {
+        int length = to - from;
+        int k = maxDistanceFor(length);
+        if (words.length == 0 || length > maxWordLength + k) {
+            return;
+        }
+        int[] row = ROW.get();
+        if (row.length <= maxWordLength) {
+            row = new int[maxWordLength + 1];
+            ROW.set(row);
+        }
+        int lastSkip = k > 0 ? length : 0;
+        for (int i = -1; i < lastSkip; i++) {
+            for (int j = i < 0 || k < 2 ? length : i + 1; j <= length; j++) {
+                if (countDeleted(i, j, length) > k) {
+                    continue;
+                }
+                long hash = hashWithout(text, from, to, i, j);
+                int slot = (int) mix(hash) & mask;
+                while (slotEnd[slot] != 0 && slotKeys[slot] != hash) {
+                    slot = (slot + 1) & mask;
+                }
+                if (slotEnd[slot] == 0) {
+                    continue;
+                }
+                for (int p = slotStart[slot]; p < slotEnd[slot]; p++) {
+                    int id = postings[p];
+                    comparisons[id]++;
+                    if (withinDistance(text, from, to, words[id], k, row)) {
+                        matched[id] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return количество слов в индексе
+     */
+    int size() {
+        return words.length;
+    }
+
+    private boolean probe(long hash, CharSequence text, int from, int to, int k, int[] row, Set<String> excluded) {
+        int slot = (int) mix(hash) & mask;
+        while (slotEnd[slot] != 0) {
+            if (slotKeys[slot] == hash) {
+                for (int p = slotStart[slot]; p < slotEnd[slot]; p++) {
+                    String word = words[postings[p]];
+                    if (withinDistance(text, from, to, word, k, row)
+                            && (excluded.isEmpty() || !excluded.contains(word))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Ленточное расстояние Левенштейна: вычисляются только клетки на расстоянии не более k от диагонали,
+     * и проверка прекращается, как только минимум строки превысил k.
+     *
+     * @param row рабочий буфер длиной не меньше b.length() + 1
+     * @return true, если расстояние между фрагментом [aFrom, aTo) и b не превышает k
+     */
+    static boolean withinDistance(CharSequence a, int aFrom, int aTo, String b, int k, int[] row) {
+        int la = aTo - aFrom;
+        int lb = b.length();
+        if (Math.abs(la - lb) > k) {
+            return false;
+        }
+        int inf = k + 1;
+        for (int j = 0; j <= lb; j++) {
+            row[j] = j <= k ? j : inf;
+        }
+        for (int i = 1; i <= la; i++) {
+            int jLow = Math.max(1, i - k);
+            int jHigh = Math.min(lb, i + k);
+            int diag = row[jLow - 1];
+            int left;
+            if (jLow == 1) {
+                left = i <= k ? i : inf;
+                row[0] = left;
+            } else {
+                left = inf;
+            }
+            int rowMin = left;
+            char c = a.charAt(aFrom + i - 1);
+            for (int j = jLow; j <= jHigh; j++) {
+                int up = row[j];
+                int value = diag + (c == b.charAt(j - 1) ? 0 : 1);
+                if (up + 1 < value) {
+                    value = up + 1;
+                }
+                if (left + 1 < value) {
+                    value = left + 1;
+                }
+                if (value > inf) {
+                    value = inf;
+                }
+                diag = up;
+                row[j] = value;
+                left = value;
+                if (value < rowMin) {
+                    rowMin = value;
+                }
+            }
+            if (rowMin > k) {
+                return false;
+            }
+        }
+        return row[lb] <= k;
+    }
+
+    // Короткие слова не могут нечётко совпасть с токеном длиннее 4 символов при пороге из maxDistanceFor,
+    // поэтому индексируем для них только сами слова (точное совпадение)
+    private static int deletionsFor(int wordLength) {
+        return wordLength < 4 ? 0 : (wordLength < 6 ? 1 : MAX_DISTANCE);
+    }
+
+    // Варианты перечисляются парами позиций (i, j): i == -1 — без удалений, j == length — без второго удаления
+    private static int countDeleted(int i, int j, int length) {
+        return (i >= 0 ? 1 : 0) + (j < length ? 1 : 0);
+    }
+
+    private static long variantCount(int length, int deletions) {
+        long count = 1;
+        if (deletions >= 1) {
+            count += length;
+        }
+        if (deletions >= 2) {
+            count += (long) length * (length - 1) / 2;
+        }
+        return count;
+    }
+
+    // Хэш фрагмента [from, to) без символов в позициях skip1 и skip2 (относительно from;
+    // значения вне диапазона ничего не пропускают)
+    private static long hashWithout(CharSequence s, int from, int to, int skip1, int skip2) {
+        long hash = HASH_SEED;
+        for (int p = from; p < to; p++) {
+            int rel = p - from;
+            if (rel == skip1 || rel == skip2) {
+                continue;
+            }
+            hash = (hash ^ s.charAt(p)) * HASH_PRIME;
+        }
+        return hash;
+    }
+
+    private static int findSlot(long[] keys, int[] occupied, int mask, long hash) {
+        int slot = (int) mix(hash) & mask;
+        while (occupied[slot] != 0 && keys[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int tableCapacity(int entries) {
+        int capacity = 2;
+        while (capacity < entries * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
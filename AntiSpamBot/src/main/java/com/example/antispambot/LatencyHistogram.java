@@ -0,0 +1,115 @@
+package com.example.antispambot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек без блокировок.
+ * Корзины логарифмически-линейные: каждая степень двойки наносекунд делится на {@value #SUB_BUCKETS}
+ * частей, поэтому относительная погрешность квантилей не превышает 12,5%. Счётчики разнесены
+ * по полосам (по идентификатору потока), чтобы параллельные записи не спорили за одну кэш-линию;
+ * запись — это один {@code getAndIncrement} без выделения памяти.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Значения до 2^40 нс (около 18 минут), всё, что больше, попадает в последнюю корзину
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+    // Между полосами оставляем зазор, чтобы соседние полосы не делили кэш-линию
+    private static final int STRIDE = BUCKETS + 16;
+
+    private final int stripeMask;
+    private final AtomicLongArray counts;
+    private final AtomicLongArray sums;
+
+    LatencyHistogram() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1) << 1);
+        stripeMask = Math.min(stripes, 64) - 1;
+        counts = new AtomicLongArray((stripeMask + 1) * STRIDE);
+        sums = new AtomicLongArray((stripeMask + 1) * 8);
+    }
+
+    /**
+     * Записывает одно измерение в наносекундах.
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        counts.getAndIncrement(stripe * STRIDE + bucketOf(nanos));
+        sums.getAndAdd(stripe * 8, nanos);
+    }
+
+    long count() {
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            total += bucketCount(bucket);
+        }
+        return total;
+    }
+
+    long sumNanos() {
+        long total = 0;
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            total += sums.get(stripe * 8);
+        }
+        return total;
+    }
+
+    /**
+     * Квантиль в наносекундах (верхняя граница корзины), 0 если измерений не было.
+     */
+    long quantile(double q) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            snapshot[bucket] = bucketCount(bucket);
+            total += snapshot[bucket];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= rank) {
+                return upperBound(bucket);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    private long bucketCount(int bucket) {
+        long total = 0;
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            total += counts.get(stripe * STRIDE + bucket);
+        }
+        return total;
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Наибольшее значение, попадающее в корзину.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+}
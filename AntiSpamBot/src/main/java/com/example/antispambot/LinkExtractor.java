@@ -0,0 +1,90 @@
+package com.example.antispambot;
+
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.MessageEntity;
+
+import java.util.List;
+
+/**
+ * Поиск ссылок в сообщении и проверка их доменов по {@link DomainTrie}.
+ * <p>
+ * Нормализация текста удаляет точки и слэши, поэтому ссылки ищутся в исходном тексте, одним проходом
+ * без регулярных выражений: домен — это непрерывная последовательность букв, цифр, дефисов и точек,
+ * в которой есть точка. Схема, порт, путь и учётные данные ({@code https://}, {@code :8080},
+ * {@code /path}, {@code user@}) отделяются сами, потому что их символы в домен не входят.
+ * Скрытые ссылки ({@code text_link}) проверяются по адресу из сущности сообщения: в тексте их не видно.
+ * Проверка не выделяет памяти.
+ */
+final class LinkExtractor {
+    private static final String TEXT_LINK = "text_link";
+
+    private LinkExtractor() {
+    }
+
+    /**
+     * @return true, если текст сообщения или его скрытые ссылки ведут на заблокированный домен
+     */
+    static boolean containsBlocked(Message message, DomainTrie trie) {
+        if (trie.size() == 0) {
+            return false;
+        }
+        if (message.hasText() && containsBlocked(message.getText(), trie)) {
+            return true;
+        }
+        List<MessageEntity> entities = message.getEntities();
+        if (entities != null) {
+            for (int i = 0; i < entities.size(); i++) {
+                MessageEntity entity = entities.get(i);
+                if (TEXT_LINK.equals(entity.getType()) && entity.getUrl() != null
+                        && containsBlocked(entity.getUrl(), trie)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true, если в тексте есть домен из списка
+     */
+    static boolean containsBlocked(CharSequence text, DomainTrie trie) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (!isHostChar(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            boolean dotted = false;
+            while (i < length && isHostChar(text.charAt(i))) {
+                dotted |= text.charAt(i) == '.';
+                i++;
+            }
+            if (dotted && isBlockedHost(text, start, i, trie)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Точки по краям (конец предложения, многоточие) к домену не относятся
+    private static boolean isBlockedHost(CharSequence text, int from, int to, DomainTrie trie) {
+        while (from < to && text.charAt(from) == '.') {
+            from++;
+        }
+        while (to > from && text.charAt(to - 1) == '.') {
+            to--;
+        }
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '.') {
+                return trie.isBlocked(text, from, to);
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHostChar(char c) {
+        return c == '.' || c == '-' || Character.isLetterOrDigit(c);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.antispambot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сброс нагрузки по длине очереди обработки и задержке обновлений в ней.
+ * <p>
+ * Проверка сообщения идёт каскадом от дешёвых проверок к дорогим (см. {@link SpamFilterService#check}).
+ * Когда очередь обновлений или время ожидания в ней превышают порог уровня, дорогие ступени
+ * каскада пропускаются, чтобы модерация не отставала от потока на минуты. Обратно уровень
+ * снижается, только когда и очередь, и задержка упали ниже половины порогов текущего уровня:
+ * иначе на границе порога уровень менялся бы на каждом сообщении.
+ * <p>
+ * Замеры передаёт {@link UpdateDispatcher}, уровень читают потоки проверки без блокировок.
+ */
+final class LoadShedder {
+    private static final Logger logger = LoggerFactory.getLogger(LoadShedder.class);
+
+    /**
+     * Уровень деградации проверки.
+     */
+    enum Level {
+        // Все ступени каскада
+        FULL("полная проверка"),
+        // Без фуззи-сравнения и классификатора
+        REDUCED("без фуззи-сравнения и классификатора"),
+        // Только частота, повторы и запомненные вердикты
+        MINIMAL("только частота, повторы и кэш вердиктов");
+
+        final String title;
+
+        Level(String title) {
+            this.title = title;
+        }
+    }
+
+    private static final Level[] LEVELS = Level.values();
+
+    private final Metrics metrics;
+    // Пороги по уровням (индекс — уровень, 0 — порог не задан); массивы заменяются целиком
+    private volatile int[] pendingMarks = new int[LEVELS.length];
+    private volatile long[] lagMarks = new long[LEVELS.length];
+    private volatile Level level = Level.FULL;
+
+    LoadShedder(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Задаёт пороги; 0 — не учитывать этот порог.
+     *
+     * @param reducePending    длина очереди, с которой пропускаются фуззи-сравнение и классификатор
+     * @param reduceLagMillis  задержка в очереди, с которой пропускаются фуззи-сравнение и классификатор
+     * @param minimalPending   длина очереди, с которой остаются только дешёвые проверки
+     * @param minimalLagMillis задержка в очереди, с которой остаются только дешёвые проверки
+     */
+    void configure(int reducePending, long reduceLagMillis, int minimalPending, long minimalLagMillis) {
+        pendingMarks = new int[]{0, reducePending, minimalPending};
+        lagMarks = new long[]{0, TimeUnit.MILLISECONDS.toNanos(reduceLagMillis),
+                TimeUnit.MILLISECONDS.toNanos(minimalLagMillis)};
+    }
+
+    Level level() {
+        return level;
+    }
+
+    /**
+     * Учитывает замер и при необходимости меняет уровень.
+     *
+     * @param pending   обновлений в очереди
+     * @param lagNanos  сколько обновление ждало в очереди
+     * @return уровень после замера
+     */
+    Level observe(int pending, long lagNanos) {
+        Level current = level;
+        // Вверх — по порогам, вниз — не ниже уровня, половина порогов которого ещё превышена
+        int target = Math.max(levelFor(pending, lagNanos, 1),
+                Math.min(current.ordinal(), levelFor(pending, lagNanos, 2)));
+        if (target != current.ordinal()) {
+            synchronized (this) {
+                current = level;
+                if (current.ordinal() != target) {
+                    level = LEVELS[target];
+                    metrics.setDegradationLevel(target);
+                    if (target > current.ordinal()) {
+                        logger.warn("Очередь обработки {} обновлений, ожидание {} мс: {}", pending,
+                                TimeUnit.NANOSECONDS.toMillis(lagNanos), LEVELS[target].title);
+                    } else {
+                        logger.info("Нагрузка снизилась: {}", LEVELS[target].title);
+                    }
+                }
+            }
+        }
+        return level;
+    }
+
+    // Старший уровень, порог которого (делённый на divisor) достигнут
+    private int levelFor(int pending, long lagNanos, int divisor) {
+        int[] pendingThresholds = pendingMarks;
+        long[] lagThresholds = lagMarks;
+        for (int i = LEVELS.length - 1; i > 0; i--) {
+            if (pendingThresholds[i] > 0 && pending >= (pendingThresholds[i] + divisor - 1) / divisor
+                    || lagThresholds[i] > 0 && lagNanos >= lagThresholds[i] / divisor) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
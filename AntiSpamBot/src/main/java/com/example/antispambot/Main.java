@@ -1,26 +1,92 @@
 package com.example.antispambot;
 
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.List;
+
 /**
  * Точка входа в приложение.
+ * Режим получения обновлений задаётся параметром bot.mode: polling (по умолчанию) или webhook.
+ * Если параметр bots перечисляет несколько ботов, все они запускаются в этом процессе с общим фильтром.
  */
 public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
 
     public static void main(String[] args) {
+        BotConfig config = BotConfig.getInstance();
+        String mode = config.getProperty("bot.mode");
         try {
-            // Инициализация Telegram Bots API
-            TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-            AntiSpamBot bot = new AntiSpamBot();
-            botsApi.registerBot(bot);
+            List<AntiSpamBot> bots = new BotHost(config).createBots(null);
+            if ("webhook".equalsIgnoreCase(mode == null ? null : mode.trim())) {
+                startWebhook(bots, config);
+            } else {
+                // Инициализация Telegram Bots API
+                TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
+                for (AntiSpamBot bot : bots) {
+                    botsApi.registerBot(bot);
+                }
+            }
+            // Изменения внешнего файла конфигурации (-Dconfig.file) применяются без перезапуска
+            config.startWatching();
             logger.info("Бот успешно запущен!");
-        } catch (TelegramApiException e) {
+        } catch (TelegramApiException | IOException e) {
             logger.error("Ошибка при запуске бота: ", e);
         }
     }
-}
\ No newline at end of file
+
+    // Несколько ботов принимают обновления на одном порту, каждый по пути webhook.path/имя
+    private static void startWebhook(List<AntiSpamBot> bots, BotConfig config) throws IOException, TelegramApiException {
+        String path = config.getProperty("webhook.path");
+        if (path == null || path.trim().isEmpty()) {
+            path = "/telegram";
+        }
+        path = path.trim();
+        String publicUrl = config.getProperty("webhook.url");
+        if (publicUrl == null || publicUrl.trim().isEmpty()) {
+            throw new RuntimeException("webhook.url не задан в конфигурации.");
+        }
+        String secretToken = config.getProperty("webhook.secretToken");
+        String bindAddress = config.getProperty("webhook.bindAddress");
+
+        AntiSpamBot first = bots.get(0);
+        WebhookServer server = new WebhookServer(
+                bindAddress == null || bindAddress.trim().isEmpty() ? "0.0.0.0" : bindAddress.trim(),
+                config.getIntProperty("webhook.port", 8443),
+                botPath(path, first),
+                secretToken,
+                config.getProperty("webhook.keystore.path"),
+                config.getProperty("webhook.keystore.password"),
+                first::onUpdateReceived);
+        for (AntiSpamBot bot : bots.subList(1, bots.size())) {
+            server.addPath(botPath(path, bot), bot::onUpdateReceived);
+        }
+        server.start();
+
+        for (AntiSpamBot bot : bots) {
+            // Публичный адрес может отличаться от локального, если TLS завершает обратный прокси
+            SetWebhook setWebhook = new SetWebhook(publicUrl.trim().replaceAll("/+$", "") + botPath(path, bot));
+            setWebhook.setMaxConnections(config.getIntProperty("webhook.maxConnections", 40));
+            if (secretToken != null && !secretToken.trim().isEmpty()) {
+                setWebhook.setSecretToken(secretToken.trim());
+            }
+            bot.execute(setWebhook);
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            for (AntiSpamBot bot : bots) {
+                bot.onClosing();
+            }
+        }, "webhook-shutdown"));
+    }
+
+    private static String botPath(String path, AntiSpamBot bot) {
+        return bot.getName().isEmpty() ? path : path.replaceAll("/+$", "") + "/" + bot.getName();
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.antispambot;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики и гистограммы задержек фильтра.
+ * Запись не блокирует и не выделяет память: счётчики — {@link LongAdder}, гистограммы — {@link LatencyHistogram}.
+ * Снимок в текстовом формате Prometheus отдаёт {@link #toPrometheus()}.
+ */
+public final class Metrics {
+
+    /**
+     * Правило, по которому сообщение признано спамом.
+     */
+    public enum Rule {
+        FLOOD("flood"),
+        REPEAT("repeat"),
+        LINK("blocked_domain"),
+        EXACT("exact_banned"),
+        FUZZY("fuzzy_banned"),
+        CLASSIFIER("naive_bayes"),
+        RAID("raid");
+
+        final String label;
+
+        Rule(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Этап обработки, задержка которого измеряется.
+     */
+    public enum Stage {
+        NORMALIZE("normalize", "нормализация"),
+        MATCH("match", "проверка текста"),
+        TELEGRAM("telegram", "вызов Telegram"),
+        UPDATE("update", "обновление целиком");
+
+        final String label;
+        final String title;
+
+        Stage(String label, String title) {
+            this.label = label;
+            this.title = title;
+        }
+    }
+
+    private final LongAdder messagesChecked = new LongAdder();
+    private final LongAdder messagesDeleted = new LongAdder();
+    private final LongAdder mutes = new LongAdder();
+    private final LongAdder bans = new LongAdder();
+    private final LongAdder messagesDropped = new LongAdder();
+    private final LongAdder verdictCacheHits = new LongAdder();
+    private final LongAdder verdictCacheMisses = new LongAdder();
+    private final LongAdder degradedChecks = new LongAdder();
+    // Текущий уровень деградации проверки (см. LoadShedder), 0 — полная проверка
+    private volatile int degradationLevel;
+    private final LongAdder[] ruleHits = new LongAdder[Rule.values().length];
+    private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+
+    public Metrics() {
+        for (int i = 0; i < ruleHits.length; i++) {
+            ruleHits[i] = new LongAdder();
+        }
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    void messageChecked() {
+        messagesChecked.increment();
+    }
+
+    /**
+     * Учитывает удалённое сообщение и правило, которое сработало.
+     */
+    void ruleHit(Rule rule) {
+        messagesDeleted.increment();
+        ruleHits[rule.ordinal()].increment();
+    }
+
+    /**
+     * Учитывает наказание пользователя: блокировку или лишение права писать.
+     */
+    void sanctionApplied(boolean ban) {
+        (ban ? bans : mutes).increment();
+    }
+
+    /**
+     * Учитывает сообщение наказанного пользователя, отброшенное без проверки.
+     */
+    void messageDropped() {
+        messagesDropped.increment();
+    }
+
+    void verdictCacheHit() {
+        verdictCacheHits.increment();
+    }
+
+    void verdictCacheMiss() {
+        verdictCacheMisses.increment();
+    }
+
+    /**
+     * Учитывает сообщение, проверенное без дорогих ступеней каскада.
+     */
+    void degradedCheck() {
+        degradedChecks.increment();
+    }
+
+    void setDegradationLevel(int level) {
+        degradationLevel = level;
+    }
+
+    void recordLatency(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    public long getMessagesChecked() {
+        return messagesChecked.sum();
+    }
+
+    public long getMessagesDeleted() {
+        return messagesDeleted.sum();
+    }
+
+    public long getRuleHits(Rule rule) {
+        return ruleHits[rule.ordinal()].sum();
+    }
+
+    public long getMutes() {
+        return mutes.sum();
+    }
+
+    public long getBans() {
+        return bans.sum();
+    }
+
+    public long getMessagesDropped() {
+        return messagesDropped.sum();
+    }
+
+    public long getVerdictCacheHits() {
+        return verdictCacheHits.sum();
+    }
+
+    public long getVerdictCacheMisses() {
+        return verdictCacheMisses.sum();
+    }
+
+    public long getDegradedChecks() {
+        return degradedChecks.sum();
+    }
+
+    public int getDegradationLevel() {
+        return degradationLevel;
+    }
+
+    /**
+     * Квантиль задержки этапа в наносекундах (0, если измерений не было).
+     */
+    public long getLatencyQuantile(Stage stage, double quantile) {
+        return stages[stage.ordinal()].quantile(quantile);
+    }
+
+    /**
+     * Количество измерений задержки этапа.
+     */
+    public long getLatencyCount(Stage stage) {
+        return stages[stage.ordinal()].count();
+    }
+
+    /**
+     * Краткая сводка задержек для команды /status: p50 и p99 по каждому этапу.
+     */
+    public String formatLatencies() {
+        StringBuilder sb = new StringBuilder("Задержка (p50 / p99):");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = stages[stage.ordinal()];
+            sb.append("\n").append(stage.title).append(": ");
+            if (histogram.count() == 0) {
+                sb.append("нет данных");
+            } else {
+                sb.append(formatNanos(histogram.quantile(0.5))).append(" / ").append(formatNanos(histogram.quantile(0.99)));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Снимок в текстовом формате Prometheus (версия 0.0.4).
+     * Гистограммы выводятся как summary с квантилями 0.5, 0.9, 0.99.
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder(2048);
+        sb.append("# HELP antispam_messages_checked_total Проверенные сообщения.\n");
+        sb.append("# TYPE antispam_messages_checked_total counter\n");
+        sb.append("antispam_messages_checked_total ").append(messagesChecked.sum()).append('\n');
+        sb.append("# HELP antispam_messages_deleted_total Сообщения, признанные спамом.\n");
+        sb.append("# TYPE antispam_messages_deleted_total counter\n");
+        sb.append("antispam_messages_deleted_total ").append(messagesDeleted.sum()).append('\n');
+        sb.append("# HELP antispam_rule_hits_total Срабатывания правил.\n");
+        sb.append("# TYPE antispam_rule_hits_total counter\n");
+        for (Rule rule : Rule.values()) {
+            sb.append("antispam_rule_hits_total{rule=\"").append(rule.label).append("\"} ")
+                    .append(ruleHits[rule.ordinal()].sum()).append('\n');
+        }
+        sb.append("# HELP antispam_sanctions_total Наказания пользователей.\n");
+        sb.append("# TYPE antispam_sanctions_total counter\n");
+        sb.append("antispam_sanctions_total{action=\"mute\"} ").append(mutes.sum()).append('\n');
+        sb.append("antispam_sanctions_total{action=\"ban\"} ").append(bans.sum()).append('\n');
+        sb.append("# HELP antispam_messages_dropped_total Сообщения наказанных пользователей, отброшенные без проверки.\n");
+        sb.append("# TYPE antispam_messages_dropped_total counter\n");
+        sb.append("antispam_messages_dropped_total ").append(messagesDropped.sum()).append('\n');
+        sb.append("# HELP antispam_verdict_cache_requests_total Обращения к кэшу вердиктов по спискам слов.\n");
+        sb.append("# TYPE antispam_verdict_cache_requests_total counter\n");
+        sb.append("antispam_verdict_cache_requests_total{result=\"hit\"} ").append(verdictCacheHits.sum()).append('\n');
+        sb.append("antispam_verdict_cache_requests_total{result=\"miss\"} ").append(verdictCacheMisses.sum()).append('\n');
+        sb.append("# HELP antispam_degradation_level Уровень деградации проверки: 0 — полная, 1 — без дорогих проверок, 2 — только дешёвые.\n");
+        sb.append("# TYPE antispam_degradation_level gauge\n");
+        sb.append("antispam_degradation_level ").append(degradationLevel).append('\n');
+        sb.append("# HELP antispam_degraded_checks_total Сообщения, проверенные без дорогих ступеней.\n");
+        sb.append("# TYPE antispam_degraded_checks_total counter\n");
+        sb.append("antispam_degraded_checks_total ").append(degradedChecks.sum()).append('\n');
+        sb.append("# HELP antispam_stage_latency_seconds Задержка этапов обработки.\n");
+        sb.append("# TYPE antispam_stage_latency_seconds summary\n");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = stages[stage.ordinal()];
+            for (double quantile : new double[]{0.5, 0.9, 0.99}) {
+                sb.append("antispam_stage_latency_seconds{stage=\"").append(stage.label)
+                        .append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(histogram.quantile(quantile) / 1e9).append('\n');
+            }
+            sb.append("antispam_stage_latency_seconds_sum{stage=\"").append(stage.label).append("\"} ")
+                    .append(histogram.sumNanos() / 1e9).append('\n');
+            sb.append("antispam_stage_latency_seconds_count{stage=\"").append(stage.label).append("\"} ")
+                    .append(histogram.count()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + " нс";
+        }
+        if (nanos < 10_000_000) {
+            return nanos / 1000 + " мкс";
+        }
+        return nanos / 1_000_000 + " мс";
+    }
+}
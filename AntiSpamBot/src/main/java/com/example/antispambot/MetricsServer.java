@@ -0,0 +1,97 @@
+package com.example.antispambot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Встроенный HTTP-сервер, отдающий метрики по GET /metrics в текстовом формате Prometheus.
+ * По умолчанию слушает только локальный адрес: метрики не предназначены для публичного доступа.
+ * Если в одном процессе работают несколько ботов, метрики каждого отдаются по своему пути
+ * ({@code /metrics/имя}, см. {@link #add}).
+ */
+public class MetricsServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsServer.class);
+    static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public MetricsServer(String bindAddress, int port, Metrics metrics) throws IOException {
+        this(bindAddress, port);
+        add(PATH, metrics);
+    }
+
+    /**
+     * Сервер без метрик: пути добавляются через {@link #add}.
+     */
+    public MetricsServer(String bindAddress, int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        // Сбор метрик происходит раз в несколько секунд, одного потока достаточно
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Отдаёт метрики по указанному пути (можно вызывать и после {@link #start()}).
+     */
+    public void add(String path, Metrics metrics) {
+        server.createContext(path, exchange -> handle(exchange, metrics));
+        logger.info("Метрики доступны по адресу http://{}{}", hostAndPort(), path);
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Сервер метрик запущен на {}", hostAndPort());
+    }
+
+    /**
+     * @return фактический адрес сервера (полезно, если был указан порт 0)
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    // InetSocketAddress.toString() даёт "имя/адрес:порт", поэтому хост и порт подставляются отдельно
+    private String hostAndPort() {
+        InetSocketAddress address = server.getAddress();
+        String host = address.getHostString();
+        return (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + address.getPort();
+    }
+
+    private static void handle(HttpExchange exchange, Metrics metrics) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.antispambot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Мультиномиальный наивный байесовский классификатор спама с дообучением на лету.
+ * <p>
+ * Признаки — токены нормализованного текста целиком и символьные триграммы внутри токенов.
+ * Признаки не хранятся в словаре: хэш признака сразу даёт номер ячейки в плоских массивах
+ * счётчиков {@code 2^featureBits} (hashing trick), поэтому объём модели не зависит от числа
+ * разных слов, а оценка сообщения не выделяет памяти. Обучение выполняется под блокировкой,
+ * оценка читает счётчики без неё: параллельное обучение может сдвинуть отдельную оценку
+ * на одно-два вхождения, что на результат не влияет.
+ * <p>
+ * Априорные вероятности классов считаются равными: бот дообучается на удалённом спаме намного
+ * чаще, чем на обычных сообщениях, и выученное соотношение классов само по себе со временем
+ * превышало бы порог и делало спамом любое короткое сообщение.
+ * <p>
+ * Модель сохраняется в двоичном файле: заголовок и только ненулевые счётчики
+ * (разность номеров ячеек и значение в формате varint), с CRC32 в конце.
+ */
+public class NaiveBayesClassifier {
+    static final int DEFAULT_FEATURE_BITS = 18;
+    private static final int MIN_FEATURE_BITS = 10;
+    private static final int MAX_FEATURE_BITS = 24;
+    private static final int NGRAM = 3;
+    // Сглаживание Лапласа
+    private static final double ALPHA = 1.0;
+    // log(count + ALPHA) для небольших счётчиков считается заранее
+    private static final int LOG_TABLE_SIZE = 1024;
+    private static final double[] LOG_TABLE = new double[LOG_TABLE_SIZE];
+
+    private static final int MAGIC = 0x4153424e; // "ASBN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 * 4;
+
+    static {
+        for (int i = 0; i < LOG_TABLE_SIZE; i++) {
+            LOG_TABLE[i] = Math.log(i + ALPHA);
+        }
+    }
+
+    private final int featureBits;
+    private final int mask;
+    private final int[] spamCounts;
+    private final int[] hamCounts;
+    // Количество обучающих сообщений и сумма вхождений признаков по классам
+    private volatile long spamDocuments;
+    private volatile long hamDocuments;
+    private volatile long spamFeatures;
+    private volatile long hamFeatures;
+
+    /**
+     * @param featureBits размер таблицы признаков — 2^featureBits ячеек на класс (10–24)
+     */
+    public NaiveBayesClassifier(int featureBits) {
+        this.featureBits = Math.max(MIN_FEATURE_BITS, Math.min(MAX_FEATURE_BITS, featureBits));
+        this.mask = (1 << this.featureBits) - 1;
+        this.spamCounts = new int[1 << this.featureBits];
+        this.hamCounts = new int[1 << this.featureBits];
+    }
+
+    /**
+     * Дообучает модель на одном сообщении.
+     *
+     * @param text исходный (не нормализованный) текст
+     * @param spam true — спам, false — обычное сообщение
+     */
+    public void train(CharSequence text, boolean spam) {
+        train(TextNormalizer.normalize(text), spam);
+    }
+
+    synchronized void train(NormalizedText text, boolean spam) {
+        int[] counts = spam ? spamCounts : hamCounts;
+        long features = 0;
+        for (int t = 0; t < text.tokenCount(); t++) {
+            int from = text.tokenStart(t);
+            int to = text.tokenEnd(t);
+            counts[(int) wordHash(text, from, to) & mask]++;
+            features++;
+            for (int i = from; i <= to - NGRAM; i++) {
+                counts[(int) gramHash(text, i) & mask]++;
+                features++;
+            }
+        }
+        if (spam) {
+            spamFeatures += features;
+            spamDocuments++;
+        } else {
+            hamFeatures += features;
+            hamDocuments++;
+        }
+    }
+
+    /**
+     * Вероятность того, что сообщение — спам. Не выделяет памяти.
+     *
+     * @param text нормализованный текст сообщения
+     * @return вероятность от 0 до 1 (0.5 для сообщения без признаков и необученной модели)
+     */
+    double spamProbability(NormalizedText text) {
+        long spamTotal = spamFeatures;
+        long hamTotal = hamFeatures;
+        double vocabulary = ALPHA * (mask + 1);
+        double spamNorm = Math.log(spamTotal + vocabulary);
+        double hamNorm = Math.log(hamTotal + vocabulary);
+        // Равные априорные вероятности классов (см. описание класса)
+        double logOdds = 0;
+        for (int t = 0; t < text.tokenCount(); t++) {
+            int from = text.tokenStart(t);
+            int to = text.tokenEnd(t);
+            int index = (int) wordHash(text, from, to) & mask;
+            logOdds += log(spamCounts[index]) - log(hamCounts[index]) - spamNorm + hamNorm;
+            for (int i = from; i <= to - NGRAM; i++) {
+                index = (int) gramHash(text, i) & mask;
+                logOdds += log(spamCounts[index]) - log(hamCounts[index]) - spamNorm + hamNorm;
+            }
+        }
+        return 1.0 / (1.0 + Math.exp(-logOdds));
+    }
+
+    /**
+     * Вероятность того, что сообщение — спам.
+     *
+     * @param text исходный (не нормализованный) текст
+     */
+    public double spamProbability(CharSequence text) {
+        return spamProbability(TextNormalizer.normalize(text));
+    }
+
+    /**
+     * @return true, если на каждом классе модель обучена хотя бы на minDocuments сообщениях
+     */
+    public boolean isTrained(int minDocuments) {
+        return spamDocuments >= minDocuments && hamDocuments >= minDocuments;
+    }
+
+    public long getSpamDocuments() {
+        return spamDocuments;
+    }
+
+    public long getHamDocuments() {
+        return hamDocuments;
+    }
+
+    public int getFeatureBits() {
+        return featureBits;
+    }
+
+    /**
+     * Записывает модель во временный файл и атомарно заменяет им {@code file}.
+     * Обучение на время записи приостанавливается.
+     */
+    public synchronized void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc), 256 * 1024));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(featureBits);
+            output.writeLong(spamDocuments);
+            output.writeLong(hamDocuments);
+            output.writeLong(spamFeatures);
+            output.writeLong(hamFeatures);
+            writeCounts(output, spamCounts);
+            writeCounts(output, hamCounts);
+            output.flush();
+            // Контрольная сумма покрывает всё, кроме себя самой
+            output.writeInt((int) crc.getValue());
+            output.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Читает модель, сохранённую {@link #save(Path)}, через отображение файла в память.
+     *
+     * @throws IOException если файл повреждён или не читается
+     */
+    public static NaiveBayesClassifier load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Модель " + file + " слишком большая");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (size < HEADER_SIZE + 4 + 4 + 4 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Файл " + file + " не является моделью классификатора");
+            }
+            int body = (int) size - 4;
+            CRC32 crc = new CRC32();
+            buffer.limit(body);
+            crc.update(buffer);
+            buffer.limit((int) size);
+            if (buffer.getInt(body) != (int) crc.getValue()) {
+                throw new IOException("Контрольная сумма модели " + file + " не совпадает");
+            }
+
+            buffer.position(8);
+            int featureBits = buffer.getInt();
+            if (featureBits < MIN_FEATURE_BITS || featureBits > MAX_FEATURE_BITS) {
+                throw new IOException("Недопустимый размер таблицы признаков в модели " + file + ": " + featureBits);
+            }
+            NaiveBayesClassifier classifier = new NaiveBayesClassifier(featureBits);
+            classifier.spamDocuments = buffer.getLong();
+            classifier.hamDocuments = buffer.getLong();
+            classifier.spamFeatures = buffer.getLong();
+            classifier.hamFeatures = buffer.getLong();
+            try {
+                readCounts(buffer, classifier.spamCounts);
+                readCounts(buffer, classifier.hamCounts);
+            } catch (RuntimeException e) {
+                throw new IOException("Модель " + file + " повреждена", e);
+            }
+            return classifier;
+        }
+    }
+
+    // Ненулевые счётчики: их количество, затем пары (разность номеров ячеек, значение) в varint
+    private static void writeCounts(DataOutputStream output, int[] counts) throws IOException {
+        int nonZero = 0;
+        for (int count : counts) {
+            if (count != 0) {
+                nonZero++;
+            }
+        }
+        output.writeInt(nonZero);
+        int previous = -1;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                writeVarInt(output, i - previous);
+                writeVarInt(output, counts[i]);
+                previous = i;
+            }
+        }
+    }
+
+    private static void readCounts(MappedByteBuffer buffer, int[] counts) {
+        int nonZero = buffer.getInt();
+        int index = -1;
+        for (int i = 0; i < nonZero; i++) {
+            index += readVarInt(buffer);
+            counts[index] = readVarInt(buffer);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            output.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int readVarInt(MappedByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Слишком длинное число varint");
+    }
+
+    private static double log(int count) {
+        return count < LOG_TABLE_SIZE ? LOG_TABLE[count] : Math.log(count + ALPHA);
+    }
+
+    // Токен целиком (FNV-1a); отдельная затравка, чтобы слово из трёх букв не совпало со своей триграммой
+    private static long wordHash(CharSequence text, int from, int to) {
+        long hash = 0x84222325cbf29ce4L;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long gramHash(CharSequence text, int i) {
+        return mix(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.antispambot;
+
+import java.util.Arrays;
+
+/**
+ * Результат нормализации сообщения: нормализованный текст целиком (без пробелов)
+ * и границы нормализованных токенов внутри него.
+ * Экземпляр переиспользуется в пределах потока (см. {@link TextNormalizer#normalize(CharSequence)}),
+ * поэтому его нельзя сохранять между вызовами — для этого есть {@link #toString()}.
+ */
+final class NormalizedText implements CharSequence {
+    private char[] chars = new char[256];
+    private int length;
+    private int[] tokenStarts = new int[32];
+    private int[] tokenEnds = new int[32];
+    private int tokenCount;
+
+    void reset(int capacity) {
+        if (chars.length < capacity) {
+            chars = new char[Math.max(capacity, chars.length * 2)];
+        }
+        length = 0;
+        tokenCount = 0;
+    }
+
+    void append(char c) {
+        chars[length++] = c;
+    }
+
+    void addToken(int start, int end) {
+        if (tokenCount == tokenStarts.length) {
+            tokenStarts = Arrays.copyOf(tokenStarts, tokenCount * 2);
+            tokenEnds = Arrays.copyOf(tokenEnds, tokenCount * 2);
+        }
+        tokenStarts[tokenCount] = start;
+        tokenEnds[tokenCount] = end;
+        tokenCount++;
+    }
+
+    /**
+     * @return количество непустых нормализованных токенов
+     */
+    int tokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @return начало токена index в нормализованном тексте (включительно)
+     */
+    int tokenStart(int index) {
+        return tokenStarts[index];
+    }
+
+    /**
+     * @return конец токена index в нормализованном тексте (не включительно)
+     */
+    int tokenEnd(int index) {
+        return tokenEnds[index];
+    }
+
+    /**
+     * 64-битный хэш нормализованного текста с границами токенов (FNV-1a с перемешиванием). Никогда
+     * не равен 0, поэтому 0 можно использовать как признак отсутствия значения.
+     * <p>
+     * Слова проверяются по токенам, поэтому «spam word» и «spamword» должны различаться и в кэше
+     * вердиктов, и при поиске повторов; количество пробелов и отброшенные символы на хэш не влияют.
+     */
+    long contentHash() {
+        long hash = 0xcbf29ce484222325L;
+        int token = 0;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ chars[i]) * 0x100000001b3L;
+            if (token < tokenCount && tokenEnds[token] == i + 1) {
+                // Значение вне диапазона char: граница не совпадает ни с одним символом
+                hash = (hash ^ 0x10000) * 0x100000001b3L;
+                token++;
+            }
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,346 @@
+package com.example.antispambot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронная очередь исходящих вызовов Telegram API.
+ * Вызовы группируются по чатам и отправляются через {@code executeAsync} одним планировщиком
+ * с учётом глобального ограничения и ограничений на отправку сообщений в чат (ведра токенов).
+ * Удаления в одном чате обрабатываются пачкой, повторное удаление того же сообщения не ставится в очередь.
+ * Ответы 429 выдерживают паузу {@code retry_after}, временные ошибки повторяются с экспоненциальной задержкой.
+ * Если очередь заполнена, {@link #submit} блокирует вызывающий поток вместо того, чтобы терять действия.
+ * <p>
+ * Лимиты Telegram действуют на каждый токен отдельно, поэтому у каждого бота своя очередь,
+ * но несколько очередей могут работать на одном общем планировщике ({@link #newScheduler()}).
+ */
+public class OutboundActionQueue implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundActionQueue.class);
+
+    // Сколько действий одного чата отправляется за один проход, прежде чем уступить другим чатам
+    private static final int BATCH_SIZE = 20;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // Через сколько повторно проверить, можно ли забыть опустевшую очередь чата
+    private static final long RETIRE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final AbsSender sender;
+    private final int maxPending;
+    private final Semaphore capacity;
+    private final ScheduledExecutorService scheduler;
+    // Общий планировщик останавливает его владелец, а не очередь
+    private final boolean ownsScheduler;
+    private final Map<Long, ChatQueue> chats = new ConcurrentHashMap<>();
+    // Общее ведро используется только потоком планировщика (он однопоточный)
+    private final TokenBucket globalBucket;
+    private final double groupPerMinute;
+    private final double privatePerSecond;
+    // Задержка вызовов Telegram (каждой попытки отдельно)
+    private final Metrics metrics;
+
+    public OutboundActionQueue(AbsSender sender, int maxPending, double globalPerSecond,
+                               double groupPerMinute, double privatePerSecond) {
+        this(sender, maxPending, globalPerSecond, groupPerMinute, privatePerSecond, new Metrics());
+    }
+
+    /**
+     * @param sender           отправитель запросов (бот)
+     * @param maxPending       максимальное количество действий в очереди
+     * @param globalPerSecond  общий лимит запросов в секунду
+     * @param groupPerMinute   лимит сообщений в минуту для групп
+     * @param privatePerSecond лимит сообщений в секунду для личных чатов
+     * @param metrics          куда записывать задержку вызовов
+     */
+    public OutboundActionQueue(AbsSender sender, int maxPending, double globalPerSecond,
+                               double groupPerMinute, double privatePerSecond, Metrics metrics) {
+        this(sender, maxPending, globalPerSecond, groupPerMinute, privatePerSecond, metrics, null);
+    }
+
+    /**
+     * @param scheduler общий планировщик из {@link #newScheduler()} или null, чтобы создать собственный
+     */
+    public OutboundActionQueue(AbsSender sender, int maxPending, double globalPerSecond,
+                               double groupPerMinute, double privatePerSecond, Metrics metrics,
+                               ScheduledExecutorService scheduler) {
+        this.sender = sender;
+        this.metrics = metrics;
+        this.maxPending = maxPending;
+        this.capacity = new Semaphore(maxPending);
+        this.globalBucket = new TokenBucket(globalPerSecond, globalPerSecond, System.nanoTime());
+        this.groupPerMinute = groupPerMinute;
+        this.privatePerSecond = privatePerSecond;
+        this.ownsScheduler = scheduler == null;
+        this.scheduler = scheduler != null ? scheduler : newScheduler();
+    }
+
+    /**
+     * Создаёт однопоточный планировщик, который можно передать нескольким очередям.
+     * Остановить его нужно после закрытия всех очередей.
+     */
+    public static ScheduledExecutorService newScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "outbound-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Ставит вызов в очередь чата. Блокирует поток, пока в очереди нет места.
+     *
+     * @return future, завершаемый результатом вызова или ошибкой после исчерпания попыток
+     */
+    public <T extends Serializable> CompletableFuture<T> submit(long chatId, BotApiMethod<T> method) {
+        Action<T> action = new Action<>(method);
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            action.future.completeExceptionally(e);
+            return action.future;
+        }
+        while (true) {
+            ChatQueue chat = chats.computeIfAbsent(chatId, id -> new ChatQueue(id, System.nanoTime()));
+            synchronized (chat) {
+                if (chat.retired) {
+                    continue;
+                }
+                if (action.messageId != null) {
+                    Action<?> pending = chat.pendingDeletes.get(action.messageId);
+                    if (pending != null) {
+                        // Такое удаление уже ждёт отправки: присоединяемся к нему
+                        capacity.release();
+                        @SuppressWarnings("unchecked")
+                        CompletableFuture<T> future = (CompletableFuture<T>) pending.future;
+                        return future;
+                    }
+                    chat.pendingDeletes.put(action.messageId, action);
+                }
+                chat.actions.addLast(action);
+                scheduleIfIdle(chat, 0);
+            }
+            return action.future;
+        }
+    }
+
+    /**
+     * @return количество действий, ожидающих отправки или завершения
+     */
+    public int getPendingCount() {
+        return maxPending - capacity.availablePermits();
+    }
+
+    /**
+     * Дожидается отправки уже поставленных действий (не дольше 10 секунд) и останавливает
+     * собственный планировщик.
+     */
+    @Override
+    public void close() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (getPendingCount() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    // Планирует обработку очереди чата, если она ещё не запланирована на более раннее время.
+    // Вызывается под блокировкой чата.
+    private void scheduleIfIdle(ChatQueue chat, long delayNanos) {
+        long runAt = System.nanoTime() + delayNanos;
+        if (chat.drainTask != null) {
+            if (runAt - chat.drainAt >= 0) {
+                return;
+            }
+            chat.drainTask.cancel(false);
+        }
+        chat.drainAt = runAt;
+        chat.drainTask = scheduler.schedule(() -> drain(chat), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void drain(ChatQueue chat) {
+        synchronized (chat) {
+            chat.drainTask = null;
+            int sent = 0;
+            while (!chat.actions.isEmpty()) {
+                long now = System.nanoTime();
+                Action<?> action = chat.actions.peekFirst();
+                long wait = Math.max(chat.pausedUntil - now, globalBucket.nanosUntilAvailable(now));
+                if (action.limitedPerChat) {
+                    wait = Math.max(wait, chat.bucket.nanosUntilAvailable(now));
+                }
+                if (wait > 0 || sent >= BATCH_SIZE) {
+                    scheduleIfIdle(chat, Math.max(wait, 0));
+                    return;
+                }
+                chat.actions.pollFirst();
+                if (action.messageId != null) {
+                    chat.pendingDeletes.remove(action.messageId);
+                }
+                globalBucket.take(now);
+                if (action.limitedPerChat) {
+                    chat.bucket.take(now);
+                }
+                chat.inFlight++;
+                sent++;
+                send(chat, action);
+            }
+            // Пустую очередь чата можно забыть, когда её ведро восстановилось и паузы нет
+            if (chat.inFlight == 0) {
+                long now = System.nanoTime();
+                if (chat.pausedUntil <= now && chat.bucket.isFull(now)) {
+                    chat.retired = true;
+                    chats.remove(chat.chatId, chat);
+                } else {
+                    scheduleIfIdle(chat, RETIRE_CHECK_NANOS);
+                }
+            }
+        }
+    }
+
+    private <T extends Serializable> void send(ChatQueue chat, Action<T> action) {
+        action.attempts++;
+        CompletableFuture<T> call;
+        long started = System.nanoTime();
+        try {
+            call = sender.executeAsync(action.method);
+        } catch (TelegramApiException e) {
+            // Запрос не прошёл локальную проверку: повторять бессмысленно
+            complete(chat, action, null, e);
+            return;
+        }
+        call.whenComplete((result, error) -> {
+            metrics.recordLatency(Metrics.Stage.TELEGRAM, System.nanoTime() - started);
+            if (error == null) {
+                complete(chat, action, result, null);
+            } else {
+                onFailure(chat, action, error);
+            }
+        });
+    }
+
+    private <T extends Serializable> void onFailure(ChatQueue chat, Action<T> action, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        long delay = -1;
+        if (cause instanceof TelegramApiRequestException) {
+            TelegramApiRequestException requestError = (TelegramApiRequestException) cause;
+            ResponseParameters parameters = requestError.getParameters();
+            Integer errorCode = requestError.getErrorCode();
+            if (parameters != null && parameters.getRetryAfter() != null) {
+                delay = TimeUnit.SECONDS.toNanos(parameters.getRetryAfter());
+                logger.warn("Превышен лимит Telegram для чата {}, пауза {} с", chat.chatId, parameters.getRetryAfter());
+            } else if (errorCode != null && (errorCode >= 500 || errorCode == 429)) {
+                delay = backoff(action.attempts);
+            }
+        } else {
+            // Сетевая ошибка
+            delay = backoff(action.attempts);
+        }
+        if (delay < 0 || action.attempts >= MAX_ATTEMPTS) {
+            complete(chat, action, null, cause);
+            return;
+        }
+        synchronized (chat) {
+            chat.inFlight--;
+            chat.pausedUntil = Math.max(chat.pausedUntil, System.nanoTime() + delay);
+            // Возвращаем действие в начало очереди, чтобы сохранить порядок внутри чата
+            chat.actions.addFirst(action);
+            if (action.messageId != null) {
+                chat.pendingDeletes.put(action.messageId, action);
+            }
+            scheduleIfIdle(chat, delay);
+        }
+    }
+
+    private <T extends Serializable> void complete(ChatQueue chat, Action<T> action, T result, Throwable error) {
+        synchronized (chat) {
+            chat.inFlight--;
+            if (chat.actions.isEmpty() && chat.inFlight == 0) {
+                // Даём пустой очереди шанс освободиться
+                scheduleIfIdle(chat, 0);
+            }
+        }
+        capacity.release();
+        if (error == null) {
+            action.future.complete(result);
+        } else {
+            logger.error("Не удалось выполнить {} в чате {}: ", action.method.getMethod(), chat.chatId, error);
+            action.future.completeExceptionally(error);
+        }
+    }
+
+    private static long backoff(int attempts) {
+        long delay = BASE_BACKOFF_NANOS << Math.min(attempts - 1, 16);
+        return Math.min(delay, MAX_BACKOFF_NANOS);
+    }
+
+    /**
+     * Очередь действий одного чата. Все поля защищены блокировкой на самом объекте.
+     */
+    private final class ChatQueue {
+        final long chatId;
+        final ArrayDeque<Action<?>> actions = new ArrayDeque<>();
+        // Ожидающие удаления по messageId — для объединения повторов
+        final Map<Integer, Action<?>> pendingDeletes = new HashMap<>();
+        final TokenBucket bucket;
+        long pausedUntil;
+        int inFlight;
+        // Запланированный проход по очереди и время его запуска
+        ScheduledFuture<?> drainTask;
+        long drainAt;
+        boolean retired;
+
+        ChatQueue(long chatId, long now) {
+            this.chatId = chatId;
+            this.pausedUntil = now;
+            // Положительный chatId — личный чат, отрицательный — группа или канал
+            this.bucket = chatId > 0
+                    ? new TokenBucket(1, privatePerSecond, now)
+                    : new TokenBucket(groupPerMinute, groupPerMinute / 60d, now);
+        }
+    }
+
+    private static final class Action<T extends Serializable> {
+        final BotApiMethod<T> method;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        // Номер удаляемого сообщения (только для DeleteMessage)
+        final Integer messageId;
+        // Ограничение на чат относится только к отправке сообщений, а не к удалениям и модерации
+        final boolean limitedPerChat;
+        int attempts;
+
+        Action(BotApiMethod<T> method) {
+            this.method = method;
+            this.messageId = method instanceof DeleteMessage ? ((DeleteMessage) method).getMessageId() : null;
+            this.limitedPerChat = method.getMethod().startsWith("send");
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.antispambot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сохранение списка запрещённых слов, правил чатов и счётчиков спама между перезапусками.
+ * <p>
+ * Общий список слов и правила чатов принадлежат движку, который делят все боты процесса, поэтому
+ * сохраняются в одном каталоге и восстанавливаются один раз ({@link #openShared}, см. {@link BotHost}).
+ * Счётчики спама у каждого бота свои и хранятся в его каталоге ({@link #openUsers}).
+ * <p>
+ * Изменения дописываются в журнал текущего поколения ({@code journal-N.log}). Когда журналы
+ * разрастаются, текущий журнал закрывается, начинается следующий, а состояние из памяти
+ * записывается в снимок ({@code snapshot.bin}) с номером закрытого поколения; журналы
+ * этого и более ранних поколений после этого удаляются. При запуске снимок читается через
+ * отображение в память, и воспроизводятся только журналы более поздних поколений.
+ * Записи журнала идемпотентны (слово добавлено/удалено, новое значение счётчика),
+ * поэтому изменения, попавшие и в снимок, и в следующий журнал, применяются повторно без вреда.
+ */
+public class PersistentState implements StateChangeListener, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PersistentState.class);
+    static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String JOURNAL_SUFFIX = ".log";
+
+    private final Path directory;
+    // Общий список слов и правила чатов; null, если в каталоге только счётчики бота
+    private final SpamFilterEngine engine;
+    // Сервис и счётчики спама бота; null, если в каталоге только общий список
+    private final SpamFilterService service;
+    private final UserStateStore users;
+    private final long compactBytes;
+    private final ScheduledExecutorService scheduler;
+    // Текущий журнал; дописывание и смена журнала выполняются под блокировкой this
+    private StateJournal journal;
+    // Размер журналов прошлых поколений, ещё не вошедших в снимок
+    private volatile long olderJournalBytes;
+
+    private PersistentState(Path directory, SpamFilterEngine engine, SpamFilterService service, UserStateStore users,
+                            long compactBytes) {
+        this.directory = directory;
+        this.engine = engine;
+        this.service = service;
+        this.users = users;
+        this.compactBytes = compactBytes;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "state-persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Восстанавливает общий список запрещённых слов и правила чатов движка и начинает сохранять их изменения.
+     *
+     * @param directory    каталог со снимком и журналами (создаётся при необходимости)
+     * @param flushMillis  как часто сбрасывать журнал в файл
+     * @param compactBytes размер журналов, после которого состояние переписывается в снимок
+     */
+    public static PersistentState openShared(Path directory, SpamFilterEngine engine, long flushMillis,
+                                             long compactBytes) throws IOException {
+        return open(directory, engine, null, null, flushMillis, compactBytes);
+    }
+
+    /**
+     * Восстанавливает счётчики спама бота и начинает сохранять их изменения.
+     *
+     * @param directory каталог бота, отдельный от каталога общего списка
+     * @see #openShared
+     */
+    public static PersistentState openUsers(Path directory, SpamFilterService service, UserStateStore users,
+                                            long flushMillis, long compactBytes) throws IOException {
+        return open(directory, null, service, users, flushMillis, compactBytes);
+    }
+
+    private static PersistentState open(Path directory, SpamFilterEngine engine, SpamFilterService service,
+                                        UserStateStore users, long flushMillis, long compactBytes) throws IOException {
+        Files.createDirectories(directory);
+        PersistentState state = new PersistentState(directory, engine, service, users, compactBytes);
+        long lastGeneration = state.recover();
+        state.journal = StateJournal.create(state.journalPath(lastGeneration + 1), lastGeneration + 1);
+        if (engine != null) {
+            engine.addStateChangeListener(state);
+        }
+        if (service != null) {
+            service.setStateChangeListener(state);
+        }
+        state.scheduler.scheduleWithFixedDelay(state::maintain, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        return state;
+    }
+
+    @Override
+    public void bannedWordAdded(String word) {
+        appendWord(word, true);
+    }
+
+    @Override
+    public void bannedWordRemoved(String word) {
+        appendWord(word, false);
+    }
+
+    @Override
+    public synchronized void chatWordChanged(long chatId, String word, ChatWordState state) {
+        try {
+            journal.chatWordChanged(chatId, word, state);
+            journal.flush();
+        } catch (IOException e) {
+            logger.error("Не удалось сохранить правило чата {} ('{}'): ", chatId, word, e);
+        }
+    }
+
+    // Вызывается под блокировкой счётчика пользователя в хранилище: запись только ложится в буфер журнала,
+    // в файл её отдаёт maintain()
+    @Override
+    public synchronized void spamCountChanged(long userId, int spamCount, long time) {
+        journal.spamCountChanged(userId, spamCount, time);
+    }
+
+    /**
+     * Переписывает состояние в снимок и удаляет журналы, вошедшие в него.
+     */
+    public void compact() throws IOException {
+        StateJournal closed;
+        synchronized (this) {
+            closed = journal;
+            long next = closed.generation() + 1;
+            journal = StateJournal.create(journalPath(next), next);
+        }
+        // В закрытый журнал больше никто не пишет: все изменения из него уже видны в памяти
+        closed.close();
+        long started = System.nanoTime();
+        StateSnapshot.write(directory.resolve(SNAPSHOT_FILE), closed.generation(), engine, users);
+        for (long generation : journalGenerations()) {
+            if (generation <= closed.generation()) {
+                Files.deleteIfExists(journalPath(generation));
+            }
+        }
+        olderJournalBytes = 0;
+        logger.info("Снимок состояния записан за {} мс (поколение {})",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), closed.generation());
+    }
+
+    /**
+     * Записывает итоговый снимок, чтобы следующий запуск не воспроизводил журнал.
+     */
+    @Override
+    public void close() {
+        if (engine != null) {
+            engine.removeStateChangeListener(this);
+        }
+        if (service != null) {
+            service.setStateChangeListener(null);
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            compact();
+        } catch (IOException e) {
+            logger.error("Не удалось записать снимок состояния при остановке: ", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.error("Не удалось закрыть журнал состояния: ", e);
+            }
+        }
+    }
+
+    private synchronized void appendWord(String word, boolean added) {
+        try {
+            if (added) {
+                journal.bannedWordAdded(word);
+            } else {
+                journal.bannedWordRemoved(word);
+            }
+            // Изменения списка редки и важны: сразу отдаём их ОС
+            journal.flush();
+        } catch (IOException e) {
+            logger.error("Не удалось сохранить изменение списка запрещённых слов ('{}'): ", word, e);
+        }
+    }
+
+    // Периодически: сбросить буфер журнала и при необходимости переписать состояние в снимок
+    private void maintain() {
+        try {
+            StateJournal current;
+            synchronized (this) {
+                current = journal;
+            }
+            // Сбрасываем вне блокировки, чтобы дописывание счётчиков не ждало диска
+            current.flush();
+            long journalBytes = current.size();
+            if (journalBytes + olderJournalBytes > compactBytes) {
+                compact();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Ошибка обслуживания журнала состояния: ", e);
+        }
+    }
+
+    // Читает снимок и журналы более поздних поколений; возвращает последнее занятое поколение
+    private long recover() throws IOException {
+        long started = System.nanoTime();
+        long now = System.currentTimeMillis();
+        Recovery recovery = new Recovery(now);
+        long snapshotGeneration = 0;
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try {
+                snapshotGeneration = StateSnapshot.load(snapshot, recovery);
+                recovery.found = true;
+            } catch (IOException e) {
+                logger.error("Снимок состояния {} не прочитан, восстанавливаем только из журналов: ", snapshot, e);
+            }
+        }
+        long lastGeneration = snapshotGeneration;
+        long records = 0;
+        for (long generation : journalGenerations()) {
+            lastGeneration = Math.max(lastGeneration, generation);
+            Path file = journalPath(generation);
+            if (generation <= snapshotGeneration) {
+                // Остался после сбоя между записью снимка и удалением журналов
+                Files.deleteIfExists(file);
+                continue;
+            }
+            try {
+                records += StateJournal.replay(file, recovery);
+                recovery.found = true;
+                olderJournalBytes += Files.size(file);
+            } catch (IOException e) {
+                logger.error("Журнал состояния {} не прочитан: ", file, e);
+            }
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        if (engine != null) {
+            if (recovery.found) {
+                engine.setBannedWords(recovery.words);
+                for (Map.Entry<Long, ChatRules> entry : recovery.chats.entrySet()) {
+                    engine.setChatRules(entry.getKey(), entry.getValue().added, entry.getValue().excluded);
+                }
+            }
+            logger.info("Общий список восстановлен из {} за {} мс: запрещённых слов {}, чатов со своими правилами {}, "
+                            + "записей журнала {}", directory, millis, engine.getManualBannedWords().size(),
+                    engine.getChatRuleCount(), records);
+        } else {
+            logger.info("Счётчики спама восстановлены из {} за {} мс: записей журнала {}, пользователей {}",
+                    directory, millis, records, users.size());
+        }
+        return lastGeneration;
+    }
+
+    private List<Long> journalGenerations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, JOURNAL_PREFIX + "*" + JOURNAL_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(
+                            name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.warn("Пропущен посторонний файл {}", file);
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private Path journalPath(long generation) {
+        return directory.resolve(JOURNAL_PREFIX + generation + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Собирает список слов и правила чатов (чтобы скомпилировать индексы один раз) и восстанавливает счётчики.
+     * Записи той части состояния, которая в каталоге не хранится, пропускаются.
+     */
+    private final class Recovery implements StateChangeListener {
+        private final long now;
+        private final Set<String> words = new LinkedHashSet<>();
+        private final Map<Long, ChatRules> chats = new HashMap<>();
+        private boolean found;
+
+        Recovery(long now) {
+            this.now = now;
+        }
+
+        @Override
+        public void bannedWordAdded(String word) {
+            words.add(word);
+        }
+
+        @Override
+        public void bannedWordRemoved(String word) {
+            words.remove(word);
+        }
+
+        @Override
+        public void chatWordChanged(long chatId, String word, ChatWordState state) {
+            ChatRules rules = chats.computeIfAbsent(chatId, id -> new ChatRules());
+            rules.added.remove(word);
+            rules.excluded.remove(word);
+            if (state == ChatWordState.ADDED) {
+                rules.added.add(word);
+            } else if (state == ChatWordState.EXCLUDED) {
+                rules.excluded.add(word);
+            }
+        }
+
+        @Override
+        public void spamCountChanged(long userId, int spamCount, long time) {
+            if (users != null) {
+                users.restoreSpamCount(userId, spamCount, time, now);
+            }
+        }
+    }
+
+    private static final class ChatRules {
+        final Set<String> added = new LinkedHashSet<>();
+        final Set<String> excluded = new LinkedHashSet<>();
+    }
+}
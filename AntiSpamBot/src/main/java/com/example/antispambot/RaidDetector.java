@@ -0,0 +1,326 @@
+package com.example.antispambot;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Обнаружение рейдов: почти одинаковых сообщений от разных пользователей одного чата.
+ * <p>
+ * Нормализованный текст сводится к 64-битному отпечатку SimHash по символьным триграммам, близость
+ * отпечатков — расстояние Хэмминга. Для каждого чата хранится скользящее окно последних сообщений
+ * в кольцевом буфере примитивных массивов. Отпечаток делится на {@value #BANDS} полос по 8 бит,
+ * и для каждой полосы ведутся корзины LSH: цепочки сообщений с одинаковым значением полосы, от новых
+ * к старым. При расстоянии не больше {@code BANDS - 1} хотя бы одна полоса совпадает точно, поэтому
+ * кандидаты ищутся только в своих корзинах, а не перебором всего окна.
+ * Сообщение отмечается как рейд, если вместе с ним в окне набирается {@code threshold} разных пользователей
+ * с похожими сообщениями.
+ */
+public class RaidDetector {
+    static final int BANDS = 8;
+    private static final int BAND_BITS = 64 / BANDS;
+    // Различие отпечатков по умолчанию: мелкие правки (число, эмодзи, регистр) меняют 3–6 бит,
+    // у несвязанных текстов различаются около 32 бит
+    static final int DEFAULT_MAX_DISTANCE = 6;
+    // Короткие сообщения («привет», «спасибо») похожи и без всякого рейда
+    static final int MIN_TEXT_LENGTH = 16;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // SPREAD[v] раскладывает 8 бит v по 8 байтам: байт k равен биту k
+    private static final long[] SPREAD = new long[256];
+    // Счётчики битов SimHash: 8 слов по 8 байтовых счётчиков и итоговые суммы
+    private static final ThreadLocal<long[]> PACKED = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[8];
+        }
+    };
+    private static final ThreadLocal<int[]> WEIGHTS = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[64];
+        }
+    };
+
+    static {
+        for (int v = 0; v < 256; v++) {
+            long spread = 0;
+            for (int k = 0; k < 8; k++) {
+                spread |= (long) ((v >>> k) & 1) << (8 * k);
+            }
+            SPREAD[v] = spread;
+        }
+    }
+
+    private final int threshold;
+    private final long windowMillis;
+    private final int maxMessages;
+    private final int maxDistance;
+    private final int maxChats;
+    private final Map<Long, ChatWindow> chats = new ConcurrentHashMap<>();
+
+    /**
+     * @param threshold     сколько разных пользователей с похожими сообщениями считать рейдом (0 — выключено)
+     * @param windowSeconds длительность окна
+     * @param maxMessages   максимальное количество сообщений в окне одного чата
+     * @param maxDistance   максимальное расстояние Хэмминга между отпечатками похожих сообщений (не больше 7)
+     * @param maxChats      сколько чатов отслеживать одновременно
+     */
+    public RaidDetector(int threshold, int windowSeconds, int maxMessages, int maxDistance, int maxChats) {
+        this.threshold = threshold;
+        this.windowMillis = windowSeconds * 1000L;
+        this.maxMessages = Integer.highestOneBit(Math.max(INITIAL_CAPACITY, maxMessages - 1) << 1);
+        this.maxDistance = Math.max(0, Math.min(BANDS - 1, maxDistance));
+        this.maxChats = Math.max(1, maxChats);
+    }
+
+    /**
+     * Добавляет сообщение в окно чата и проверяет, не является ли оно частью рейда.
+     *
+     * @param normalized нормализованный текст сообщения
+     * @return true, если похожие сообщения прислали не меньше threshold разных пользователей
+     */
+    public boolean check(long chatId, long userId, CharSequence normalized, long now) {
+        if (threshold <= 0 || normalized.length() < MIN_TEXT_LENGTH) {
+            return false;
+        }
+        long fingerprint = simHash(normalized);
+        ChatWindow window = windowFor(chatId, now);
+        synchronized (window) {
+            return window.addAndCountUsers(fingerprint, userId, now) >= threshold;
+        }
+    }
+
+    /**
+     * То же, что {@link #check}, но при обнаружении рейда возвращает остальных пользователей
+     * с похожими сообщениями в окне (не больше {@code threshold - 1}), например чтобы ограничить всех разом.
+     *
+     * @return другие участники рейда или null, если рейда нет
+     */
+    public long[] checkParticipants(long chatId, long userId, CharSequence normalized, long now) {
+        if (threshold <= 0 || normalized.length() < MIN_TEXT_LENGTH) {
+            return null;
+        }
+        long fingerprint = simHash(normalized);
+        ChatWindow window = windowFor(chatId, now);
+        synchronized (window) {
+            int users = window.addAndCountUsers(fingerprint, userId, now);
+            return users >= threshold ? Arrays.copyOf(window.foundUsers, users - 1) : null;
+        }
+    }
+
+    /**
+     * @return количество отслеживаемых чатов
+     */
+    public int getChatCount() {
+        return chats.size();
+    }
+
+    /**
+     * SimHash по символьным триграммам: бит отпечатка равен 1, если этот бит установлен в хэшах
+     * больше чем половины триграмм. Счётчики битов упакованы по 8 в long и увеличиваются через
+     * таблицу по байту хэша, поэтому на триграмму уходит 8 сложений, а не 64.
+     */
+    static long simHash(CharSequence text) {
+        long[] packed = PACKED.get();
+        int[] weights = WEIGHTS.get();
+        Arrays.fill(packed, 0L);
+        Arrays.fill(weights, 0);
+        int shingles = Math.max(0, text.length() - 2);
+        for (int i = 0; i < shingles; i++) {
+            long hash = mix(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+            for (int j = 0; j < 8; j++) {
+                packed[j] += SPREAD[(int) (hash >>> (8 * j)) & 0xff];
+            }
+            // Байтовый счётчик переполнится на 256-й триграмме: переносим суммы заранее
+            if ((i & 0xff) == 0xfe) {
+                unpack(packed, weights);
+            }
+        }
+        unpack(packed, weights);
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (2 * weights[bit] > shingles) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    private static void unpack(long[] packed, int[] weights) {
+        for (int j = 0; j < 8; j++) {
+            long counters = packed[j];
+            for (int k = 0; k < 8; k++) {
+                weights[8 * j + k] += (int) (counters >>> (8 * k)) & 0xff;
+            }
+            packed[j] = 0;
+        }
+    }
+
+    private ChatWindow windowFor(long chatId, long now) {
+        ChatWindow window = chats.get(chatId);
+        if (window == null) {
+            if (chats.size() >= maxChats) {
+                evictIdleChats(now);
+            }
+            window = chats.computeIfAbsent(chatId, id -> new ChatWindow());
+        }
+        return window;
+    }
+
+    // Забывает чаты без сообщений в пределах окна; если таких нет, освобождает место за счёт любого чата
+    private void evictIdleChats(long now) {
+        Iterator<ChatWindow> iterator = chats.values().iterator();
+        boolean removed = false;
+        while (iterator.hasNext()) {
+            ChatWindow window = iterator.next();
+            if (window.lastSeen < now - windowMillis) {
+                iterator.remove();
+                removed = true;
+            }
+        }
+        iterator = chats.values().iterator();
+        if (!removed && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Окно одного чата. Сообщения нумеруются по порядку поступления (seq), сообщение seq лежит
+     * в ячейке {@code seq & mask}. Корзины хранят seq последнего сообщения с данным значением полосы,
+     * {@code chain} — seq предыдущего сообщения в той же корзине. Перезаписанные и устаревшие
+     * сообщения из корзин не удаляются: цепочка упорядочена от новых к старым, и обход
+     * прекращается на первом сообщении, выпавшем из окна.
+     */
+    private final class ChatWindow {
+        private int mask;
+        private long[] fingerprints;
+        private long[] userIds;
+        private long[] times;
+        private int[][] chain;
+        private int[][] buckets;
+        // Отметки просмотренных при текущем поиске сообщений и найденных пользователей
+        private int[] visited;
+        private long[] foundUsers;
+        private int lookup;
+        private int nextSeq = 1;
+        private volatile long lastSeen;
+
+        ChatWindow() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        // Возвращает количество разных пользователей (включая отправителя) с похожими сообщениями в окне
+        int addAndCountUsers(long fingerprint, long userId, long now) {
+            lastSeen = now;
+            int users = countSimilarUsers(fingerprint, userId, now) + 1;
+            insert(fingerprint, userId, now);
+            return users;
+        }
+
+        private int countSimilarUsers(long fingerprint, long userId, long now) {
+            lookup++;
+            int found = 0;
+            long oldestTime = now - windowMillis;
+            int oldestSeq = nextSeq - (mask + 1);
+            for (int band = 0; band < BANDS; band++) {
+                int seq = buckets[band][bucketOf(fingerprint, band)];
+                while (seq > oldestSeq && seq > 0) {
+                    int slot = seq & mask;
+                    if (times[slot] < oldestTime) {
+                        break;
+                    }
+                    if (visited[slot] != lookup) {
+                        visited[slot] = lookup;
+                        long otherUser = userIds[slot];
+                        if (otherUser != userId && Long.bitCount(fingerprints[slot] ^ fingerprint) <= maxDistance
+                                && addUser(otherUser, found)) {
+                            found++;
+                            if (found + 1 >= threshold) {
+                                return found;
+                            }
+                        }
+                    }
+                    seq = chain[band][slot];
+                }
+            }
+            return found;
+        }
+
+        // Пользователей до порога немного, поэтому хватает линейного поиска
+        private boolean addUser(long userId, int found) {
+            for (int i = 0; i < found; i++) {
+                if (foundUsers[i] == userId) {
+                    return false;
+                }
+            }
+            foundUsers[found] = userId;
+            return true;
+        }
+
+        private void insert(long fingerprint, long userId, long now) {
+            int oldestSlot = nextSeq & mask;
+            // Окно заполнено сообщениями, которые ещё не устарели: растём, пока не упрёмся в лимит
+            if (fingerprints.length < maxMessages && times[oldestSlot] >= now - windowMillis
+                    && nextSeq > mask + 1) {
+                grow();
+            }
+            put(fingerprint, userId, now);
+        }
+
+        private void put(long fingerprint, long userId, long now) {
+            int seq = nextSeq++;
+            int slot = seq & mask;
+            fingerprints[slot] = fingerprint;
+            userIds[slot] = userId;
+            times[slot] = now;
+            for (int band = 0; band < BANDS; band++) {
+                int bucket = bucketOf(fingerprint, band);
+                chain[band][slot] = buckets[band][bucket];
+                buckets[band][bucket] = seq;
+            }
+        }
+
+        // Полоса из 8 бит сама служит номером корзины
+        private int bucketOf(long fingerprint, int band) {
+            return (int) (fingerprint >>> (band * BAND_BITS)) & ((1 << BAND_BITS) - 1);
+        }
+
+        private void grow() {
+            long[] oldFingerprints = fingerprints;
+            long[] oldUsers = userIds;
+            long[] oldTimes = times;
+            int oldMask = mask;
+            int firstSeq = Math.max(1, nextSeq - (oldMask + 1));
+            int lastSeq = nextSeq;
+            allocate((oldMask + 1) * 2);
+            nextSeq = firstSeq;
+            for (int seq = firstSeq; seq < lastSeq; seq++) {
+                int slot = seq & oldMask;
+                put(oldFingerprints[slot], oldUsers[slot], oldTimes[slot]);
+            }
+        }
+
+        private void allocate(int capacity) {
+            mask = capacity - 1;
+            fingerprints = new long[capacity];
+            userIds = new long[capacity];
+            times = new long[capacity];
+            chain = new int[BANDS][capacity];
+            buckets = new int[BANDS][1 << BAND_BITS];
+            visited = new int[capacity];
+            foundUsers = new long[Math.max(1, threshold)];
+        }
+    }
+}
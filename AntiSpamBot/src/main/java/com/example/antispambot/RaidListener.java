@@ -0,0 +1,15 @@
+package com.example.antispambot;
+
+/**
+ * Получатель сообщений об обнаруженных рейдах (см. {@link RaidDetector}).
+ */
+public interface RaidListener {
+
+    /**
+     * Вызывается в потоке проверки сообщения для каждого сообщения, признанного частью рейда.
+     *
+     * @param userId       отправитель сообщения
+     * @param participants другие пользователи, приславшие похожие сообщения
+     */
+    void raidDetected(long chatId, long userId, long[] participants);
+}
@@ -0,0 +1,269 @@
+package com.example.antispambot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Теневая проверка списка-кандидата запрещённых слов на выборке реального потока.
+ * <p>
+ * Проверка сообщения только с заданной вероятностью кладёт его текст и снимки действующих списков
+ * в ограниченную очередь ({@link #offer}); если очередь полна, образец отбрасывается. Отдельный поток
+ * считает вердикт действующего списка по этим снимкам (независимо от того, какая ступень сработала
+ * в фильтре) и проверяет текст кандидатом, скомпилированным целиком так же, как действующий список.
+ * Время замеряется на проверку сообщения всем кандидатом. Цена отдельного слова — сколько раз оно
+ * было кандидатом на сравнение расстояния в общем фуззи-индексе: точный поиск проходит текст один раз
+ * при любом числе слов, а сравнения растут со словами, близкими к частым словам потока. Это счётчик,
+ * а не время, поэтому он не зависит от шума замеров. Теневая проверка ничего не удаляет и не влияет
+ * на вердикт.
+ * <p>
+ * Отчёт ({@link #report}) показывает самые дорогие и ни разу не сработавшие слова, чтобы сокращать список.
+ */
+final class ShadowEvaluator implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ShadowEvaluator.class);
+    private static final int QUEUE_CAPACITY = 1024;
+
+    // Нормализованные слова и их запись в файле кандидата (для отчёта)
+    private final String[] words;
+    private final String[] titles;
+    // Индексы всего кандидата; номера слов в обоих совпадают с номерами в words (список отсортирован)
+    private final AhoCorasickMatcher exact;
+    private final FuzzyMatcher fuzzy;
+    private final double sampleRate;
+    private final BlockingQueue<Sample> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder dropped = new LongAdder();
+    private final Thread thread;
+
+    // Статистика; меняется и читается под блокировкой this
+    private final long[] hits;
+    private final long[] overlaps;
+    private final long[] comparisons;
+    private final boolean[] matched;
+    private long evaluated;
+    private long nanos;
+    private long liveHits;
+    private long candidateHits;
+    private long bothHits;
+
+    /**
+     * @param candidateWords слова кандидата (нормализуются)
+     * @param sampleRate     доля проверяемых сообщений, от 0 до 1
+     */
+    ShadowEvaluator(Collection<String> candidateWords, double sampleRate) {
+        Map<String, String> normalized = new TreeMap<>();
+        for (String word : candidateWords) {
+            String value = SpamFilterService.normalizeWord(word);
+            if (!value.isEmpty()) {
+                normalized.putIfAbsent(value, word.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        words = normalized.keySet().toArray(new String[0]);
+        titles = normalized.values().toArray(new String[0]);
+        exact = AhoCorasickMatcher.compile(Arrays.asList(words));
+        fuzzy = FuzzyMatcher.compile(Arrays.asList(words));
+        hits = new long[words.length];
+        overlaps = new long[words.length];
+        comparisons = new long[words.length];
+        matched = new boolean[words.length];
+        this.sampleRate = sampleRate;
+        thread = new Thread(this::run, "shadow-evaluator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Отбирает сообщение в выборку. Не блокирует и не выделяет памяти, если сообщение не отобрано.
+     *
+     * @param text    исходный текст сообщения
+     * @param base    общий список, по которому проверялось сообщение
+     * @param overlay правила чата сообщения или null
+     */
+    void offer(String text, BannedWords base, ChatRuleSets.Overlay overlay) {
+        if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        if (!queue.offer(new Sample(text, base, overlay))) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Проверяет сообщение кандидатом (в потоке вызывающего).
+     *
+     * @param liveHit сработал бы на сообщении действующий список слов
+     */
+    synchronized void evaluate(String text, boolean liveHit) {
+        NormalizedText normalized = TextNormalizer.normalize(text);
+        long started = System.nanoTime();
+        boolean candidateHit = matches(normalized);
+        nanos += System.nanoTime() - started;
+
+        // Разбор по словам: без раннего выхода, поэтому вне замера времени
+        Arrays.fill(matched, false);
+        for (int t = 0; t < normalized.tokenCount(); t++) {
+            int from = normalized.tokenStart(t);
+            int to = normalized.tokenEnd(t);
+            exact.markMatches(normalized, from, to, matched);
+            fuzzy.profile(normalized, from, to, comparisons, matched);
+        }
+        for (int i = 0; i < words.length; i++) {
+            if (matched[i]) {
+                hits[i]++;
+                if (liveHit) {
+                    overlaps[i]++;
+                }
+            }
+        }
+        evaluated++;
+        if (liveHit) {
+            liveHits++;
+        }
+        if (candidateHit) {
+            candidateHits++;
+            if (liveHit) {
+                bothHits++;
+            }
+        }
+    }
+
+    // Та же проверка, что у действующего списка: точное совпадение, затем фуззи-сравнение
+    private boolean matches(NormalizedText normalized) {
+        for (int t = 0; t < normalized.tokenCount(); t++) {
+            if (exact.containsAny(normalized, normalized.tokenStart(t), normalized.tokenEnd(t))) {
+                return true;
+            }
+        }
+        for (int t = 0; t < normalized.tokenCount(); t++) {
+            if (fuzzy.matches(normalized, normalized.tokenStart(t), normalized.tokenEnd(t))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized long getEvaluated() {
+        return evaluated;
+    }
+
+    /**
+     * @return срабатывания слова кандидата или -1, если такого слова нет
+     */
+    synchronized long getHits(String word) {
+        for (int i = 0; i < words.length; i++) {
+            if (words[i].equals(SpamFilterService.normalizeWord(word))) {
+                return hits[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return сравнения расстояния со словом кандидата или -1, если такого слова нет
+     */
+    synchronized long getComparisons(String word) {
+        for (int i = 0; i < words.length; i++) {
+            if (words[i].equals(SpamFilterService.normalizeWord(word))) {
+                return comparisons[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Отчёт для команды /shadow.
+     *
+     * @param limit сколько слов показывать в каждом списке
+     */
+    synchronized String report(int limit) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Теневой список: слов ").append(words.length)
+                .append(", проверено сообщений ").append(evaluated)
+                .append(" (выборка ").append(String.format("%.1f", sampleRate * 100)).append("%, пропущено ")
+                .append(dropped.sum()).append(")");
+        if (evaluated > 0) {
+            sb.append("\nПроверка сообщения кандидатом: ")
+                    .append(TimeUnit.NANOSECONDS.toMicros(nanos * 1000 / evaluated)).append(" мкс на 1000 сообщений");
+        }
+        sb.append("\nСработали оба списка: ").append(bothHits)
+                .append(", только теневой: ").append(candidateHits - bothHits)
+                .append(", только действующий: ").append(liveHits - bothHits);
+        if (evaluated == 0) {
+            return sb.toString();
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < words.length; i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> Long.compare(comparisons[b], comparisons[a]));
+        sb.append("\nСамые дорогие (сравнений расстояния на 1000 сообщений, срабатываний, из них вместе с действующим):");
+        for (int i = 0; i < Math.min(limit, order.size()); i++) {
+            int word = order.get(i);
+            sb.append("\n").append(titles[word]).append(": ")
+                    .append(comparisons[word] * 1000 / evaluated)
+                    .append(", ").append(hits[word]).append(", ").append(overlaps[word]);
+        }
+
+        List<String> neverHit = new ArrayList<>();
+        for (int word : order) {
+            if (hits[word] == 0) {
+                neverHit.add(titles[word]);
+            }
+        }
+        sb.append("\nНи разу не сработали: ").append(neverHit.size());
+        if (!neverHit.isEmpty()) {
+            sb.append(" — ").append(String.join(", ", neverHit.subList(0, Math.min(limit, neverHit.size()))));
+            if (neverHit.size() > limit) {
+                sb.append(", …");
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Sample sample = queue.take();
+                try {
+                    NormalizedText normalized = TextNormalizer.normalize(sample.text);
+                    boolean liveHit = SpamFilterEngine.matchExact(sample.base, sample.overlay, normalized) != null
+                            || SpamFilterEngine.matchFuzzy(sample.base, sample.overlay, normalized) != null;
+                    evaluate(sample.text, liveHit);
+                } catch (RuntimeException e) {
+                    logger.error("Ошибка теневой проверки: ", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Теневая проверка остановлена
+        }
+    }
+
+    private static final class Sample {
+        final String text;
+        final BannedWords base;
+        final ChatRuleSets.Overlay overlay;
+
+        Sample(String text, BannedWords base, ChatRuleSets.Overlay overlay) {
+            this.text = text;
+            this.base = base;
+            this.overlay = overlay;
+        }
+    }
+}
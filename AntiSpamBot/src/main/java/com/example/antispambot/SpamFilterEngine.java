@@ -0,0 +1,535 @@
+package com.example.antispambot;
+
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Проверка сообщений по содержимому: списки запрещённых слов со скомпилированными автоматами,
+ * правила чатов, кэш вердиктов, заблокированные домены и классификатор.
+ * <p>
+ * Движок не хранит ничего о пользователях и не ведёт статистику, поэтому один экземпляр может
+ * обслуживать несколько ботов (см. {@link BotHost}): каждый бот проверяет сообщения через свой
+ * {@link SpamFilterService} со своими счётчиками, а списки слов и автоматы в памяти одни на всех.
+ * Движок потокобезопасен: списки заменяются целиком (copy-on-write) и читаются без блокировок.
+ */
+public class SpamFilterEngine {
+    // Запрещённые слова в нормализованном виде вместе со скомпилированными автоматами:
+    // общий список и правила отдельных чатов. Снимки неизменяемые и заменяются целиком
+    // при изменении списка (copy-on-write), поэтому проверка сообщений читает их без блокировок.
+    private final ChatRuleSets ruleSets = new ChatRuleSets();
+    private final Object bannedWordsLock = new Object();
+    // Общий список — объединение слов, добавленных командами (они сохраняются в журнал),
+    // и слов из файлов списков (они перечитываются из файлов). Меняются под bannedWordsLock.
+    private volatile Set<String> manualWords = Collections.emptySet();
+    private volatile Set<String> listWords = Collections.emptySet();
+    // Версия исходных наборов общего списка и версия, по которой собран действующий автомат;
+    // автомат собирается без блокировки и публикуется, только если наборы за это время не изменились
+    private int baseVersion;
+    private int publishedBaseVersion;
+    // Поколение списков слов: меняется при любом изменении общего списка или правил чатов,
+    // после чего вердикты, запомненные для прежнего поколения, не используются
+    private volatile int bannedWordsGeneration;
+    // Вердикты проверки по спискам слов для уже встречавшихся текстов, null — кэш выключен
+    private volatile VerdictCache verdictCache = new VerdictCache(DEFAULT_VERDICT_CACHE_SIZE);
+    // Получатели изменений списков слов (журналы ботов, которые используют движок)
+    private final List<StateChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // Классификатор по содержимому сообщений, null — выключен
+    private volatile NaiveBayesClassifier classifier;
+    // Заблокированные домены; список заменяется целиком
+    private volatile DomainTrie blockedDomains = new DomainTrie();
+    private volatile double classifierThreshold;
+    private volatile int classifierMinDocuments;
+    // Сколько прошедших проверку сообщений ещё взять в обучение как обычные: по одному на каждое
+    // спам-сообщение, выученное по удалению, чтобы классы пополнялись вровень
+    private final AtomicLong hamCredit = new AtomicLong();
+    // Теневая проверка списка-кандидата на выборке сообщений, null — выключена
+    private volatile ShadowEvaluator shadow;
+
+    // Ёмкость кэша вердиктов по умолчанию
+    public static final int DEFAULT_VERDICT_CACHE_SIZE = 65536;
+    // Вердикт кэша «в тексте нет запрещённых слов»; иначе в кэше номер правила + 1
+    private static final int VERDICT_CLEAN = 0;
+    private static final Metrics.Rule[] RULES = Metrics.Rule.values();
+
+    public SpamFilterEngine() {
+        // Изначально добавляем несколько запрещённых слов (нормализованных)
+        addBannedWord("spamword1");
+        addBannedWord("spamword2");
+    }
+
+    /**
+     * Проверяет текст сообщения по заблокированным доменам, спискам слов чата и классификатору
+     * от дешёвых проверок к дорогим: запомненный вердикт, ссылки и точное совпадение, затем
+     * фуззи-сравнение и классификатор. При сбросе нагрузки дорогие ступени пропускаются.
+     *
+     * @param normalized  нормализованный текст сообщения
+     * @param messageHash отпечаток нормализованного текста, 0 — текст без букв и цифр
+     * @param metrics     статистика бота, в которую записываются обращения к кэшу вердиктов
+     * @param level       какие ступени выполнять
+     * @return сработавшее правило или null
+     */
+    Metrics.Rule check(Message message, NormalizedText normalized, long messageHash, Metrics metrics,
+                       LoadShedder.Level level) {
+        // Список чата (без чата — общий список). Поколение читается до списка: если список успеют
+        // заменить, вердикт запомнится со старым поколением и просто не будет использован
+        int generation = bannedWordsGeneration;
+        BannedWords base = ruleSets.base();
+        ChatRuleSets.Overlay overlay = message.getChat() == null ? null : ruleSets.overlay(message.getChatId());
+        // Выборка для теневой проверки списка-кандидата: вердикт действующего списка для неё считается
+        // в потоке теневой проверки по этим же снимкам, независимо от того, какая ступень сработает здесь
+        ShadowEvaluator candidate = shadow;
+        if (candidate != null && level == LoadShedder.Level.FULL) {
+            candidate.offer(message.getText(), base, overlay);
+        }
+        // Такой же текст уже проверялся по этому списку (например, во время рейда)
+        VerdictCache cache = verdictCache;
+        long cacheKey = 0;
+        int cached = VerdictCache.MISS;
+        if (cache != null && messageHash != 0) {
+            cacheKey = VerdictCache.key(messageHash, overlay == null ? 0 : message.getChatId());
+            cached = cache.get(cacheKey, generation);
+            if (cached == VerdictCache.MISS) {
+                metrics.verdictCacheMiss();
+            } else {
+                metrics.verdictCacheHit();
+                if (cached != VERDICT_CLEAN) {
+                    return RULES[cached - 1];
+                }
+            }
+        }
+        if (level == LoadShedder.Level.MINIMAL) {
+            return null;
+        }
+
+        // Ссылки на заблокированные домены (в исходном тексте и скрытых ссылках)
+        Metrics.Rule matched = LinkExtractor.containsBlocked(message, blockedDomains) ? Metrics.Rule.LINK : null;
+        if (matched == null && cached == VerdictCache.MISS) {
+            matched = matchExact(base, overlay, normalized);
+            boolean complete = level == LoadShedder.Level.FULL;
+            if (matched == null && complete) {
+                matched = matchFuzzy(base, overlay, normalized);
+            }
+            // Без фуззи-сравнения «чисто» — неполный вердикт, его не запоминаем
+            if (cache != null && messageHash != 0 && (matched != null || complete)) {
+                cache.put(cacheKey, generation, matched == null ? VERDICT_CLEAN : matched.ordinal() + 1);
+            }
+        }
+        // Классификатор включается, когда обучен на достаточном количестве сообщений обоих классов
+        NaiveBayesClassifier model = classifier;
+        if (matched == null && level == LoadShedder.Level.FULL && model != null
+                && model.isTrained(classifierMinDocuments)
+                && model.spamProbability(normalized) >= classifierThreshold) {
+            matched = Metrics.Rule.CLASSIFIER;
+        }
+        return matched;
+    }
+
+    // Содержит ли какое-либо слово сообщения запрещённое слово как подстроку: один проход общего автомата
+    // по слову (разрешённые в чате слова отсеиваются среди совпадений) и один — автомата слов чата
+    static Metrics.Rule matchExact(BannedWords base, ChatRuleSets.Overlay overlay, NormalizedText normalized) {
+        Set<String> excluded = overlay == null ? Collections.<String>emptySet() : overlay.excluded;
+        for (int t = 0; t < normalized.tokenCount(); t++) {
+            int from = normalized.tokenStart(t);
+            int to = normalized.tokenEnd(t);
+            if (base.matcher.containsAny(normalized, from, to, excluded)
+                    || overlay != null && overlay.words.matcher.containsAny(normalized, from, to)) {
+                return Metrics.Rule.EXACT;
+            }
+        }
+        return null;
+    }
+
+    // Похоже ли какое-либо слово сообщения на запрещённое (фуззи‑сравнение по расстоянию Левенштейна)
+    static Metrics.Rule matchFuzzy(BannedWords base, ChatRuleSets.Overlay overlay, NormalizedText normalized) {
+        Set<String> excluded = overlay == null ? Collections.<String>emptySet() : overlay.excluded;
+        for (int t = 0; t < normalized.tokenCount(); t++) {
+            int from = normalized.tokenStart(t);
+            int to = normalized.tokenEnd(t);
+            if (base.fuzzy.matches(normalized, from, to, excluded)
+                    || overlay != null && overlay.words.fuzzy.matches(normalized, from, to)) {
+                return Metrics.Rule.FUZZY;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Задаёт ёмкость кэша вердиктов (0 — выключить кэш). Запомненные вердикты сбрасываются.
+     */
+    public void setVerdictCacheSize(int entries) {
+        this.verdictCache = entries > 0 ? new VerdictCache(entries) : null;
+    }
+
+    /**
+     * @return количество запомненных вердиктов или -1, если кэш выключен
+     */
+    public int getVerdictCacheSize() {
+        VerdictCache cache = verdictCache;
+        return cache == null ? -1 : cache.size();
+    }
+
+    /**
+     * Заменяет список заблокированных доменов. Список после вызова не должен меняться.
+     */
+    public void setBlockedDomains(DomainTrie domains) {
+        this.blockedDomains = domains;
+    }
+
+    public DomainTrie getBlockedDomains() {
+        return blockedDomains;
+    }
+
+    /**
+     * Подключает классификатор (null — выключить).
+     *
+     * @param threshold    вероятность спама, начиная с которой сообщение удаляется
+     * @param minDocuments сколько сообщений каждого класса нужно модели, прежде чем ей доверять
+     */
+    public void setClassifier(NaiveBayesClassifier classifier, double threshold, int minDocuments) {
+        this.classifierThreshold = threshold;
+        this.classifierMinDocuments = minDocuments;
+        this.classifier = classifier;
+    }
+
+    public NaiveBayesClassifier getClassifier() {
+        return classifier;
+    }
+
+    /**
+     * @return true, если классификатор подключён и обучен достаточно, чтобы ему доверять
+     */
+    public boolean isClassifierTrained() {
+        NaiveBayesClassifier model = classifier;
+        return model != null && model.isTrained(classifierMinDocuments);
+    }
+
+    /**
+     * Дообучает классификатор на сообщении, удаление которого подтвердил Telegram.
+     * Учитываются только правила по содержимому текста: частота и повтор ничего не говорят о тексте,
+     * а собственные срабатывания классификатора только закрепляли бы его ошибки.
+     * Каждое такое сообщение позволяет взять в обучение одно обычное (см. {@link #messagePassed}).
+     */
+    public void spamDeleted(String text, Metrics.Rule rule) {
+        NaiveBayesClassifier model = classifier;
+        if (model != null && (rule == Metrics.Rule.LINK || rule == Metrics.Rule.EXACT
+                || rule == Metrics.Rule.FUZZY || rule == Metrics.Rule.RAID)) {
+            model.train(text, true);
+            hamCredit.incrementAndGet();
+        }
+    }
+
+    /**
+     * Сообщение прошло все проверки. Если спама по удалениям выучено больше, чем обычных сообщений,
+     * дообучает классификатор на нём как на обычном: без этого обычные сообщения приходили бы
+     * только от команды /ham, и модель видела бы почти один спам.
+     */
+    void messagePassed(String text) {
+        NaiveBayesClassifier model = classifier;
+        if (model == null) {
+            return;
+        }
+        long credit;
+        do {
+            credit = hamCredit.get();
+            if (credit <= 0) {
+                return;
+            }
+        } while (!hamCredit.compareAndSet(credit, credit - 1));
+        model.train(text, false);
+    }
+
+    /**
+     * Дообучает классификатор по отзыву администратора.
+     *
+     * @param spam true — сообщение спам, false — ложное срабатывание
+     */
+    public void learn(String text, boolean spam) {
+        NaiveBayesClassifier model = classifier;
+        if (model != null) {
+            model.train(text, spam);
+        }
+    }
+
+    /**
+     * Подключает теневую проверку списка-кандидата (null — выключить). Прежнюю закрывает вызывающий.
+     */
+    void setShadow(ShadowEvaluator shadow) {
+        this.shadow = shadow;
+    }
+
+    ShadowEvaluator getShadow() {
+        return shadow;
+    }
+
+    /**
+     * Добавляет получателя изменений списка слов и правил чатов.
+     */
+    public void addStateChangeListener(StateChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeStateChangeListener(StateChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Добавление запрещённого слова (нормализуется перед добавлением).
+     * Слово, от которого после нормализации ничего не осталось, не добавляется:
+     * пустая подстрока совпала бы с любым сообщением.
+     *
+     * @return true, если слово добавлено
+     */
+    public boolean addBannedWord(String word) {
+        String normalized = SpamFilterService.normalizeWord(word);
+        if (normalized.isEmpty()) {
+            return false;
+        }
+        synchronized (bannedWordsLock) {
+            if (manualWords.contains(normalized)) {
+                return false;
+            }
+            Set<String> updated = new HashSet<>(manualWords);
+            updated.add(normalized);
+            setManualWords(updated);
+            for (StateChangeListener listener : listeners) {
+                listener.bannedWordAdded(normalized);
+            }
+        }
+        publishBase();
+        return true;
+    }
+
+    /**
+     * Добавление сразу нескольких запрещённых слов. Индексы перестраиваются один раз,
+     * поэтому для больших списков это намного быстрее, чем добавлять слова по одному.
+     *
+     * @return количество действительно добавленных слов
+     */
+    public int addBannedWords(Collection<String> words) {
+        List<String> added = new ArrayList<>();
+        synchronized (bannedWordsLock) {
+            Set<String> updated = new HashSet<>(manualWords);
+            for (String word : words) {
+                String normalized = SpamFilterService.normalizeWord(word);
+                if (!normalized.isEmpty() && updated.add(normalized)) {
+                    added.add(normalized);
+                }
+            }
+            if (!added.isEmpty()) {
+                setManualWords(updated);
+                for (StateChangeListener listener : listeners) {
+                    for (String word : added) {
+                        listener.bannedWordAdded(word);
+                    }
+                }
+            }
+        }
+        publishBase();
+        return added.size();
+    }
+
+    /**
+     * Заменяет все слова, добавленные командами (например, восстановленные при запуске).
+     * Слова из файлов списков и правила чатов сохраняются и применяются к новому списку.
+     * Получатели изменений не уведомляются: слова уже сохранены там, откуда их прочитали.
+     */
+    public void setBannedWords(Collection<String> words) {
+        Set<String> updated = normalizeAll(words);
+        synchronized (bannedWordsLock) {
+            setManualWords(updated);
+        }
+        publishBase();
+    }
+
+    /**
+     * Заменяет слова из файлов списков. Новый автомат собирается в потоке вызывающего без блокировок,
+     * поэтому ни проверка сообщений, ни изменения списка командами всё это время не ждут; проверка
+     * переключается на новый автомат одной записью ссылки.
+     * Получатели изменений не уведомляются: слова хранятся в файлах.
+     */
+    public void setListWords(Collection<String> words) {
+        Set<String> updated = normalizeAll(words);
+        synchronized (bannedWordsLock) {
+            listWords = Collections.unmodifiableSet(updated);
+            baseVersion++;
+        }
+        publishBase();
+    }
+
+    // Удаление запрещённого слова (слова из файлов списков командой не удаляются)
+    public boolean removeBannedWord(String word) {
+        String normalized = SpamFilterService.normalizeWord(word);
+        synchronized (bannedWordsLock) {
+            if (!manualWords.contains(normalized)) {
+                return false;
+            }
+            Set<String> updated = new HashSet<>(manualWords);
+            updated.remove(normalized);
+            setManualWords(updated);
+            for (StateChangeListener listener : listeners) {
+                listener.bannedWordRemoved(normalized);
+            }
+        }
+        publishBase();
+        return true;
+    }
+
+    // Вызывается под bannedWordsLock; автомат затем собирает publishBase
+    private void setManualWords(Set<String> words) {
+        manualWords = Collections.unmodifiableSet(words);
+        baseVersion++;
+    }
+
+    // Собирает автомат общего списка без блокировки и публикует его, если исходные наборы за это время
+    // не изменились; иначе собирает заново. После возврата действует список не старше текущих наборов.
+    private void publishBase() {
+        while (true) {
+            Set<String> manual;
+            Set<String> list;
+            int version;
+            synchronized (bannedWordsLock) {
+                if (publishedBaseVersion == baseVersion) {
+                    return;
+                }
+                manual = manualWords;
+                list = listWords;
+                version = baseVersion;
+            }
+            Set<String> words = new HashSet<>(list);
+            words.addAll(manual);
+            BannedWords compiled = BannedWords.of(words);
+            synchronized (bannedWordsLock) {
+                if (version == baseVersion && version != publishedBaseVersion) {
+                    ruleSets.setBase(compiled);
+                    publishedBaseVersion = version;
+                    bannedWordsGeneration++;
+                    return;
+                }
+            }
+        }
+    }
+
+    // Возвращает текущий общий список запрещённых слов (неизменяемый снимок)
+    public Set<String> getBannedWords() {
+        return ruleSets.base().words;
+    }
+
+    /**
+     * @return слова общего списка, добавленные командами, без слов из файлов списков (неизменяемый снимок)
+     */
+    public Set<String> getManualBannedWords() {
+        return manualWords;
+    }
+
+    /**
+     * @return количество слов из файлов списков
+     */
+    public int getListWordCount() {
+        return listWords.size();
+    }
+
+    /**
+     * Запрещает слово в отдельном чате. Если слово из общего списка было разрешено в чате,
+     * запрет возвращается; иначе слово добавляется в правила чата.
+     *
+     * @return true, если список чата изменился
+     */
+    public boolean addBannedWord(long chatId, String word) {
+        String normalized = SpamFilterService.normalizeWord(word);
+        if (normalized.isEmpty()) {
+            return false;
+        }
+        synchronized (bannedWordsLock) {
+            if (ruleSets.contains(chatId, normalized)) {
+                return false;
+            }
+            boolean excluded = ruleSets.stateOf(chatId, normalized) == StateChangeListener.ChatWordState.EXCLUDED;
+            setChatWord(chatId, normalized,
+                    excluded ? StateChangeListener.ChatWordState.NONE : StateChangeListener.ChatWordState.ADDED);
+            return true;
+        }
+    }
+
+    /**
+     * Разрешает слово в отдельном чате. Слово, добавленное правилами чата, убирается из них;
+     * слово общего списка исключается только для этого чата.
+     *
+     * @return true, если список чата изменился
+     */
+    public boolean removeBannedWord(long chatId, String word) {
+        String normalized = SpamFilterService.normalizeWord(word);
+        synchronized (bannedWordsLock) {
+            if (!ruleSets.contains(chatId, normalized)) {
+                return false;
+            }
+            boolean added = ruleSets.stateOf(chatId, normalized) == StateChangeListener.ChatWordState.ADDED;
+            setChatWord(chatId, normalized,
+                    added ? StateChangeListener.ChatWordState.NONE : StateChangeListener.ChatWordState.EXCLUDED);
+            return true;
+        }
+    }
+
+    private void setChatWord(long chatId, String normalized, StateChangeListener.ChatWordState state) {
+        ruleSets.setChatWord(chatId, normalized, state);
+        bannedWordsGeneration++;
+        for (StateChangeListener listener : listeners) {
+            listener.chatWordChanged(chatId, normalized, state);
+        }
+    }
+
+    /**
+     * Заменяет правила чата целиком (например, восстановленные при запуске).
+     * Получатели изменений не уведомляются.
+     *
+     * @param added    слова, запрещённые только в этом чате
+     * @param excluded слова общего списка, разрешённые в этом чате
+     */
+    public void setChatRules(long chatId, Collection<String> added, Collection<String> excluded) {
+        Set<String> normalizedAdded = normalizeAll(added);
+        Set<String> normalizedExcluded = normalizeAll(excluded);
+        synchronized (bannedWordsLock) {
+            ruleSets.setOverlay(chatId, normalizedAdded, normalizedExcluded);
+            bannedWordsGeneration++;
+        }
+    }
+
+    private static Set<String> normalizeAll(Collection<String> words) {
+        Set<String> normalized = new HashSet<>();
+        for (String word : words) {
+            String value = SpamFilterService.normalizeWord(word);
+            if (!value.isEmpty()) {
+                normalized.add(value);
+            }
+        }
+        return normalized;
+    }
+
+    // Возвращает список запрещённых слов, который действует в чате (неизменяемый снимок)
+    public Set<String> getBannedWords(long chatId) {
+        return ruleSets.wordsOf(chatId);
+    }
+
+    /**
+     * Передаёт получателю правила всех чатов (например, для записи снимка состояния).
+     */
+    public void exportChatRules(StateChangeListener target) {
+        synchronized (bannedWordsLock) {
+            ruleSets.forEachChatWord(target);
+        }
+    }
+
+    /**
+     * @return количество чатов со своими правилами
+     */
+    public int getChatRuleCount() {
+        return ruleSets.overlayCount();
+    }
+}
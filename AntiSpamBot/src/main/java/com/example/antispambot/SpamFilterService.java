@@ -1,175 +1,352 @@
 package com.example.antispambot;
 
+import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Collection;
 import java.util.Set;
 
 /**
  * Сервис для проверки сообщений на признаки спама.
  * Реализована нормализация текста, фуззи‑сравнение и учёт спам-сообщений.
+ * Сервис потокобезопасен: сообщения разных чатов проверяются параллельно.
+ * Проверку по содержимому выполняет {@link SpamFilterEngine}, а сервис хранит то, что относится
+ * к одному боту: состояние пользователей, обнаружение рейдов и статистику.
  */
 public class SpamFilterService {
-    // Хранение запрещённых слов в нормализованном виде
-    private final Set<String> bannedWords = new HashSet<>();
-    // Хранение времени последнего сообщения для каждого пользователя (userId -> timestamp)
-    private final Map<Long, Long> lastMessageTimestamps = new HashMap<>();
-    // Учёт количества спам-сообщений для каждого пользователя (userId -> count)
-    private final Map<Long, Integer> userSpamCount = new HashMap<>();
-    // Запоминание последнего сообщения (нормализованного) для выявления повторов
-    private final Map<Long, String> lastUserMessage = new HashMap<>();
-
-    // Статистика
-    private int messagesChecked = 0;
-    private int messagesDeleted = 0;
-
-    // Порог спам-сообщений (для отправки предупреждения)
+    // Списки слов, автоматы, кэш вердиктов, домены и классификатор; могут быть общими для нескольких ботов
+    private final SpamFilterEngine engine;
+    // Состояние пользователей: время и хэш последнего сообщения, количество спам-сообщений
+    private final UserStateStore userStates;
+    // Почти одинаковые сообщения от разных пользователей одного чата
+    private final RaidDetector raidDetector;
+
+    // Статистика: счётчики правил и задержки этапов
+    private final Metrics metrics;
+    // Получатель изменений для сохранения состояния (журнал), null — состояние не сохраняется
+    private volatile StateChangeListener stateListener;
+    // Получатель сообщений о рейдах (например, для ограничения участников), null — не задан
+    private volatile RaidListener raidListener;
+    // Уровень деградации проверки при перегрузке, null — всегда полная проверка
+    private volatile LoadShedder loadShedder;
+    // Параметры, которые меняются без перезапуска (см. BotConfig)
+    private volatile int spamThreshold = SPAM_THRESHOLD;
+    private volatile long floodIntervalMillis = DEFAULT_FLOOD_INTERVAL_MILLIS;
+
+    // Порог спам-сообщений по умолчанию (для отправки предупреждения)
     public static final int SPAM_THRESHOLD = 3;
+    // Минимальный интервал между сообщениями пользователя по умолчанию
+    public static final long DEFAULT_FLOOD_INTERVAL_MILLIS = 2000;
+    // Ограничения хранилища пользователей по умолчанию
+    public static final int DEFAULT_MAX_USERS = 200000;
+    public static final int DEFAULT_USER_TTL_SECONDS = 86400;
+    // Обнаружение рейдов по умолчанию: 5 разных пользователей с похожими сообщениями за 10 минут
+    public static final int DEFAULT_RAID_THRESHOLD = 5;
+    public static final int DEFAULT_RAID_WINDOW_SECONDS = 600;
+    public static final int DEFAULT_RAID_WINDOW_MESSAGES = 4096;
+    public static final int DEFAULT_RAID_MAX_CHATS = 10000;
 
     public SpamFilterService() {
-        // Изначально добавляем несколько запрещённых слов (нормализованных)
-        bannedWords.add(normalizeWord("spamword1"));
-        bannedWords.add(normalizeWord("spamword2"));
+        this(new UserStateStore(DEFAULT_MAX_USERS, DEFAULT_USER_TTL_SECONDS));
+    }
+
+    public SpamFilterService(UserStateStore userStates) {
+        this(userStates, new Metrics());
+    }
+
+    public SpamFilterService(UserStateStore userStates, Metrics metrics) {
+        this(userStates, metrics, new RaidDetector(DEFAULT_RAID_THRESHOLD, DEFAULT_RAID_WINDOW_SECONDS,
+                DEFAULT_RAID_WINDOW_MESSAGES, RaidDetector.DEFAULT_MAX_DISTANCE, DEFAULT_RAID_MAX_CHATS));
+    }
+
+    public SpamFilterService(UserStateStore userStates, Metrics metrics, RaidDetector raidDetector) {
+        this(new SpamFilterEngine(), userStates, metrics, raidDetector);
     }
 
     /**
-     * Нормализует слово: приводит к нижнему регистру, удаляет все символы, кроме букв и цифр,
-     * и заменяет распространённые символы-замены (например, @ на a, 0 на o и т.д.).
-     *
-     * @param word исходное слово
-     * @return нормализованное слово
+     * @param engine движок проверки по содержимому; может использоваться несколькими сервисами сразу
      */
-    public static String normalizeWord(String word) {
-        String normalized = word.toLowerCase();
-        normalized = normalized.replaceAll("[^a-z0-9]", "");
-        normalized = normalized.replace("0", "o")
-                .replace("1", "l")
-                .replace("@", "a")
-                .replace("3", "e")
-                .replace("!", "i");
-        return normalized;
+    public SpamFilterService(SpamFilterEngine engine, UserStateStore userStates, Metrics metrics,
+                             RaidDetector raidDetector) {
+        this.engine = engine;
+        this.userStates = userStates;
+        this.metrics = metrics;
+        this.raidDetector = raidDetector;
     }
 
     /**
-     * Вычисляет расстояние Левенштейна между строками.
+     * Нормализует слово: приводит к нижнему регистру, удаляет всё, кроме букв и цифр,
+     * снимает диакритику и сводит символы-замены и кириллические двойники к латинице
+     * (например, @ на a, 0 на o, кириллическую «о» на латинскую o).
      *
-     * @param a первая строка
-     * @param b вторая строка
-     * @return расстояние Левенштейна
+     * @param word исходное слово
+     * @return нормализованное слово
      */
-    private int computeLevenshteinDistance(String a, String b) {
-        int[][] dp = new int[a.length() + 1][b.length() + 1];
-        for (int i = 0; i <= a.length(); i++) {
-            dp[i][0] = i;
-        }
-        for (int j = 0; j <= b.length(); j++) {
-            dp[0][j] = j;
-        }
-        for (int i = 1; i <= a.length(); i++) {
-            for (int j = 1; j <= b.length(); j++) {
-                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
-                dp[i][j] = Math.min(
-                        Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1),
-                        dp[i - 1][j - 1] + cost
-                );
-            }
-        }
-        return dp[a.length()][b.length()];
+    public static String normalizeWord(String word) {
+        return TextNormalizer.normalizeWord(word);
     }
 
     /**
      * Проверяет, является ли сообщение спамом.
      * Критерии:
-     * - Сообщения отправляются слишком часто (интервал менее 2 секунд).
+     * - Сообщения отправляются слишком часто (по умолчанию интервал менее 2 секунд).
      * - Повторяющиеся сообщения.
+     * - Ссылки на заблокированные домены.
      * - Наличие запрещённых или похожих (фуззи‑сравнение) слов.
+     * - Оценка классификатора, обученного на удалённых сообщениях и отзывах администраторов.
+     * - Почти одинаковые сообщения от многих пользователей чата (рейд).
      *
      * @param update объект Update с сообщением.
      * @return true, если сообщение определяется как спам.
      */
     public boolean isSpam(Update update) {
-        messagesChecked++;
+        return check(update) != null;
+    }
+
+    /**
+     * То же, что {@link #isSpam(Update)}, но возвращает сработавшее правило.
+     * <p>
+     * Проверки идут каскадом по возрастанию стоимости, и первая сработавшая завершает проверку:
+     * частота сообщений, повтор, запомненный вердикт, ссылки и точное совпадение со списком,
+     * фуззи-сравнение и классификатор, рейд. Сообщения наказанных пользователей отбрасываются
+     * ещё до проверки (см. {@link EscalationEngine#activeSanction}). При перегрузке
+     * ({@link LoadShedder}) дорогие ступени пропускаются.
+     *
+     * @return правило, по которому сообщение признано спамом, или null
+     */
+    public Metrics.Rule check(Update update) {
+        metrics.messageChecked();
         if (!update.hasMessage() || !update.getMessage().hasText()) {
-            return false;
+            return null;
+        }
+        LoadShedder shedder = loadShedder;
+        LoadShedder.Level level = shedder == null ? LoadShedder.Level.FULL : shedder.level();
+        if (level != LoadShedder.Level.FULL) {
+            metrics.degradedCheck();
         }
         long userId = update.getMessage().getFrom().getId();
         long currentTime = System.currentTimeMillis();
 
-        // Проверка частоты отправки сообщений
-        if (lastMessageTimestamps.containsKey(userId)) {
-            long lastTime = lastMessageTimestamps.get(userId);
-            if ((currentTime - lastTime) < 2000) { // менее 2 секунд
-                messagesDeleted++;
-                incrementSpamCount(userId);
-                lastMessageTimestamps.put(userId, currentTime);
-                return true;
-            }
+        // Проверка частоты отправки сообщений (время заменяется атомарно, возвращается предыдущее)
+        long lastTime = userStates.recordMessage(userId, currentTime);
+        if (lastTime != 0 && (currentTime - lastTime) < floodIntervalMillis) {
+            return spam(Metrics.Rule.FLOOD, userId, currentTime);
         }
-        lastMessageTimestamps.put(userId, currentTime);
 
-        String text = update.getMessage().getText();
-        String normalizedMessage = normalizeWord(text);
+        // Один проход по тексту даёт и нормализованное сообщение целиком, и границы токенов
+        long started = System.nanoTime();
+        NormalizedText normalized = TextNormalizer.normalize(update.getMessage().getText());
+        long normalizedAt = System.nanoTime();
+        metrics.recordLatency(Metrics.Stage.NORMALIZE, normalizedAt - started);
 
-        // Детектирование повторяющихся сообщений
-        if (lastUserMessage.containsKey(userId) && lastUserMessage.get(userId).equals(normalizedMessage)) {
-            messagesDeleted++;
-            incrementSpamCount(userId);
-            lastUserMessage.put(userId, normalizedMessage);
-            return true;
+        // Детектирование повторяющихся сообщений по хэшу нормализованного текста
+        // (сообщения без букв и цифр, например из одних эмодзи, не сравниваем)
+        long messageHash = normalized.length() == 0 ? 0 : normalized.contentHash();
+        long previousHash = userStates.swapMessageHash(userId, messageHash, currentTime);
+        if (messageHash != 0 && messageHash == previousHash) {
+            return spam(Metrics.Rule.REPEAT, userId, currentTime);
         }
-        lastUserMessage.put(userId, normalizedMessage);
-
-        // Разбиваем сообщение на слова и проверяем каждое
-        String[] tokens = text.split("\\s+");
-        for (String token : tokens) {
-            String normalizedToken = normalizeWord(token);
-            for (String banned : bannedWords) {
-                // Если токен содержит запрещённое слово как подстроку
-                if (normalizedToken.contains(banned)) {
-                    messagesDeleted++;
-                    incrementSpamCount(userId);
-                    return true;
-                } else {
-                    // Фуззи‑сравнение: если расстояние Левенштейна достаточно мало, считаем слово похожим
-                    int distance = computeLevenshteinDistance(normalizedToken, banned);
-                    int threshold = normalizedToken.length() <= 4 ? 0 : (normalizedToken.length() <= 7 ? 1 : 2);
-                    if (distance <= threshold) {
-                        messagesDeleted++;
-                        incrementSpamCount(userId);
-                        return true;
-                    }
+
+        // Ссылки, списки слов чата и классификатор
+        Message message = update.getMessage();
+        Metrics.Rule matched = engine.check(message, normalized, messageHash, metrics, level);
+        // Похожие сообщения от разных пользователей чата (рейд); без чата проверять не с чем
+        if (matched == null && message.getChat() != null && level != LoadShedder.Level.MINIMAL) {
+            RaidListener listener = raidListener;
+            if (listener == null) {
+                if (raidDetector.check(message.getChatId(), userId, normalized, currentTime)) {
+                    matched = Metrics.Rule.RAID;
+                }
+            } else {
+                long[] participants = raidDetector.checkParticipants(message.getChatId(), userId, normalized, currentTime);
+                if (participants != null) {
+                    matched = Metrics.Rule.RAID;
+                    listener.raidDetected(message.getChatId(), userId, participants);
                 }
             }
         }
-        return false;
+        metrics.recordLatency(Metrics.Stage.MATCH, System.nanoTime() - normalizedAt);
+        if (matched == null) {
+            // Обычные сообщения для классификатора — только прошедшие полную проверку
+            if (level == LoadShedder.Level.FULL) {
+                engine.messagePassed(message.getText());
+            }
+            return null;
+        }
+        return spam(matched, userId, currentTime);
+    }
+
+    private Metrics.Rule spam(Metrics.Rule rule, long userId, long now) {
+        metrics.ruleHit(rule);
+        // Новое значение уходит в журнал под блокировкой счётчика: иначе при одновременных
+        // увеличениях меньшее значение может записаться последним
+        StateChangeListener listener = stateListener;
+        userStates.incrementSpamCount(userId, now, listener == null ? null : listener::spamCountChanged);
+        return rule;
+    }
+
+    /**
+     * Порог спам-сообщений пользователя (для предупреждений).
+     */
+    public void setSpamThreshold(int spamThreshold) {
+        this.spamThreshold = spamThreshold;
+    }
+
+    public int getSpamThreshold() {
+        return spamThreshold;
+    }
+
+    /**
+     * Сообщения пользователя, присланные чаще этого интервала, считаются флудом.
+     */
+    public void setFloodIntervalMillis(long floodIntervalMillis) {
+        this.floodIntervalMillis = floodIntervalMillis;
+    }
+
+    public long getFloodIntervalMillis() {
+        return floodIntervalMillis;
     }
 
-    private void incrementSpamCount(long userId) {
-        int count = userSpamCount.getOrDefault(userId, 0) + 1;
-        userSpamCount.put(userId, count);
+    /**
+     * @return движок проверки по содержимому (списки слов, домены, классификатор)
+     */
+    public SpamFilterEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Задаёт ёмкость кэша вердиктов (0 — выключить кэш). См. {@link SpamFilterEngine#setVerdictCacheSize}.
+     */
+    public void setVerdictCacheSize(int entries) {
+        engine.setVerdictCacheSize(entries);
+    }
+
+    public void setBlockedDomains(DomainTrie domains) {
+        engine.setBlockedDomains(domains);
+    }
+
+    public DomainTrie getBlockedDomains() {
+        return engine.getBlockedDomains();
+    }
+
+    public void setClassifier(NaiveBayesClassifier classifier, double threshold, int minDocuments) {
+        engine.setClassifier(classifier, threshold, minDocuments);
+    }
+
+    public void spamDeleted(String text, Metrics.Rule rule) {
+        engine.spamDeleted(text, rule);
+    }
+
+    public void learn(String text, boolean spam) {
+        engine.learn(text, spam);
+    }
+
+    /**
+     * Подключает сброс нагрузки (null — всегда полная проверка).
+     */
+    void setLoadShedder(LoadShedder loadShedder) {
+        this.loadShedder = loadShedder;
+    }
+
+    /**
+     * Устанавливает получателя сообщений об обнаруженных рейдах.
+     */
+    public void setRaidListener(RaidListener listener) {
+        this.raidListener = listener;
+    }
+
+    /**
+     * Устанавливает получателя изменений счётчиков спама этого сервиса. Изменения списков слов
+     * общего движка получают его подписчики ({@link SpamFilterEngine#addStateChangeListener}).
+     */
+    public void setStateChangeListener(StateChangeListener listener) {
+        this.stateListener = listener;
     }
 
     public int getSpamCount(long userId) {
-        return userSpamCount.getOrDefault(userId, 0);
+        return userStates.getSpamCount(userId);
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     public String getStatus() {
-        return "Проверено сообщений: " + messagesChecked + "\nУдалено сообщений: " + messagesDeleted;
+        NaiveBayesClassifier model = engine.getClassifier();
+        int cacheSize = engine.getVerdictCacheSize();
+        long cacheHits = metrics.getVerdictCacheHits();
+        long cacheRequests = cacheHits + metrics.getVerdictCacheMisses();
+        return "Проверено сообщений: " + metrics.getMessagesChecked()
+                + "\nУдалено сообщений: " + metrics.getMessagesDeleted()
+                + (metrics.getMutes() + metrics.getBans() == 0 ? "" : "\nЛишено права писать: " + metrics.getMutes()
+                        + ", заблокировано: " + metrics.getBans()
+                        + ", отброшено их сообщений: " + metrics.getMessagesDropped())
+                + (metrics.getDegradationLevel() == 0 ? "" : "\nПерегрузка: "
+                        + LoadShedder.Level.values()[metrics.getDegradationLevel()].title
+                        + " (сообщений без полной проверки: " + metrics.getDegradedChecks() + ")")
+                + (cacheSize < 0 ? "" : String.format("\nКэш вердиктов: попаданий %.1f%% (%d из %d), записей %d",
+                        cacheRequests == 0 ? 0.0 : cacheHits * 100.0 / cacheRequests, cacheHits, cacheRequests,
+                        cacheSize))
+                + (model == null ? "" : "\nКлассификатор обучен: спам " + model.getSpamDocuments()
+                        + ", не спам " + model.getHamDocuments()
+                        + (engine.isClassifierTrained() ? "" : " (пока не используется)"))
+                + "\n" + metrics.formatLatencies();
+    }
+
+    // Списки запрещённых слов хранит движок, подробности — в SpamFilterEngine
+
+    public boolean addBannedWord(String word) {
+        return engine.addBannedWord(word);
+    }
+
+    public int addBannedWords(Collection<String> words) {
+        return engine.addBannedWords(words);
     }
 
-    // Добавление запрещённого слова (нормализуется перед добавлением)
-    public void addBannedWord(String word) {
-        bannedWords.add(normalizeWord(word));
+    public void setBannedWords(Collection<String> words) {
+        engine.setBannedWords(words);
+    }
+
+    public void setListWords(Collection<String> words) {
+        engine.setListWords(words);
     }
 
-    // Удаление запрещённого слова
     public boolean removeBannedWord(String word) {
-        return bannedWords.remove(normalizeWord(word));
+        return engine.removeBannedWord(word);
     }
 
-    // Возвращает текущий список запрещённых слов
     public Set<String> getBannedWords() {
-        return bannedWords;
+        return engine.getBannedWords();
+    }
+
+    public Set<String> getManualBannedWords() {
+        return engine.getManualBannedWords();
+    }
+
+    public int getListWordCount() {
+        return engine.getListWordCount();
+    }
+
+    public boolean addBannedWord(long chatId, String word) {
+        return engine.addBannedWord(chatId, word);
+    }
+
+    public boolean removeBannedWord(long chatId, String word) {
+        return engine.removeBannedWord(chatId, word);
+    }
+
+    public void setChatRules(long chatId, Collection<String> added, Collection<String> excluded) {
+        engine.setChatRules(chatId, added, excluded);
+    }
+
+    public Set<String> getBannedWords(long chatId) {
+        return engine.getBannedWords(chatId);
+    }
+
+    public void exportChatRules(StateChangeListener target) {
+        engine.exportChatRules(target);
+    }
+
+    public int getChatRuleCount() {
+        return engine.getChatRuleCount();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,49 @@
+package com.example.antispambot;
+
+/**
+ * Получатель изменений состояния фильтра, которые нужно сохранять между перезапусками:
+ * общий список запрещённых слов, правила отдельных чатов и счётчики спама пользователей.
+ * Тот же интерфейс используется при чтении журнала и снимка.
+ */
+public interface StateChangeListener {
+
+    /**
+     * @param word слово в нормализованном виде
+     */
+    void bannedWordAdded(String word);
+
+    /**
+     * @param word слово в нормализованном виде
+     */
+    void bannedWordRemoved(String word);
+
+    /**
+     * Изменение правил отдельного чата поверх общего списка.
+     *
+     * @param chatId чат
+     * @param word   слово в нормализованном виде
+     * @param state  новое состояние слова в правилах чата
+     */
+    void chatWordChanged(long chatId, String word, ChatWordState state);
+
+    /**
+     * Значения одного пользователя приходят в том порядке, в каком менялся счётчик.
+     *
+     * @param userId    пользователь
+     * @param spamCount новое значение счётчика (не приращение)
+     * @param time      время изменения, мс
+     */
+    void spamCountChanged(long userId, int spamCount, long time);
+
+    /**
+     * Состояние слова в правилах чата относительно общего списка.
+     */
+    enum ChatWordState {
+        // Правила чата не меняют слово: действует общий список
+        NONE,
+        // Слово запрещено только в этом чате
+        ADDED,
+        // Слово из общего списка в этом чате разрешено
+        EXCLUDED
+    }
+}
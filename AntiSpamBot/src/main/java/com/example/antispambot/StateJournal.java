@@ -0,0 +1,259 @@
+package com.example.antispambot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений состояния, в который только дописывают.
+ * Запись: длина полезной нагрузки (int), нагрузка (тип и данные), CRC32 нагрузки (int).
+ * Записи копятся в буфере и попадают в файл только через {@link #flush()}: дописывание никогда не обращается
+ * к диску, поэтому его можно вызывать под чужими блокировками. Если буфер заполнился до сброса, он растёт.
+ * При чтении обрыв или повреждённая запись в конце файла (например, после аварийной остановки) отбрасываются.
+ */
+final class StateJournal implements StateChangeListener, AutoCloseable {
+    private static final int MAGIC = 0x4153424a; // "ASBJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Слово в записи ограничено размером буфера
+    private static final int MAX_PAYLOAD = BUFFER_SIZE - 8;
+
+    private static final byte WORD_ADDED = 1;
+    private static final byte WORD_REMOVED = 2;
+    private static final byte SPAM_COUNT = 3;
+    private static final byte CHAT_WORD = 4;
+
+    private final long generation;
+    private final FileChannel channel;
+    // Записи дописываются в buffer под блокировкой журнала; flush() под writeLock подменяет его запасным
+    // и пишет заполненный в файл уже без блокировки журнала
+    private final Object writeLock = new Object();
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private long size;
+
+    private StateJournal(long generation, FileChannel channel, long size) {
+        this.generation = generation;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    /**
+     * Создаёт новый пустой журнал поколения {@code generation}.
+     */
+    static StateJournal create(Path file, long generation) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        StateJournal journal = new StateJournal(generation, channel, 0);
+        synchronized (journal) {
+            journal.buffer.putInt(MAGIC).putInt(VERSION).putLong(generation);
+            journal.size = HEADER_SIZE;
+        }
+        journal.flush();
+        return journal;
+    }
+
+    /**
+     * Читает журнал и передаёт все целые записи получателю.
+     *
+     * @return количество прочитанных записей
+     * @throws IOException если файл не является журналом или не читается
+     */
+    static long replay(Path file, StateChangeListener target) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+            input.limit(0);
+            fill(channel, input, HEADER_SIZE);
+            if (input.remaining() < HEADER_SIZE || input.getInt() != MAGIC || input.getInt() != VERSION) {
+                throw new IOException("Файл " + file + " не является журналом состояния");
+            }
+            input.getLong();
+            CRC32 checksum = new CRC32();
+            long records = 0;
+            while (true) {
+                fill(channel, input, 4);
+                if (input.remaining() < 4) {
+                    return records;
+                }
+                int length = input.getInt();
+                if (length <= 0 || length > MAX_PAYLOAD) {
+                    return records;
+                }
+                fill(channel, input, length + 4);
+                if (input.remaining() < length + 4) {
+                    return records;
+                }
+                checksum.reset();
+                checksum.update(input.array(), input.arrayOffset() + input.position(), length);
+                int payloadEnd = input.position() + length;
+                if (input.getInt(payloadEnd) != (int) checksum.getValue()) {
+                    return records;
+                }
+                apply(input, length, target);
+                input.position(payloadEnd + 4);
+                records++;
+            }
+        }
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * @return размер журнала в байтах, включая ещё не сброшенный буфер
+     */
+    synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public void bannedWordAdded(String word) {
+        appendWord(WORD_ADDED, word);
+    }
+
+    @Override
+    public void bannedWordRemoved(String word) {
+        appendWord(WORD_REMOVED, word);
+    }
+
+    @Override
+    public synchronized void chatWordChanged(long chatId, String word, ChatWordState state) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 8 + 1 + bytes.length;
+        if (length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Слово слишком длинное для журнала: " + bytes.length + " байт");
+        }
+        reserve(length);
+        int start = buffer.position() + 4;
+        buffer.putInt(length).put(CHAT_WORD).putLong(chatId).put((byte) state.ordinal()).put(bytes);
+        finishRecord(start, length);
+    }
+
+    @Override
+    public synchronized void spamCountChanged(long userId, int spamCount, long time) {
+        int length = 1 + 8 + 4 + 8;
+        reserve(length);
+        int start = buffer.position() + 4;
+        buffer.putInt(length).put(SPAM_COUNT).putLong(userId).putInt(spamCount).putLong(time);
+        finishRecord(start, length);
+    }
+
+    /**
+     * Сбрасывает накопленные записи в файл (в кэш ОС, без fsync).
+     */
+    void flush() throws IOException {
+        synchronized (writeLock) {
+            ByteBuffer full;
+            synchronized (this) {
+                if (buffer.position() == 0) {
+                    return;
+                }
+                full = buffer;
+                buffer = spare;
+            }
+            full.flip();
+            try {
+                while (full.hasRemaining()) {
+                    channel.write(full);
+                }
+            } finally {
+                full.clear();
+                // Разросшийся буфер не держим: следующий раз он понадобится только при таком же всплеске
+                spare = full.capacity() > BUFFER_SIZE ? ByteBuffer.allocate(BUFFER_SIZE) : full;
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает записи и дожидается их записи на диск.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            try {
+                flush();
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private synchronized void appendWord(byte type, String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + bytes.length;
+        if (length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Слово слишком длинное для журнала: " + bytes.length + " байт");
+        }
+        reserve(length);
+        int start = buffer.position() + 4;
+        buffer.putInt(length).put(type).put(bytes);
+        finishRecord(start, length);
+    }
+
+    // Не пишет в файл, даже если буфер полон: это делает только flush()
+    private void reserve(int length) {
+        if (buffer.remaining() < length + 8) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length + 8));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private void finishRecord(int payloadStart, int length) {
+        crc.reset();
+        crc.update(buffer.array(), payloadStart, length);
+        buffer.putInt((int) crc.getValue());
+        size += length + 8;
+    }
+
+    private static void apply(ByteBuffer input, int length, StateChangeListener target) {
+        byte type = input.get();
+        switch (type) {
+            case WORD_ADDED:
+            case WORD_REMOVED:
+                String word = new String(input.array(), input.arrayOffset() + input.position(), length - 1,
+                        StandardCharsets.UTF_8);
+                if (type == WORD_ADDED) {
+                    target.bannedWordAdded(word);
+                } else {
+                    target.bannedWordRemoved(word);
+                }
+                break;
+            case SPAM_COUNT:
+                target.spamCountChanged(input.getLong(), input.getInt(), input.getLong());
+                break;
+            case CHAT_WORD:
+                long chatId = input.getLong();
+                int state = input.get();
+                if (state >= 0 && state < ChatWordState.values().length) {
+                    target.chatWordChanged(chatId, new String(input.array(), input.arrayOffset() + input.position(),
+                            length - 10, StandardCharsets.UTF_8), ChatWordState.values()[state]);
+                }
+                break;
+            default:
+                // Неизвестный тип записи из более новой версии: пропускаем
+                break;
+        }
+    }
+
+    // Добивает буфер чтения до need байт, если в файле они есть (need не больше размера буфера)
+    private static void fill(FileChannel channel, ByteBuffer input, int need) throws IOException {
+        if (input.remaining() >= need) {
+            return;
+        }
+        input.compact();
+        while (input.position() < need && channel.read(input) >= 0) {
+            // читаем дальше
+        }
+        input.flip();
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.antispambot;
+
+import com.example.antispambot.StateChangeListener.ChatWordState;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Двоичный снимок состояния: список запрещённых слов, правила чатов и ненулевые счётчики спама пользователей
+ * (в каталоге общего списка нет счётчиков, в каталоге бота — слов и правил).
+ * <p>
+ * Формат: заголовок (магическое число, версия, поколение журнала, количество слов),
+ * слова (длина в байтах short и UTF-8), количество правил чатов (int) и правила
+ * (chatId long, состояние byte, слово как выше), записи пользователей фиксированного размера
+ * (userId long, счётчик int, время последней активности long), затем количество записей (int)
+ * и CRC32 всего предшествующего (int). Снимок читается через отображение файла в память,
+ * без промежуточных потоков и копирования. Снимки версии 1 (без правил чатов) тоже читаются.
+ */
+final class StateSnapshot {
+    private static final int MAGIC = 0x41534253; // "ASBS"
+    private static final int VERSION = 2;
+    private static final int USER_RECORD_SIZE = 8 + 4 + 8;
+    private static final int TRAILER_SIZE = 8;
+
+    private StateSnapshot() {
+    }
+
+    /**
+     * Записывает снимок во временный файл и атомарно заменяет им {@code file}.
+     *
+     * @param generation последнее поколение журнала, изменения которого вошли в снимок
+     * @param engine     чей список слов и правила чатов записать или null, если не записывать
+     * @param users      чьи счётчики спама записать или null, если не записывать
+     */
+    static void write(Path file, long generation, SpamFilterEngine engine, UserStateStore users) throws IOException {
+        Collection<String> words = engine == null ? Collections.<String>emptySet() : engine.getManualBannedWords();
+        List<ChatWord> chatWords = new ArrayList<>();
+        if (engine != null) {
+            engine.exportChatRules(new ChatWordCollector(chatWords));
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream raw = Channels.newOutputStream(channel);
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new CheckedOutputStream(raw, crc), 256 * 1024));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(generation);
+            output.writeInt(words.size());
+            for (String word : words) {
+                writeWord(output, word);
+            }
+            output.writeInt(chatWords.size());
+            for (ChatWord chatWord : chatWords) {
+                output.writeLong(chatWord.chatId);
+                output.writeByte(chatWord.state.ordinal());
+                writeWord(output, chatWord.word);
+            }
+            int[] userCount = new int[1];
+            if (users != null) {
+                users.forEachSpamCount((userId, spamCount, lastAccess) -> {
+                    try {
+                        output.writeLong(userId);
+                        output.writeInt(spamCount);
+                        output.writeLong(lastAccess);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    userCount[0]++;
+                });
+            }
+            output.writeInt(userCount[0]);
+            output.flush();
+            // Контрольная сумма покрывает всё, кроме себя самой
+            output.writeInt((int) crc.getValue());
+            output.flush();
+            channel.force(true);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeWord(DataOutputStream output, String word) throws IOException {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff) {
+            throw new IOException("Слово слишком длинное для снимка: " + bytes.length + " байт");
+        }
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Читает снимок и передаёт его содержимое получателю: слова как добавленные,
+     * счётчики как изменения счётчиков.
+     *
+     * @return поколение журнала, записанное в снимке
+     * @throws IOException если снимок повреждён или не читается
+     */
+    static long load(Path file, StateChangeListener target) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Снимок " + file + " слишком большой");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            int version = size < 8 ? 0 : buffer.getInt(4);
+            if (size < 20 + TRAILER_SIZE || buffer.getInt(0) != MAGIC || version < 1 || version > VERSION) {
+                throw new IOException("Файл " + file + " не является снимком состояния");
+            }
+            int body = (int) size - 4;
+            CRC32 crc = new CRC32();
+            buffer.limit(body);
+            crc.update(buffer);
+            buffer.limit((int) size);
+            if (buffer.getInt(body) != (int) crc.getValue()) {
+                throw new IOException("Контрольная сумма снимка " + file + " не совпадает");
+            }
+
+            buffer.position(8);
+            long generation = buffer.getLong();
+            int wordCount = buffer.getInt();
+            byte[] bytes = new byte[Short.MAX_VALUE * 2 + 1];
+            for (int i = 0; i < wordCount; i++) {
+                int length = buffer.getShort() & 0xffff;
+                buffer.get(bytes, 0, length);
+                target.bannedWordAdded(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+            int chatWordCount = version >= 2 ? buffer.getInt() : 0;
+            ChatWordState[] states = ChatWordState.values();
+            for (int i = 0; i < chatWordCount; i++) {
+                long chatId = buffer.getLong();
+                int state = buffer.get();
+                int length = buffer.getShort() & 0xffff;
+                buffer.get(bytes, 0, length);
+                if (state < 0 || state >= states.length) {
+                    throw new IOException("Неизвестное состояние правила чата в снимке " + file);
+                }
+                target.chatWordChanged(chatId, new String(bytes, 0, length, StandardCharsets.UTF_8), states[state]);
+            }
+            int userCount = buffer.getInt((int) size - TRAILER_SIZE);
+            if ((long) userCount * USER_RECORD_SIZE != size - TRAILER_SIZE - buffer.position()) {
+                throw new IOException("Размер снимка " + file + " не соответствует количеству записей");
+            }
+            for (int i = 0; i < userCount; i++) {
+                target.spamCountChanged(buffer.getLong(), buffer.getInt(), buffer.getLong());
+            }
+            return generation;
+        }
+    }
+
+    private static final class ChatWord {
+        final long chatId;
+        final String word;
+        final ChatWordState state;
+
+        ChatWord(long chatId, String word, ChatWordState state) {
+            this.chatId = chatId;
+            this.word = word;
+            this.state = state;
+        }
+    }
+
+    // Собирает правила чатов под блокировкой списка, чтобы писать снимок уже без неё
+    private static final class ChatWordCollector implements StateChangeListener {
+        private final List<ChatWord> target;
+
+        ChatWordCollector(List<ChatWord> target) {
+            this.target = target;
+        }
+
+        @Override
+        public void bannedWordAdded(String word) {
+        }
+
+        @Override
+        public void bannedWordRemoved(String word) {
+        }
+
+        @Override
+        public void chatWordChanged(long chatId, String word, ChatWordState state) {
+            target.add(new ChatWord(chatId, word, state));
+        }
+
+        @Override
+        public void spamCountChanged(long userId, int spamCount, long time) {
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.antispambot;
+
+import java.text.Normalizer;
+
+/**
+ * Табличная нормализация текста за один проход.
+ * Таблица свёртки строится один раз для всего диапазона char: буквы и цифры приводятся к нижнему регистру,
+ * диакритика снимается, кириллические и греческие двойники латинских букв и символы-замены (@, 0, 1, 3)
+ * сводятся к латинице, пробельные символы разделяют токены, всё остальное отбрасывается.
+ * '!' заменяет 'i' только внутри слова ("c@s!n0"); в начале и конце слова ("Купи!") он отбрасывается.
+ */
+final class TextNormalizer {
+    // Значения таблицы: DROP — символ отбрасывается, SEPARATOR — граница токена,
+    // INNER_I — 'i', если с обеих сторон в токене есть буквы или цифры, иначе символ отбрасывается
+    private static final char DROP = '\u0000';
+    private static final char SEPARATOR = '\u0001';
+    private static final char INNER_I = '\u0002';
+
+    // Двойники: символ из первой строки заменяется символом из второй с той же позиции
+    private static final String HOMOGLYPHS_FROM =
+            "авеёкмнорстухѕіїјԁӏ" + "αβεικνορτυχ" + "0" + "1" + "3" + "@";
+    private static final String HOMOGLYPHS_TO =
+            "abeekmhopctyxsiijdl" + "abeikvoptux" + "o" + "l" + "e" + "a";
+
+    private static final char[] FOLD = buildFoldTable();
+
+    private static final ThreadLocal<NormalizedText> BUFFER = new ThreadLocal<NormalizedText>() {
+        @Override
+        protected NormalizedText initialValue() {
+            return new NormalizedText();
+        }
+    };
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Нормализует сообщение целиком и одновременно размечает токены (части между пробельными символами).
+     * Возвращает буфер текущего потока: результат действителен до следующего вызова в этом потоке.
+     *
+     * @param text исходный текст
+     * @return нормализованный текст с границами непустых токенов
+     */
+    static NormalizedText normalize(CharSequence text) {
+        NormalizedText out = BUFFER.get();
+        int length = text.length();
+        out.reset(length);
+        int tokenStart = -1;
+        // '!' после букв токена: станут 'i', если за ними в токене будет буква или цифра
+        int pending = 0;
+        for (int i = 0; i < length; i++) {
+            char folded = FOLD[text.charAt(i)];
+            if (folded == SEPARATOR) {
+                if (tokenStart >= 0 && out.length() > tokenStart) {
+                    out.addToken(tokenStart, out.length());
+                }
+                tokenStart = -1;
+                pending = 0;
+            } else {
+                if (tokenStart < 0) {
+                    tokenStart = out.length();
+                }
+                if (folded == INNER_I) {
+                    if (out.length() > tokenStart) {
+                        pending++;
+                    }
+                } else if (folded != DROP) {
+                    for (; pending > 0; pending--) {
+                        out.append('i');
+                    }
+                    out.append(folded);
+                }
+            }
+        }
+        if (tokenStart >= 0 && out.length() > tokenStart) {
+            out.addToken(tokenStart, out.length());
+        }
+        return out;
+    }
+
+    /**
+     * Нормализует отдельное слово (пробельные символы отбрасываются).
+     */
+    static String normalizeWord(CharSequence word) {
+        StringBuilder sb = new StringBuilder(word.length());
+        int pending = 0;
+        for (int i = 0; i < word.length(); i++) {
+            char folded = FOLD[word.charAt(i)];
+            if (folded == INNER_I) {
+                if (sb.length() > 0) {
+                    pending++;
+                }
+            } else if (folded != DROP && folded != SEPARATOR) {
+                for (; pending > 0; pending--) {
+                    sb.append('i');
+                }
+                sb.append(folded);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static char[] buildFoldTable() {
+        char[] table = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            char ch = (char) c;
+            if (Character.isWhitespace(ch) || Character.isSpaceChar(ch)) {
+                table[c] = SEPARATOR;
+            } else if (Character.isLetterOrDigit(ch) && !Character.isSurrogate(ch)) {
+                table[c] = stripDiacritics(Character.toLowerCase(ch));
+            } else {
+                table[c] = DROP;
+            }
+        }
+        table['!'] = INNER_I;
+        // Полноширинные формы (U+FF01..U+FF5E) сводятся к ASCII
+        for (int c = 0xFF01; c <= 0xFF5E; c++) {
+            table[c] = table[c - 0xFEE0];
+        }
+        for (int i = 0; i < HOMOGLYPHS_FROM.length(); i++) {
+            char from = HOMOGLYPHS_FROM.charAt(i);
+            char to = HOMOGLYPHS_TO.charAt(i);
+            table[from] = to;
+            table[Character.toUpperCase(from)] = to;
+        }
+        // Заглавные формы, чья строчная форма — двойник (например, 'А' -> 'а' -> 'a')
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            char lower = table[c];
+            if (lower > INNER_I) {
+                int index = HOMOGLYPHS_FROM.indexOf(lower);
+                if (index >= 0) {
+                    table[c] = HOMOGLYPHS_TO.charAt(index);
+                }
+            }
+        }
+        return table;
+    }
+
+    // Снимает диакритику у латинских букв: 'é' -> 'e'. Прочие символы возвращаются без изменений.
+    private static char stripDiacritics(char c) {
+        if (c < 0x00C0 || c > 0x024F) {
+            return c;
+        }
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        char base = decomposed.charAt(0);
+        return base >= 'a' && base <= 'z' ? base : c;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.antispambot;
+
+/**
+ * Ведро токенов для ограничения частоты запросов. Время передаётся явно (в наносекундах),
+ * синхронизация — на стороне вызывающего кода.
+ */
+final class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param capacity      максимальный запас токенов (размер всплеска)
+     * @param tokensPerSecond скорость пополнения
+     * @param now           текущее время, нс
+     */
+    TokenBucket(double capacity, double tokensPerSecond, long now) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * @return через сколько наносекунд будет доступен один токен (0 — доступен сейчас)
+     */
+    long nanosUntilAvailable(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Забирает один токен (запас может уйти в минус, если токен не был доступен).
+     */
+    void take(long now) {
+        refill(now);
+        tokens -= 1;
+    }
+
+    /**
+     * @return true, если ведро полностью пополнено (состояние можно забыть без потери точности)
+     */
+    boolean isFull(long now) {
+        refill(now);
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.antispambot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Распределяет входящие обновления по рабочим потокам в зависимости от chatId.
+ * Все обновления одного чата попадают к одному и тому же однопоточному исполнителю,
+ * поэтому порядок внутри чата сохраняется, а разные чаты обрабатываются параллельно.
+ * Если JVM поддерживает виртуальные потоки (Java 21+), исполнители работают на них.
+ * Длина очереди и время ожидания каждого обновления передаются в {@link LoadShedder}, если он задан.
+ */
+public class UpdateDispatcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateDispatcher.class);
+    // Фабрика виртуальных потоков или null, если JVM их не поддерживает
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = virtualThreadFactory();
+
+    private final ExecutorService[] workers;
+    private final Consumer<Update> handler;
+    // Время от постановки обновления в очередь до конца его обработки
+    private final Metrics metrics;
+    // Обновления, поставленные в очередь и ещё не обработанные
+    private final AtomicInteger pending = new AtomicInteger();
+    // Получатель замеров нагрузки, null — не задан
+    private volatile LoadShedder loadShedder;
+
+    /**
+     * @param workerCount количество рабочих исполнителей (0 или меньше — по числу процессоров)
+     * @param handler     обработчик одного обновления
+     */
+    public UpdateDispatcher(int workerCount, Consumer<Update> handler) {
+        this(workerCount, handler, new Metrics());
+    }
+
+    /**
+     * @param workerCount количество рабочих исполнителей (0 или меньше — по числу процессоров)
+     * @param handler     обработчик одного обновления
+     * @param metrics     куда записывать время обработки обновлений с учётом ожидания в очереди
+     */
+    public UpdateDispatcher(int workerCount, Consumer<Update> handler, Metrics metrics) {
+        int count = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+        this.handler = handler;
+        this.metrics = metrics;
+        this.workers = new ExecutorService[count];
+        ThreadFactory threadFactory = createThreadFactory();
+        for (int i = 0; i < count; i++) {
+            workers[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+        logger.info("Обработка обновлений: {} исполнителей, виртуальные потоки: {}",
+                count, VIRTUAL_THREAD_FACTORY != null);
+    }
+
+    /**
+     * Ставит обновление в очередь исполнителя, отвечающего за его чат.
+     */
+    public void dispatch(Update update) {
+        long chatId = chatIdOf(update);
+        long received = System.nanoTime();
+        pending.incrementAndGet();
+        workers[partition(chatId, workers.length)].execute(() -> {
+            LoadShedder shedder = loadShedder;
+            if (shedder != null) {
+                shedder.observe(pending.get(), System.nanoTime() - received);
+            }
+            try {
+                handler.accept(update);
+            } catch (RuntimeException e) {
+                logger.error("Ошибка при обработке обновления {}: ", update.getUpdateId(), e);
+            } finally {
+                metrics.recordLatency(Metrics.Stage.UPDATE, System.nanoTime() - received);
+                // Очередь разобрана: без этого замера уровень оставался бы повышенным до следующего обновления
+                if (pending.decrementAndGet() == 0 && shedder != null) {
+                    shedder.observe(0, 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Передаёт длину очереди и время ожидания обновлений в {@code loadShedder} (null — не передавать).
+     */
+    void setLoadShedder(LoadShedder loadShedder) {
+        this.loadShedder = loadShedder;
+    }
+
+    /**
+     * @return количество обновлений в очереди и в обработке
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return количество рабочих исполнителей
+     */
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Останавливает приём обновлений и дожидается обработки уже поставленных в очередь.
+     */
+    @Override
+    public void close() {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        try {
+            for (ExecutorService worker : workers) {
+                if (!worker.awaitTermination(10, TimeUnit.SECONDS)) {
+                    worker.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Определяет чат, к которому относится обновление. Обновления без чата относятся к разделу 0.
+     */
+    static long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasEditedMessage()) {
+            return update.getEditedMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        if (update.hasChannelPost()) {
+            return update.getChannelPost().getChatId();
+        }
+        if (update.hasMyChatMember()) {
+            return update.getMyChatMember().getChat().getId();
+        }
+        if (update.hasChatMember()) {
+            return update.getChatMember().getChat().getId();
+        }
+        return 0L;
+    }
+
+    static int partition(long chatId, int partitions) {
+        long h = chatId * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 33) % partitions);
+    }
+
+    private static ThreadFactory createThreadFactory() {
+        if (VIRTUAL_THREAD_FACTORY != null) {
+            return VIRTUAL_THREAD_FACTORY;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "update-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Thread.ofVirtual().name("update-worker-", 0).factory() через отражение: проект собирается под Java 8
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "update-worker-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.antispambot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Нагрузочный прогон без Telegram: записанные обновления (по одному JSON на строку, можно в gzip)
+ * читаются потоком и подаются в {@link AntiSpamBot#onUpdateReceived} с заданной частотой
+ * или так быстро, как бот успевает. Исходящие вызовы уходят в {@link FakeTelegramBackend}.
+ * В конце выводится устойчивая пропускная способность, квантили задержки обработки обновления
+ * (от приёма до конца обработки, включая ожидание в очереди) и количество исходящих вызовов.
+ * <p>
+ * Параметры бота берутся из config.properties и переопределяются системными свойствами, например
+ * {@code -Doutbound.globalPerSecond=1000000}, чтобы лимиты Telegram не ограничивали прогон.
+ * Рабочие файлы прогон не меняет: состояние ({@code persistence.dir}) не читается и не сохраняется,
+ * модель классификатора ({@code classifier.modelFile}) только читается, сервер метрик не запускается.
+ * <p>
+ * Запуск: {@code UpdateReplayer <updates.jsonl[.gz]> [обновлений/с, 0 — без ограничения] [задержка Telegram, мс] [доля 429, %]}
+ */
+public class UpdateReplayer {
+    private static final String LOG_LEVEL_PROPERTY = "org.slf4j.simpleLogger.log.com.example.antispambot.AntiSpamBot";
+
+    static {
+        // Бот пишет в журнал каждое сообщение: на прогоне это мерило бы скорость вывода, а не фильтра
+        if (System.getProperty(LOG_LEVEL_PROPERTY) == null) {
+            System.setProperty(LOG_LEVEL_PROPERTY, "warn");
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(UpdateReplayer.class);
+    private static final ObjectReader UPDATE_READER = new ObjectMapper().readerFor(Update.class);
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            logger.error("Использование: UpdateReplayer <updates.jsonl[.gz]> [обновлений/с, 0 — без ограничения] "
+                    + "[задержка Telegram, мс] [доля 429, %]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+        double latencyMillis = args.length > 2 ? Double.parseDouble(args[2]) : 50;
+        double tooManyRequestsPercent = args.length > 3 ? Double.parseDouble(args[3]) : 1;
+
+        try (FakeTelegramBackend backend = new FakeTelegramBackend(latencyMillis, tooManyRequestsPercent / 100, 1)) {
+            AntiSpamBot bot = new AntiSpamBot(backend);
+            Report report;
+            try {
+                report = replay(file, rate, bot, backend);
+            } finally {
+                bot.onClosing();
+            }
+            logger.info("{}", report);
+            logger.info("Вызовы Telegram после сброса очереди исходящих: {}", backend.getCallCounts());
+        }
+    }
+
+    /**
+     * Подаёт обновления из файла в бота и дожидается окончания их обработки.
+     *
+     * @param rate обновлений в секунду; 0 — без ограничения
+     */
+    static Report replay(Path file, double rate, AntiSpamBot bot, FakeTelegramBackend backend) throws IOException {
+        Metrics metrics = bot.getMetrics();
+        long processedBefore = metrics.getLatencyCount(Metrics.Stage.UPDATE);
+        long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        long dispatched = 0;
+        long skipped = 0;
+        long started = System.nanoTime();
+        try (BufferedReader reader = open(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                Update update;
+                try {
+                    update = UPDATE_READER.readValue(line);
+                } catch (IOException e) {
+                    skipped++;
+                    continue;
+                }
+                if (intervalNanos > 0) {
+                    // Расписание считается от начала, чтобы задержки отдельных шагов не накапливались
+                    long due = started + dispatched * intervalNanos;
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                bot.onUpdateReceived(update);
+                dispatched++;
+            }
+        }
+        long fed = System.nanoTime();
+        long deadline = fed + DRAIN_TIMEOUT_NANOS;
+        while (metrics.getLatencyCount(Metrics.Stage.UPDATE) - processedBefore < dispatched
+                && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        long finished = System.nanoTime();
+        return new Report(dispatched, skipped, metrics.getLatencyCount(Metrics.Stage.UPDATE) - processedBefore,
+                finished - started, fed - started, metrics, backend);
+    }
+
+    private static BufferedReader open(Path file) throws IOException {
+        InputStream input = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            input = new GZIPInputStream(input, 64 * 1024);
+        }
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /**
+     * Итоги прогона.
+     */
+    static final class Report {
+        final long dispatched;
+        final long skipped;
+        final long processed;
+        final long elapsedNanos;
+        final long feedNanos;
+        final long[] latencyNanos;
+        final long checked;
+        final long deleted;
+        final Map<String, Long> calls;
+        final long tooManyRequests;
+
+        Report(long dispatched, long skipped, long processed, long elapsedNanos, long feedNanos,
+               Metrics metrics, FakeTelegramBackend backend) {
+            this.dispatched = dispatched;
+            this.skipped = skipped;
+            this.processed = processed;
+            this.elapsedNanos = elapsedNanos;
+            this.feedNanos = feedNanos;
+            this.latencyNanos = new long[]{
+                    metrics.getLatencyQuantile(Metrics.Stage.UPDATE, 0.5),
+                    metrics.getLatencyQuantile(Metrics.Stage.UPDATE, 0.9),
+                    metrics.getLatencyQuantile(Metrics.Stage.UPDATE, 0.99),
+                    metrics.getLatencyQuantile(Metrics.Stage.UPDATE, 0.999)};
+            this.checked = metrics.getMessagesChecked();
+            this.deleted = metrics.getMessagesDeleted();
+            this.calls = backend.getCallCounts();
+            this.tooManyRequests = backend.getTooManyRequestsCount();
+        }
+
+        double updatesPerSecond() {
+            return elapsedNanos == 0 ? 0 : processed * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Обновлений: подано %d, обработано %d, пропущено строк %d%n"
+                            + "Время: подача %d мс, до конца обработки %d мс, %.0f обновлений/с%n"
+                            + "Задержка обработки обновления: p50 %.3f мс, p90 %.3f мс, p99 %.3f мс, p99.9 %.3f мс%n"
+                            + "Проверено сообщений %d, удалено %d%n"
+                            + "Вызовы Telegram: %s, из них ответов 429: %d",
+                    dispatched, processed, skipped,
+                    TimeUnit.NANOSECONDS.toMillis(feedNanos), TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    updatesPerSecond(),
+                    latencyNanos[0] / 1e6, latencyNanos[1] / 1e6, latencyNanos[2] / 1e6, latencyNanos[3] / 1e6,
+                    checked, deleted, calls, tooManyRequests);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.example.antispambot;
+
+import java.util.Arrays;
+
+/**
+ * Хранилище состояния пользователей с ограничением по памяти.
+ * Ключи — примитивные long (userId) в таблицах с открытой адресацией, а все поля пользователя
+ * (время последнего сообщения, хэш последнего сообщения, счётчик спама, режим) лежат в одной записи
+ * параллельных массивов. Неактивные пользователи вытесняются по TTL через колесо таймеров,
+ * при достижении лимита записей вытесняются те, у кого TTL истекает раньше всех.
+ * Хранилище разбито на сегменты с отдельными блокировками.
+ */
+public class UserStateStore {
+    // Режим пользователя по умолчанию
+    public static final int NO_MODE = 0;
+
+    private static final int SEGMENTS = 64;
+    // Количество ячеек колеса таймеров в каждом сегменте
+    private static final int WHEEL_SIZE = 64;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlMillis;
+    private final long tickMillis;
+
+    /**
+     * @param maxUsers   максимальное количество хранимых пользователей
+     * @param ttlSeconds время неактивности, после которого пользователь забывается
+     */
+    public UserStateStore(int maxUsers, int ttlSeconds) {
+        if (maxUsers <= 0 || ttlSeconds <= 0) {
+            throw new IllegalArgumentException("maxUsers и ttlSeconds должны быть положительными");
+        }
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.tickMillis = Math.max(1, (ttlMillis + WHEEL_SIZE - 1) / WHEEL_SIZE);
+        int perSegment = Math.max(1, (maxUsers + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Запоминает время нового сообщения пользователя.
+     *
+     * @return время предыдущего сообщения или 0, если его не было
+     */
+    public long recordMessage(long userId, long now) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            int entry = segment.acquire(userId, now);
+            long previous = segment.lastMessage[entry];
+            segment.lastMessage[entry] = now;
+            return previous;
+        }
+    }
+
+    /**
+     * Заменяет хэш последнего (нормализованного) сообщения пользователя.
+     *
+     * @return предыдущий хэш или 0, если его не было
+     */
+    public long swapMessageHash(long userId, long hash, long now) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            int entry = segment.acquire(userId, now);
+            long previous = segment.messageHash[entry];
+            segment.messageHash[entry] = hash;
+            return previous;
+        }
+    }
+
+    /**
+     * Увеличивает счётчик спам-сообщений пользователя.
+     *
+     * @return новое значение счётчика
+     */
+    public int incrementSpamCount(long userId, long now) {
+        return incrementSpamCount(userId, now, null);
+    }
+
+    /**
+     * Увеличивает счётчик спам-сообщений пользователя и передаёт новое значение наблюдателю
+     * под блокировкой сегмента: значения одного пользователя доходят до наблюдателя в том же порядке,
+     * в каком рос счётчик.
+     *
+     * @param observer получатель нового значения (время — {@code now}) или null; должен работать быстро
+     * @return новое значение счётчика
+     */
+    public int incrementSpamCount(long userId, long now, SpamCountVisitor observer) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            int entry = segment.acquire(userId, now);
+            int spamCount = ++segment.spamCount[entry];
+            if (observer != null) {
+                observer.visit(userId, spamCount, now);
+            }
+            return spamCount;
+        }
+    }
+
+    public int getSpamCount(long userId) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            int entry = segment.find(userId);
+            return entry < 0 ? 0 : segment.spamCount[entry];
+        }
+    }
+
+    public int getMode(long userId) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            int entry = segment.find(userId);
+            return entry < 0 ? NO_MODE : segment.mode[entry];
+        }
+    }
+
+    public void setMode(long userId, int mode, long now) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            if (mode == NO_MODE && segment.find(userId) < 0) {
+                return;
+            }
+            segment.mode[segment.acquire(userId, now)] = (byte) mode;
+        }
+    }
+
+    /**
+     * Восстанавливает счётчик спама пользователя (например, из снимка или журнала).
+     * Пользователь, чей TTL к моменту {@code now} уже истёк, не восстанавливается.
+     *
+     * @param lastAccess время последней активности пользователя
+     */
+    public void restoreSpamCount(long userId, int spamCount, long lastAccess, long now) {
+        if (lastAccess + ttlMillis <= now) {
+            return;
+        }
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            segment.advance(now);
+            segment.spamCount[segment.acquire(userId, Math.min(lastAccess, now))] = spamCount;
+        }
+    }
+
+    /**
+     * Обходит всех пользователей с ненулевым счётчиком спама.
+     * Каждый сегмент обходится под своей блокировкой, поэтому посетитель должен работать быстро.
+     */
+    public void forEachSpamCount(SpamCountVisitor visitor) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (int entry = 0; entry < segment.allocated; entry++) {
+                    if (segment.spamCount[entry] > 0 && segment.find(segment.userIds[entry]) == entry) {
+                        visitor.visit(segment.userIds[entry], segment.spamCount[entry], segment.lastAccess[entry]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Посетитель для {@link #forEachSpamCount} и наблюдатель для {@link #incrementSpamCount}.
+     */
+    public interface SpamCountVisitor {
+        void visit(long userId, int spamCount, long lastAccess);
+    }
+
+    /**
+     * @return количество пользователей в хранилище
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return количество пользователей, вытесненных по TTL или из-за лимита
+     */
+    public long getEvictionCount() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    private Segment segmentFor(long userId) {
+        return segments[(int) (mix(userId) >>> 58)];
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Сегмент хранилища. Хэш-таблица (ключ -> номер записи) отделена от записей,
+     * поэтому сдвиг ключей при удалении не меняет номера записей в списках колеса таймеров.
+     */
+    private final class Segment {
+        private final int maxEntries;
+
+        // Хэш-таблица с линейным пробированием: tableEntry хранит номер записи + 1, 0 — пустая ячейка
+        private long[] tableKeys;
+        private int[] tableEntry;
+
+        // Записи
+        private long[] userIds;
+        private long[] lastAccess;
+        private long[] lastMessage;
+        private long[] messageHash;
+        private int[] spamCount;
+        private byte[] mode;
+        // Двусвязные списки ячеек колеса; для свободных записей next образует список свободных
+        private int[] next;
+        private int[] prev;
+
+        private final int[] wheel = new int[WHEEL_SIZE];
+        private long currentTick = -1;
+        private int freeHead = -1;
+        private int allocated;
+        private int size;
+        private long evictions;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+            Arrays.fill(wheel, -1);
+            allocate(Math.min(INITIAL_CAPACITY, maxEntries));
+        }
+
+        int find(long userId) {
+            int mask = tableKeys.length - 1;
+            int slot = (int) mix(userId) & mask;
+            while (tableEntry[slot] != 0) {
+                if (tableKeys[slot] == userId) {
+                    return tableEntry[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        // Находит или создаёт запись пользователя и продлевает её TTL
+        int acquire(long userId, long now) {
+            advance(now);
+            int entry = find(userId);
+            if (entry >= 0) {
+                unlink(entry);
+            } else {
+                entry = newEntry(userId);
+            }
+            lastAccess[entry] = now;
+            link(entry, expiryTick(now));
+            return entry;
+        }
+
+        private int newEntry(long userId) {
+            if (freeHead < 0) {
+                if (allocated == userIds.length && userIds.length < maxEntries) {
+                    allocate(Math.min(maxEntries, userIds.length * 2));
+                }
+                if (allocated == userIds.length) {
+                    evictEarliest();
+                }
+            }
+            int entry;
+            if (freeHead >= 0) {
+                entry = freeHead;
+                freeHead = next[entry];
+            } else {
+                entry = allocated++;
+            }
+            userIds[entry] = userId;
+            lastMessage[entry] = 0;
+            messageHash[entry] = 0;
+            spamCount[entry] = 0;
+            mode[entry] = NO_MODE;
+            insertKey(userId, entry);
+            size++;
+            return entry;
+        }
+
+        // Проходит ячейки колеса, чьё время наступило, и удаляет записи с истёкшим TTL
+        private void advance(long now) {
+            long nowTick = now / tickMillis;
+            if (currentTick < 0) {
+                currentTick = nowTick;
+                return;
+            }
+            long last = Math.min(nowTick, currentTick + WHEEL_SIZE);
+            for (long tick = currentTick + 1; tick <= last; tick++) {
+                int entry = wheel[(int) (tick % WHEEL_SIZE)];
+                while (entry >= 0) {
+                    int following = next[entry];
+                    if (expiryTick(lastAccess[entry]) <= nowTick) {
+                        remove(entry);
+                    }
+                    entry = following;
+                }
+            }
+            if (nowTick > currentTick) {
+                currentTick = nowTick;
+            }
+        }
+
+        // Лимит записей исчерпан: вытесняем запись из ближайшей по времени истечения ячейки
+        private void evictEarliest() {
+            for (int i = 1; i <= WHEEL_SIZE; i++) {
+                int entry = wheel[(int) ((currentTick + i) % WHEEL_SIZE)];
+                if (entry >= 0) {
+                    remove(entry);
+                    return;
+                }
+            }
+        }
+
+        private void remove(int entry) {
+            unlink(entry);
+            deleteKey(userIds[entry]);
+            next[entry] = freeHead;
+            freeHead = entry;
+            size--;
+            evictions++;
+        }
+
+        private long expiryTick(long accessTime) {
+            return (accessTime + ttlMillis + tickMillis - 1) / tickMillis;
+        }
+
+        private void link(int entry, long tick) {
+            int bucket = (int) (tick % WHEEL_SIZE);
+            int head = wheel[bucket];
+            prev[entry] = -1 - bucket;
+            next[entry] = head;
+            if (head >= 0) {
+                prev[head] = entry;
+            }
+            wheel[bucket] = entry;
+        }
+
+        private void unlink(int entry) {
+            int p = prev[entry];
+            int n = next[entry];
+            if (p >= 0) {
+                next[p] = n;
+            } else {
+                // Отрицательное prev у головы списка хранит номер ячейки колеса
+                wheel[-1 - p] = n;
+            }
+            if (n >= 0) {
+                prev[n] = p;
+            }
+        }
+
+        private void insertKey(long userId, int entry) {
+            int mask = tableKeys.length - 1;
+            int slot = (int) mix(userId) & mask;
+            while (tableEntry[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            tableKeys[slot] = userId;
+            tableEntry[slot] = entry + 1;
+        }
+
+        // Удаление со сдвигом назад, чтобы цепочки линейного пробирования оставались непрерывными
+        private void deleteKey(long userId) {
+            int mask = tableKeys.length - 1;
+            int slot = (int) mix(userId) & mask;
+            while (tableKeys[slot] != userId || tableEntry[slot] == 0) {
+                slot = (slot + 1) & mask;
+            }
+            int hole = slot;
+            int i = (hole + 1) & mask;
+            while (tableEntry[i] != 0) {
+                int home = (int) mix(tableKeys[i]) & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    tableKeys[hole] = tableKeys[i];
+                    tableEntry[hole] = tableEntry[i];
+                    hole = i;
+                }
+                i = (i + 1) & mask;
+            }
+            tableEntry[hole] = 0;
+        }
+
+        private void allocate(int capacity) {
+            userIds = userIds == null ? new long[capacity] : Arrays.copyOf(userIds, capacity);
+            lastAccess = lastAccess == null ? new long[capacity] : Arrays.copyOf(lastAccess, capacity);
+            lastMessage = lastMessage == null ? new long[capacity] : Arrays.copyOf(lastMessage, capacity);
+            messageHash = messageHash == null ? new long[capacity] : Arrays.copyOf(messageHash, capacity);
+            spamCount = spamCount == null ? new int[capacity] : Arrays.copyOf(spamCount, capacity);
+            mode = mode == null ? new byte[capacity] : Arrays.copyOf(mode, capacity);
+            next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+            prev = prev == null ? new int[capacity] : Arrays.copyOf(prev, capacity);
+
+            int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+            long[] oldKeys = tableKeys;
+            int[] oldEntries = tableEntry;
+            tableKeys = new long[tableSize];
+            tableEntry = new int[tableSize];
+            if (oldKeys != null) {
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldEntries[i] != 0) {
+                        insertKey(oldKeys[i], oldEntries[i] - 1);
+                    }
+                }
+            }
+        }
+    }
+}
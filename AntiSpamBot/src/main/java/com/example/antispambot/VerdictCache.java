@@ -0,0 +1,340 @@
+package com.example.antispambot;
+
+/**
+ * Ограниченный кэш вердиктов по 64-битному отпечатку текста с вытеснением в духе W-TinyLFU.
+ * <p>
+ * Новые записи попадают в маленькое окно (1% ёмкости) с вытеснением по LRU. Запись, вытесненная
+ * из окна, становится кандидатом в основную область и сравнивается с первым кандидатом на вытеснение
+ * оттуда по частоте обращений: остаётся та, к которой обращались чаще. Частоты считает count-min
+ * sketch с 4-битными счётчиками, которые периодически делятся пополам, чтобы старая популярность
+ * забывалась. Основная область разделена на испытательную и защищённую (80%) части: запись
+ * переходит в защищённую при повторном обращении. Так поток разовых текстов не вытесняет
+ * тексты, которые повторяются (например, рассылку во время рейда).
+ * <p>
+ * Каждая запись хранит поколение: при обращении с другим поколением запись считается устаревшей
+ * и удаляется. Кэш разбит на сегменты с отдельными блокировками; записи лежат в параллельных
+ * массивах, выделенных при создании, поэтому обращения не выделяют памяти.
+ */
+final class VerdictCache {
+    /**
+     * Результат {@link #get}, если записи нет или она устарела.
+     */
+    static final int MISS = -1;
+
+    private static final int MAX_SEGMENTS = 64;
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final long[] SKETCH_SEEDS = {
+            0x97cb3127a0a2b3c5L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0xd6e8feb86659fd93L};
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    /**
+     * @param capacity максимальное количество записей
+     */
+    VerdictCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ёмкость кэша должна быть положительной");
+        }
+        // В сегменте не меньше 64 записей, иначе окно и доли областей теряют смысл
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, capacity / 64)));
+        segments = new Segment[count];
+        segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+        int perSegment = (capacity + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Ключ записи: отпечаток текста в области действия списка слов (0 — общий список).
+     */
+    static long key(long contentHash, long scope) {
+        return scope == 0 ? contentHash : mix(contentHash ^ (scope * 0x9e3779b97f4a7c15L));
+    }
+
+    /**
+     * @return значение записи или {@link #MISS}
+     */
+    int get(long key, int generation) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.get(key, generation);
+        }
+    }
+
+    /**
+     * Запоминает значение (от 0 до 127). Вызывается после промаха {@link #get}.
+     */
+    void put(long key, int generation, int value) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, generation, (byte) value);
+        }
+    }
+
+    /**
+     * @return количество записей
+     */
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(long key) {
+        return segments.length == 1 ? segments[0] : segments[(int) (mix(key) >>> segmentShift)];
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Segment {
+        private final int capacity;
+        private final int windowMax;
+        private final int protectedMax;
+
+        // Хэш-таблица с линейным пробированием: tableEntry хранит номер записи + 1, 0 — пустая ячейка
+        private final long[] tableKeys;
+        private final int[] tableEntry;
+
+        // Записи; одна лишняя — для новой записи до вытеснения
+        private final long[] keys;
+        private final int[] generations;
+        private final byte[] values;
+        private final byte[] queue;
+        // Двусвязные списки областей от старых записей к новым; для свободных next образует список свободных
+        private final int[] next;
+        private final int[] prev;
+        private final int[] heads = {-1, -1, -1};
+        private final int[] tails = {-1, -1, -1};
+        private final int[] sizes = new int[3];
+        private int freeHead = -1;
+        private int allocated;
+        private int size;
+
+        // Count-min sketch: 16 четырёхбитных счётчиков в каждом long
+        private final long[] sketch;
+        private final int sketchMask;
+        private final int sampleSize;
+        private int samples;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.windowMax = Math.max(1, capacity / 100);
+            this.protectedMax = (capacity - windowMax) * 4 / 5;
+            int tableSize = Integer.highestOneBit(Math.max(2, (capacity + 1) * 2 - 1)) << 1;
+            tableKeys = new long[tableSize];
+            tableEntry = new int[tableSize];
+            keys = new long[capacity + 1];
+            generations = new int[capacity + 1];
+            values = new byte[capacity + 1];
+            queue = new byte[capacity + 1];
+            next = new int[capacity + 1];
+            prev = new int[capacity + 1];
+            int sketchSize = Integer.highestOneBit(Math.max(16, capacity * 2 - 1));
+            sketch = new long[sketchSize];
+            sketchMask = sketchSize - 1;
+            sampleSize = 10 * Math.max(16, capacity);
+        }
+
+        int get(long key, int generation) {
+            recordAccess(key);
+            int entry = find(key);
+            if (entry < 0) {
+                return MISS;
+            }
+            if (generations[entry] != generation) {
+                remove(entry);
+                return MISS;
+            }
+            int area = queue[entry];
+            unlink(entry);
+            if (area == PROBATION) {
+                // Повторное обращение: запись переходит в защищённую область, а самая старая
+                // защищённая возвращается в испытательную
+                link(entry, PROTECTED);
+                if (sizes[PROTECTED] > protectedMax) {
+                    int demoted = heads[PROTECTED];
+                    unlink(demoted);
+                    link(demoted, PROBATION);
+                }
+            } else {
+                link(entry, area);
+            }
+            return values[entry];
+        }
+
+        void put(long key, int generation, byte value) {
+            int entry = find(key);
+            if (entry >= 0) {
+                generations[entry] = generation;
+                values[entry] = value;
+                return;
+            }
+            entry = allocate();
+            keys[entry] = key;
+            generations[entry] = generation;
+            values[entry] = value;
+            insertKey(key, entry);
+            link(entry, WINDOW);
+            size++;
+
+            int candidate = -1;
+            if (sizes[WINDOW] > windowMax) {
+                candidate = heads[WINDOW];
+                unlink(candidate);
+                link(candidate, PROBATION);
+            }
+            if (size > capacity) {
+                evict(candidate);
+            }
+        }
+
+        // Выбирает между кандидатом из окна и самой старой записью основной области
+        private void evict(int candidate) {
+            int victim = heads[PROBATION];
+            if (victim == candidate) {
+                victim = next[victim] >= 0 ? next[victim] : heads[PROTECTED];
+            }
+            if (candidate < 0) {
+                remove(victim >= 0 ? victim : heads[WINDOW]);
+            } else if (victim < 0) {
+                remove(candidate);
+            } else {
+                remove(frequency(keys[candidate]) > frequency(keys[victim]) ? victim : candidate);
+            }
+        }
+
+        private int allocate() {
+            if (freeHead >= 0) {
+                int entry = freeHead;
+                freeHead = next[entry];
+                return entry;
+            }
+            return allocated++;
+        }
+
+        private void remove(int entry) {
+            unlink(entry);
+            deleteKey(keys[entry]);
+            next[entry] = freeHead;
+            freeHead = entry;
+            size--;
+        }
+
+        private void link(int entry, int area) {
+            queue[entry] = (byte) area;
+            int tail = tails[area];
+            prev[entry] = tail;
+            next[entry] = -1;
+            if (tail >= 0) {
+                next[tail] = entry;
+            } else {
+                heads[area] = entry;
+            }
+            tails[area] = entry;
+            sizes[area]++;
+        }
+
+        private void unlink(int entry) {
+            int area = queue[entry];
+            int p = prev[entry];
+            int n = next[entry];
+            if (p >= 0) {
+                next[p] = n;
+            } else {
+                heads[area] = n;
+            }
+            if (n >= 0) {
+                prev[n] = p;
+            } else {
+                tails[area] = p;
+            }
+            sizes[area]--;
+        }
+
+        private void recordAccess(long key) {
+            for (int i = 0; i < SKETCH_SEEDS.length; i++) {
+                long h = mix(key ^ SKETCH_SEEDS[i]);
+                int slot = (int) h & sketchMask;
+                int shift = (int) (h >>> 60) << 2;
+                if (((sketch[slot] >>> shift) & 0xf) < 0xf) {
+                    sketch[slot] += 1L << shift;
+                }
+            }
+            if (++samples >= sampleSize) {
+                // Старение: все счётчики делятся пополам
+                for (int i = 0; i < sketch.length; i++) {
+                    sketch[i] = (sketch[i] >>> 1) & 0x7777777777777777L;
+                }
+                samples /= 2;
+            }
+        }
+
+        private int frequency(long key) {
+            int min = 0xf;
+            for (int i = 0; i < SKETCH_SEEDS.length; i++) {
+                long h = mix(key ^ SKETCH_SEEDS[i]);
+                int shift = (int) (h >>> 60) << 2;
+                min = Math.min(min, (int) ((sketch[(int) h & sketchMask] >>> shift) & 0xf));
+            }
+            return min;
+        }
+
+        private int find(long key) {
+            int mask = tableKeys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (tableEntry[slot] != 0) {
+                if (tableKeys[slot] == key) {
+                    return tableEntry[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void insertKey(long key, int entry) {
+            int mask = tableKeys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (tableEntry[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            tableKeys[slot] = key;
+            tableEntry[slot] = entry + 1;
+        }
+
+        // Удаление со сдвигом назад, чтобы цепочки линейного пробирования оставались непрерывными
+        private void deleteKey(long key) {
+            int mask = tableKeys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (tableKeys[slot] != key || tableEntry[slot] == 0) {
+                slot = (slot + 1) & mask;
+            }
+            int hole = slot;
+            int i = (hole + 1) & mask;
+            while (tableEntry[i] != 0) {
+                int home = (int) mix(tableKeys[i]) & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    tableKeys[hole] = tableKeys[i];
+                    tableEntry[hole] = tableEntry[i];
+                    hole = i;
+                }
+                i = (i + 1) & mask;
+            }
+            tableEntry[hole] = 0;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.antispambot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Локальный клиент-заменитель Telegram: отправляет записанные обновления (по одному JSON на строку)
+ * на webhook бота и измеряет пропускную способность и задержку приёма.
+ * <p>
+ * Запуск: {@code WebhookLoadClient <url> <updates.jsonl> [запросов] [параллельность] [secret_token]}
+ */
+public class WebhookLoadClient {
+    private static final Logger logger = LoggerFactory.getLogger(WebhookLoadClient.class);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            logger.error("Использование: WebhookLoadClient <url> <updates.jsonl> [запросов] [параллельность] [secret_token]");
+            return;
+        }
+        URL url = new URL(args[0]);
+        List<byte[]> bodies = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                bodies.add(line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (bodies.isEmpty()) {
+            logger.error("Файл {} не содержит обновлений", args[1]);
+            return;
+        }
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : bodies.size();
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        String secretToken = args.length > 4 ? args[4] : null;
+
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[concurrency];
+        long start = System.nanoTime();
+        for (int t = 0; t < concurrency; t++) {
+            threads[t] = new Thread(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < requests) {
+                    long sent = System.nanoTime();
+                    try {
+                        if (post(url, bodies.get(i % bodies.size()), secretToken) != 200) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    }
+                    latencies[i] = System.nanoTime() - sent;
+                }
+            }, "webhook-load-" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        logger.info("Отправлено {} обновлений за {} мс ({} в секунду), ошибок: {}",
+                requests, elapsed / 1_000_000, String.format("%.1f", requests * 1e9 / elapsed), failures.get());
+        logger.info("Задержка, мкс: p50={} p90={} p99={} max={}",
+                percentile(latencies, 0.50) / 1000, percentile(latencies, 0.90) / 1000,
+                percentile(latencies, 0.99) / 1000, latencies[latencies.length - 1] / 1000);
+    }
+
+    private static int post(URL url, byte[] body, String secretToken) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        if (secretToken != null) {
+            connection.setRequestProperty(WebhookServer.SECRET_TOKEN_HEADER, secretToken);
+        }
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body);
+        }
+        int status = connection.getResponseCode();
+        // Дочитываем ответ, чтобы соединение вернулось в пул keep-alive
+        try (InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (input != null) {
+                while (input.read() != -1) {
+                    // пропускаем
+                }
+            }
+        }
+        return status;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
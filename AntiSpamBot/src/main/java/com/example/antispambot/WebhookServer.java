@@ -0,0 +1,153 @@
+package com.example.antispambot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Встроенный HTTP-сервер для приёма обновлений через webhook.
+ * Тело запроса разбирается в {@link Update} и сразу передаётся в обработку, ответ 200 отправляется
+ * без ожидания проверки сообщения. За обратным прокси, который завершает TLS, сервер слушает обычный HTTP
+ * на локальном адресе; без прокси можно указать хранилище ключей, и сервер сам примет HTTPS.
+ * Несколько ботов одного процесса принимают обновления на одном порту, каждый по своему пути ({@link #addPath}).
+ */
+public class WebhookServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(WebhookServer.class);
+    // Заголовок, в котором Telegram передаёт secret_token, указанный при setWebhook
+    static final String SECRET_TOKEN_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private static final ObjectReader UPDATE_READER = new ObjectMapper().readerFor(Update.class);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] secretToken;
+
+    /**
+     * @param bindAddress      адрес для прослушивания (например, 127.0.0.1 за обратным прокси)
+     * @param port             порт
+     * @param path             путь, на который Telegram отправляет обновления
+     * @param secretToken      ожидаемый secret_token или null, если проверка не нужна
+     * @param keystorePath     хранилище ключей PKCS12/JKS для прямого HTTPS или null для HTTP
+     * @param keystorePassword пароль хранилища ключей
+     * @param handler          получатель разобранных обновлений
+     */
+    public WebhookServer(String bindAddress, int port, String path, String secretToken,
+                         String keystorePath, String keystorePassword, Consumer<Update> handler) throws IOException {
+        this.secretToken = secretToken == null || secretToken.isEmpty()
+                ? null : secretToken.getBytes(StandardCharsets.UTF_8);
+        InetSocketAddress address = new InetSocketAddress(bindAddress, port);
+        if (keystorePath != null && !keystorePath.isEmpty()) {
+            HttpsServer httpsServer = HttpsServer.create(address, 0);
+            httpsServer.setHttpsConfigurator(new HttpsConfigurator(createSslContext(keystorePath, keystorePassword)));
+            this.server = httpsServer;
+        } else {
+            this.server = HttpServer.create(address, 0);
+        }
+        // Обработчик только разбирает JSON и ставит обновление в очередь, поэтому потоков нужно немного
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "webhook-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        addPath(path, handler);
+    }
+
+    /**
+     * Принимает обновления ещё на одном пути (например, для другого бота).
+     */
+    public void addPath(String path, Consumer<Update> handler) {
+        server.createContext(path, exchange -> handle(exchange, handler));
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Webhook-сервер слушает {}", server.getAddress());
+    }
+
+    /**
+     * @return фактический адрес сервера (полезно, если был указан порт 0)
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange, Consumer<Update> handler) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (secretToken != null && !isSecretValid(exchange.getRequestHeaders().getFirst(SECRET_TOKEN_HEADER))) {
+                logger.warn("Webhook-запрос с неверным secret_token от {}", clientAddress(exchange));
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            Update update;
+            try (InputStream body = exchange.getRequestBody()) {
+                update = UPDATE_READER.readValue(body);
+            } catch (IOException e) {
+                logger.warn("Некорректное тело webhook-запроса от {}: {}", clientAddress(exchange), e.getMessage());
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            handler.accept(update);
+            exchange.sendResponseHeaders(200, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean isSecretValid(String received) {
+        return received != null && MessageDigest.isEqual(secretToken, received.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // За обратным прокси реальный адрес клиента приходит в X-Forwarded-For
+    private static String clientAddress(HttpExchange exchange) {
+        String forwarded = exchange.getRequestHeaders().getFirst("X-Forwarded-For");
+        return forwarded != null ? forwarded : String.valueOf(exchange.getRemoteAddress());
+    }
+
+    private static SSLContext createSslContext(String keystorePath, String password) throws IOException {
+        char[] secret = password == null ? new char[0] : password.toCharArray();
+        try (InputStream input = new FileInputStream(keystorePath)) {
+            KeyStore keyStore = KeyStore.getInstance(keystorePath.endsWith(".jks") ? "JKS" : "PKCS12");
+            keyStore.load(input, secret);
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, secret);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagers.getKeyManagers(), null, null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Не удалось загрузить хранилище ключей " + keystorePath, e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class AhoCorasickMatcherTest {
+
+    @Test
+    public void testFindsPatternsAsSubstrings() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.compile(Arrays.asList("spam", "casino", "he", "hers"));
+        Assert.assertTrue(matcher.containsAny("superspammer"));
+        Assert.assertTrue(matcher.containsAny("onlinecasino"));
+        Assert.assertTrue(matcher.containsAny("ushers"));
+        Assert.assertFalse(matcher.containsAny("spa"));
+        Assert.assertFalse(matcher.containsAny("casin"));
+        Assert.assertFalse(matcher.containsAny(""));
+    }
+
+    @Test
+    public void testRangeIsRespected() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.compile(Collections.singletonList("spam"));
+        Assert.assertFalse(matcher.containsAny("spamhello", 1, 9));
+        Assert.assertTrue(matcher.containsAny("helloxspam", 5, 10));
+    }
+
+    @Test
+    public void testEmptyPatternMatchesEverything() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.compile(Arrays.asList("", "spam"));
+        Assert.assertTrue(matcher.containsAny(""));
+        Assert.assertTrue(matcher.containsAny("hello"));
+    }
+
+    @Test
+    public void testNoPatternsMatchesNothing() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.compile(Collections.<String>emptyList());
+        Assert.assertFalse(matcher.containsAny("anything"));
+        Assert.assertEquals(0, matcher.size());
+    }
+
+    @Test
+    public void testAgreesWithStringContains() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<String> patterns = new ArrayList<>();
+            int count = 1 + random.nextInt(20);
+            for (int i = 0; i < count; i++) {
+                patterns.add(randomString(random, 1 + random.nextInt(5)));
+            }
+            AhoCorasickMatcher matcher = AhoCorasickMatcher.compile(patterns);
+            for (int q = 0; q < 50; q++) {
+                String text = randomString(random, random.nextInt(30));
+                boolean expected = false;
+                for (String pattern : patterns) {
+                    if (text.contains(pattern)) {
+                        expected = true;
+                        break;
+                    }
+                }
+                Assert.assertEquals("text=" + text + " patterns=" + patterns, expected, matcher.containsAny(text));
+            }
+        }
+    }
+
+    @Test
+    public void testExcludedPatternsMatchLikeCompiledWithoutThem() {
+        Random random = new Random(7);
+        for (int round = 0; round < 300; round++) {
+            List<String> patterns = new ArrayList<>();
+            Set<String> excluded = new HashSet<>();
+            for (int i = 0; i < 1 + random.nextInt(8); i++) {
+                String pattern = randomString(random, 1 + random.nextInt(4));
+                patterns.add(pattern);
+                if (random.nextBoolean()) {
+                    excluded.add(pattern);
+                }
+            }
+            Set<String> remaining = new HashSet<>(patterns);
+            remaining.removeAll(excluded);
+            AhoCorasickMatcher matcher = AhoCorasickMatcher.compile(patterns);
+            AhoCorasickMatcher expected = AhoCorasickMatcher.compile(remaining);
+            for (int t = 0; t < 20; t++) {
+                String text = randomString(random, random.nextInt(12));
+                Assert.assertEquals("text=" + text + " patterns=" + patterns + " excluded=" + excluded,
+                        expected.containsAny(text), matcher.containsAny(text, 0, text.length(), excluded));
+            }
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+public class BannedWordListLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testListWordsAreAddedToManualWords() throws Exception {
+        Path first = folder.getRoot().toPath().resolve("first.txt");
+        Path second = folder.getRoot().toPath().resolve("second.txt");
+        Files.write(first, Arrays.asList("# реклама", "казино", "", "ставки  # спорт"), StandardCharsets.UTF_8);
+        Files.write(second, Collections.singletonList("крипта"), StandardCharsets.UTF_8);
+        SpamFilterService service = new SpamFilterService();
+        try (BannedWordListLoader loader = new BannedWordListLoader(service.getEngine(), false)) {
+            loader.setFiles(Arrays.asList(first, second)).get();
+
+            Assert.assertEquals(3, service.getListWordCount());
+            Assert.assertTrue(service.getBannedWords().contains(SpamFilterService.normalizeWord("ставки")));
+            Assert.assertTrue(service.getBannedWords().contains(SpamFilterService.normalizeWord("spamword1")));
+            // В журнал попадают только слова, добавленные командами
+            Assert.assertFalse(service.getManualBannedWords().contains(SpamFilterService.normalizeWord("казино")));
+            Assert.assertFalse(service.removeBannedWord("казино"));
+
+            loader.setFiles(Collections.singletonList(second)).get();
+            Assert.assertFalse(service.getBannedWords().contains(SpamFilterService.normalizeWord("казино")));
+            Assert.assertTrue(service.getBannedWords().contains(SpamFilterService.normalizeWord("крипта")));
+        }
+    }
+
+    @Test
+    public void testUnreadableFileKeepsPreviousList() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("words.txt");
+        Files.write(file, Collections.singletonList("казино"), StandardCharsets.UTF_8);
+        SpamFilterService service = new SpamFilterService();
+        try (BannedWordListLoader loader = new BannedWordListLoader(service.getEngine(), false)) {
+            loader.setFiles(Collections.singletonList(file)).get();
+            loader.setFiles(Arrays.asList(file, folder.getRoot().toPath().resolve("missing.txt"))).get();
+
+            Assert.assertTrue(service.getBannedWords().contains(SpamFilterService.normalizeWord("казино")));
+        }
+    }
+
+    @Test
+    public void testManualEditsDuringReloadAreNotLost() throws Exception {
+        SpamFilterEngine engine = new SpamFilterEngine();
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            list.add("listword" + i);
+        }
+        Thread reloads = new Thread(() -> {
+            for (int i = 0; i < 5; i++) {
+                engine.setListWords(list);
+            }
+        });
+        reloads.start();
+        // Автомат собирается вне блокировки: слова, добавленные во время сборки, не теряются
+        for (int i = 0; i < 200; i++) {
+            Assert.assertTrue(engine.addBannedWord("manualword" + i));
+        }
+        reloads.join();
+
+        Set<String> words = engine.getBannedWords();
+        Assert.assertEquals(20000 + 200 + 2, words.size());
+        Assert.assertTrue(words.contains(SpamFilterService.normalizeWord("manualword199")));
+        Assert.assertTrue(words.contains(SpamFilterService.normalizeWord("listword19999")));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class BotConfigTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testExternalFileOverridesClasspathValues() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("config.properties");
+        write(file, "spam.threshold=5\n");
+        Properties defaults = new Properties();
+        defaults.setProperty("spam.threshold", "3");
+        defaults.setProperty("spam.floodIntervalMillis", "2000");
+
+        BotConfig config = new BotConfig(defaults, file);
+        Assert.assertEquals(5, config.getIntProperty("spam.threshold", 0));
+        Assert.assertEquals(2000, config.getIntProperty("spam.floodIntervalMillis", 0));
+    }
+
+    @Test
+    public void testBrokenFileKeepsPreviousValues() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("config.properties");
+        write(file, "spam.threshold=5\n");
+        BotConfig config = new BotConfig(new Properties(), file);
+
+        write(file, "spam.threshold=7\nbroken=\\uZZZZ\n");
+        Assert.assertFalse(config.reload());
+        Assert.assertEquals(5, config.getIntProperty("spam.threshold", 0));
+    }
+
+    @Test
+    public void testChangedFileIsReloaded() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("config.properties");
+        write(file, "spam.floodIntervalMillis=2000\n");
+        BotConfig config = new BotConfig(new Properties(), file);
+        CountDownLatch reloaded = new CountDownLatch(1);
+        config.addReloadListener(reloaded::countDown);
+        config.startWatching();
+        try {
+            // Файл заменяется целиком, как при развёртывании конфигурации
+            Path temp = folder.getRoot().toPath().resolve("config.properties.new");
+            write(temp, "spam.floodIntervalMillis=500\n");
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Assert.assertTrue("Файл должен быть перечитан", reloaded.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals(500, config.getIntProperty("spam.floodIntervalMillis", 0));
+        } finally {
+            config.stopWatching();
+        }
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class ChatRuleSetsTest {
+
+    @Test
+    public void testChatRulesDoNotAffectOtherChats() {
+        SpamFilterService service = new SpamFilterService();
+        service.addBannedWord("ставки");
+        Assert.assertTrue(service.addBannedWord(-1L, "казино"));
+        Assert.assertTrue(service.removeBannedWord(-1L, "ставки"));
+
+        Assert.assertTrue(service.isSpam(TestUpdates.createUpdate("лучшее казино", 1L, -1L)));
+        Assert.assertFalse(service.isSpam(TestUpdates.createUpdate("принимаю ставки", 2L, -1L)));
+        Assert.assertFalse(service.isSpam(TestUpdates.createUpdate("лучшее казино", 3L, -2L)));
+        Assert.assertTrue(service.isSpam(TestUpdates.createUpdate("принимаю ставки", 4L, -2L)));
+    }
+
+    @Test
+    public void testChatRulesFollowBaseList() {
+        SpamFilterService service = new SpamFilterService();
+        service.removeBannedWord(-1L, "spamword1");
+        service.addBannedWord("ставки");
+        Assert.assertTrue(service.getBannedWords(-1L).contains(SpamFilterService.normalizeWord("ставки")));
+        Assert.assertFalse(service.getBannedWords(-1L).contains(SpamFilterService.normalizeWord("spamword1")));
+
+        // Возврат слова в чат убирает исключение, и чат снова использует общий список
+        Assert.assertTrue(service.addBannedWord(-1L, "spamword1"));
+        Assert.assertEquals(0, service.getChatRuleCount());
+        Assert.assertSame(service.getBannedWords(), service.getBannedWords(-1L));
+    }
+
+    @Test
+    public void testChatsCompileOnlyTheirOwnWords() {
+        ChatRuleSets rules = new ChatRuleSets();
+        Set<String> base = new HashSet<>(Arrays.asList("spamword1", "stavki", "reklama"));
+        rules.setBase(BannedWords.of(base));
+        for (long chatId = -1; chatId >= -100; chatId--) {
+            rules.setOverlay(chatId, new HashSet<>(Collections.singleton("kazino")),
+                    new HashSet<>(Collections.singleton("reklama")));
+        }
+        Assert.assertEquals(100, rules.overlayCount());
+        ChatRuleSets.Overlay first = rules.overlay(-1L);
+        // В снимке чата только его слово, и чаты с одинаковыми словами делят один снимок
+        Assert.assertEquals(1, first.words.matcher.size());
+        Assert.assertSame(first.words, rules.overlay(-100L).words);
+        Assert.assertTrue(rules.contains(-1L, "kazino"));
+        Assert.assertTrue(rules.contains(-1L, "stavki"));
+        Assert.assertFalse(rules.contains(-1L, "reklama"));
+        Assert.assertTrue(rules.contains(-2000L, "reklama"));
+
+        // Изменение общего списка не пересобирает правила чатов
+        base.add("kripta");
+        rules.setBase(BannedWords.of(base));
+        Assert.assertSame(first, rules.overlay(-1L));
+        Assert.assertTrue(rules.contains(-1L, "kripta"));
+    }
+
+    @Test
+    public void testExcludedWordIsIgnoredOnlyInItsChat() {
+        SpamFilterService service = new SpamFilterService();
+        service.addBannedWord("казино");
+        service.addBannedWord("казинорояль");
+        service.removeBannedWord(-1L, "казино");
+        Assert.assertFalse(service.isSpam(TestUpdates.createUpdate("лучшее казино", 1L, -1L)));
+        Assert.assertFalse("Похоже только на разрешённое слово", service.isSpam(TestUpdates.createUpdate("лучшее казин0", 2L, -1L)));
+        Assert.assertTrue("Другое слово общего списка в той же строке", service.isSpam(
+                TestUpdates.createUpdate("казинорояль", 3L, -1L)));
+        Assert.assertTrue(service.isSpam(TestUpdates.createUpdate("лучшее казино", 4L, -2L)));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.MessageEntity;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class DomainTrieTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testExactAndWildcardEntries() {
+        DomainTrie trie = DomainTrie.of(Arrays.asList("spam.example.com", "*.casino.io", "Bad.RU."));
+        Assert.assertTrue(trie.isBlocked("spam.example.com"));
+        Assert.assertTrue(trie.isBlocked("www.spam.example.com"));
+        Assert.assertFalse(trie.isBlocked("other.spam.example.com"));
+        Assert.assertFalse(trie.isBlocked("example.com"));
+        Assert.assertTrue(trie.isBlocked("a.b.casino.io"));
+        Assert.assertFalse(trie.isBlocked("casino.io"));
+        Assert.assertTrue(trie.isBlocked("BAD.ru"));
+        Assert.assertFalse(trie.isBlocked("notbad.ru"));
+        Assert.assertEquals(3, trie.size());
+    }
+
+    @Test
+    public void testBulkLoad() throws Exception {
+        StringBuilder list = new StringBuilder("# список\n0.0.0.0 hosts-format.net\n\n*.wild.org  # поддомены\n");
+        for (int i = 0; i < 100_000; i++) {
+            list.append("domain").append(i).append(".example").append(i % 7).append(".com\n");
+        }
+        Path file = folder.getRoot().toPath().resolve("blocklist.txt");
+        Files.write(file, list.toString().getBytes(StandardCharsets.UTF_8));
+        DomainTrie trie = DomainTrie.load(file);
+        Assert.assertEquals(100_002, trie.size());
+        Assert.assertTrue(trie.isBlocked("hosts-format.net"));
+        Assert.assertTrue(trie.isBlocked("x.wild.org"));
+        Assert.assertTrue(trie.isBlocked("domain99999.example4.com"));
+        Assert.assertFalse(trie.isBlocked("domain99999.example3.com"));
+    }
+
+    @Test
+    public void testLinksInMessageText() {
+        DomainTrie trie = DomainTrie.of(Arrays.asList("spam.example.com", "*.t.me"));
+        Assert.assertTrue(LinkExtractor.containsBlocked("Заходи: https://user@spam.example.com:8080/path?a=1", trie));
+        Assert.assertTrue(LinkExtractor.containsBlocked("Смотри spam.example.com.", trie));
+        Assert.assertTrue(LinkExtractor.containsBlocked("канал joinchat.t.me/abc", trie));
+        Assert.assertFalse(LinkExtractor.containsBlocked("Версия 1.2.3 на example.com, файл index.html", trie));
+    }
+
+    @Test
+    public void testHiddenLinkIsBlocked() {
+        SpamFilterService service = new SpamFilterService();
+        service.setBlockedDomains(DomainTrie.of(Collections.singletonList("spam.example.com")));
+        User user = new User();
+        user.setId(1L);
+        Message message = new Message();
+        message.setText("Подробнее здесь");
+        message.setFrom(user);
+        MessageEntity link = new MessageEntity("text_link", 10, 5);
+        link.setUrl("https://spam.example.com/offer");
+        message.setEntities(Collections.singletonList(link));
+        Update update = new Update();
+        update.setMessage(message);
+        Assert.assertEquals(Metrics.Rule.LINK, service.check(update));
+    }
+}
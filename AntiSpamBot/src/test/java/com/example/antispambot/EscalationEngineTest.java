@@ -0,0 +1,144 @@
+package com.example.antispambot;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class EscalationEngineTest {
+
+    private FakeTelegramBackend backend;
+    private OutboundActionQueue outbound;
+    private Metrics metrics;
+    private EscalationEngine escalation;
+
+    @Before
+    public void setUp() {
+        backend = new FakeTelegramBackend(0, 0, 0);
+        metrics = new Metrics();
+        outbound = new OutboundActionQueue(backend, 100, 1000, 1000, 1000, metrics);
+        escalation = new EscalationEngine(outbound, metrics);
+        escalation.configure(3, 5, 60, true, EscalationEngine.Sanction.BAN);
+    }
+
+    @After
+    public void tearDown() {
+        outbound.close();
+        backend.close();
+    }
+
+    @Test
+    public void testThresholdsEscalateOnce() {
+        long now = System.currentTimeMillis();
+        Assert.assertEquals(EscalationEngine.Sanction.NONE, escalation.escalate(-1L, 7L, now));
+        Assert.assertEquals(EscalationEngine.Sanction.NONE, escalation.escalate(-1L, 7L, now));
+        Assert.assertEquals(EscalationEngine.Sanction.MUTE, escalation.escalate(-1L, 7L, now));
+        // Уже лишён права писать: повторно не ограничиваем
+        Assert.assertEquals(EscalationEngine.Sanction.NONE, escalation.escalate(-1L, 7L, now));
+        Assert.assertEquals(EscalationEngine.Sanction.MUTE, escalation.activeSanction(-1L, 7L, now));
+        Assert.assertEquals(EscalationEngine.Sanction.NONE, escalation.activeSanction(-2L, 7L, now));
+        Assert.assertEquals(EscalationEngine.Sanction.BAN, escalation.escalate(-1L, 7L, now));
+        // Спам в другом чате считается заново
+        Assert.assertEquals(EscalationEngine.Sanction.NONE, escalation.escalate(-2L, 7L, now));
+        Assert.assertEquals(EscalationEngine.Sanction.NONE, escalation.activeSanction(-2L, 7L, now));
+        // В личном чате наказывать некого
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(EscalationEngine.Sanction.NONE, escalation.escalate(7L, 7L, now));
+        }
+
+        // Наказание считается применённым, когда Telegram ответил
+        await("бан применён", () -> metrics.getBans() == 1);
+        Assert.assertEquals(Long.valueOf(1), backend.getCallCounts().get("banChatMember"));
+        Assert.assertEquals(Long.valueOf(1), backend.getCallCounts().get("restrictchatmember"));
+        Assert.assertEquals(1, metrics.getMutes());
+    }
+
+    @Test
+    public void testMuteExpires() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            escalation.escalate(-1L, 7L, now);
+        }
+        long later = now + TimeUnit.MINUTES.toMillis(61);
+        Assert.assertEquals(EscalationEngine.Sanction.NONE, escalation.activeSanction(-1L, 7L, later));
+        Assert.assertEquals(EscalationEngine.Sanction.MUTE, escalation.escalate(-1L, 7L, later));
+    }
+
+    @Test
+    public void testOffencesAreForgottenAfterQuietDay() {
+        long now = System.currentTimeMillis();
+        escalation.escalate(-1L, 7L, now);
+        escalation.escalate(-1L, 7L, now);
+        long nextDay = now + TimeUnit.HOURS.toMillis(25);
+        Assert.assertEquals(EscalationEngine.Sanction.NONE, escalation.escalate(-1L, 7L, nextDay));
+        Assert.assertEquals(EscalationEngine.Sanction.NONE, escalation.escalate(-1L, 7L, nextDay));
+        Assert.assertEquals(EscalationEngine.Sanction.MUTE, escalation.escalate(-1L, 7L, nextDay));
+    }
+
+    @Test
+    public void testRaidParticipantsAreSanctionedTogether() {
+        escalation.raidDetected(-1L, 10L, new long[]{11L, 12L, 13L});
+        // Следующее сообщение рейда добавляет только нового участника
+        escalation.raidDetected(-1L, 14L, new long[]{11L, 12L, 13L});
+        await("участники рейда заблокированы", () -> metrics.getBans() == 5);
+        Assert.assertEquals(Long.valueOf(5), backend.getCallCounts().get("banChatMember"));
+        long now = System.currentTimeMillis();
+        Assert.assertEquals(EscalationEngine.Sanction.BAN, escalation.activeSanction(-1L, 12L, now));
+        Assert.assertTrue(escalation.revokesMessages(EscalationEngine.Sanction.BAN));
+    }
+
+    @Test
+    public void testRejectedSanctionIsForgotten() {
+        // Telegram отказывает: у бота нет прав администратора
+        FakeTelegramBackend rejecting = new FakeTelegramBackend(0, 0, 0) {
+            @Override
+            protected <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> sendApiMethodAsync(
+                    Method method) {
+                CompletableFuture<T> future = new CompletableFuture<>();
+                future.completeExceptionally(new TelegramApiRequestException("Bad Request: not enough rights"));
+                return future;
+            }
+        };
+        OutboundActionQueue rejectingOutbound = new OutboundActionQueue(rejecting, 100, 1000, 1000, 1000, metrics);
+        try {
+            EscalationEngine rejected = new EscalationEngine(rejectingOutbound, metrics);
+            rejected.configure(3, 0, 60, true, EscalationEngine.Sanction.BAN);
+            long now = System.currentTimeMillis();
+            rejected.escalate(-1L, 7L, now);
+            rejected.escalate(-1L, 7L, now);
+            Assert.assertEquals(EscalationEngine.Sanction.MUTE, rejected.escalate(-1L, 7L, now));
+            rejected.raidDetected(-1L, 10L, new long[]{11L});
+            await("наказания забыты", () -> rejected.activeSanction(-1L, 7L, now) == EscalationEngine.Sanction.NONE
+                    && rejected.activeSanction(-1L, 10L, now) == EscalationEngine.Sanction.NONE
+                    && rejected.activeSanction(-1L, 11L, now) == EscalationEngine.Sanction.NONE);
+            Assert.assertEquals(0, metrics.getMutes());
+            Assert.assertEquals(0, metrics.getBans());
+        } finally {
+            rejectingOutbound.close();
+            rejecting.close();
+        }
+    }
+
+    private void await(String description, BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        Assert.fail("Не дождались: " + description + ", вызовы " + backend.getCallCounts());
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class FuzzyMatcherTest {
+
+    @Test
+    public void testThresholdDependsOnTokenLength() {
+        FuzzyMatcher matcher = FuzzyMatcher.compile(Arrays.asList("casino", "spamword"));
+        // 6 символов: допускается одна правка
+        Assert.assertTrue(matcher.matches("casimo"));
+        Assert.assertFalse(matcher.matches("cazimo"));
+        // 8 символов: допускаются две правки
+        Assert.assertTrue(matcher.matches("spanwort"));
+        Assert.assertFalse(matcher.matches("spanvort1"));
+        // до 4 символов — только точное совпадение
+        Assert.assertFalse(matcher.matches("casi"));
+    }
+
+    @Test
+    public void testWithinDistance() {
+        int[] row = new int[16];
+        Assert.assertTrue(FuzzyMatcher.withinDistance("kitten", 0, 6, "sitting", 3, row));
+        Assert.assertFalse(FuzzyMatcher.withinDistance("kitten", 0, 6, "sitting", 2, row));
+        Assert.assertTrue(FuzzyMatcher.withinDistance("xxabc", 2, 5, "abd", 1, row));
+        Assert.assertTrue(FuzzyMatcher.withinDistance("", 0, 0, "ab", 2, row));
+        Assert.assertFalse(FuzzyMatcher.withinDistance("", 0, 0, "abc", 2, row));
+    }
+
+    @Test
+    public void testAgreesWithFullLevenshteinScan() {
+        Random random = new Random(7);
+        for (int round = 0; round < 100; round++) {
+            List<String> words = new ArrayList<>();
+            int count = 1 + random.nextInt(30);
+            for (int i = 0; i < count; i++) {
+                words.add(randomString(random, 1 + random.nextInt(10)));
+            }
+            FuzzyMatcher matcher = FuzzyMatcher.compile(words);
+            for (int q = 0; q < 100; q++) {
+                String token = randomString(random, random.nextInt(12));
+                int threshold = FuzzyMatcher.maxDistanceFor(token.length());
+                boolean expected = false;
+                for (String word : words) {
+                    if (levenshtein(token, word) <= threshold) {
+                        expected = true;
+                        break;
+                    }
+                }
+                Assert.assertEquals("token=" + token + " words=" + words, expected, matcher.matches(token));
+            }
+        }
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[][] dp = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            dp[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            dp[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+            }
+        }
+        return dp[a.length()][b.length()];
+    }
+
+    @Test
+    public void testExcludedWordsAreNotMatched() {
+        FuzzyMatcher matcher = FuzzyMatcher.compile(Arrays.asList("kazino", "kasino"));
+        Set<String> excluded = Collections.singleton("kazino");
+        Assert.assertTrue(matcher.matches("kasina", 0, 6, excluded));
+        Assert.assertFalse("Похоже только на исключённое слово", matcher.matches("kazinn", 0, 6, excluded));
+        Assert.assertTrue(matcher.matches("kazinn", 0, 6, Collections.<String>emptySet()));
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverValuesWithBoundedError() {
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 1000, 123_456, 987_654_321L}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long upper = LatencyHistogram.upperBound(bucket);
+            Assert.assertTrue("Значение " + value + " выше границы корзины", value <= upper);
+            Assert.assertTrue("Погрешность для " + value + " больше 12,5%", upper - value <= value / 8);
+            if (bucket > 0) {
+                Assert.assertTrue(value > LatencyHistogram.upperBound(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.quantile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        Assert.assertEquals(100, histogram.count());
+        Assert.assertEquals(5_050_000L, histogram.sumNanos());
+        long p50 = histogram.quantile(0.5);
+        long p99 = histogram.quantile(0.99);
+        Assert.assertTrue("p50=" + p50, p50 >= 50_000 && p50 <= 50_000 * 9 / 8);
+        Assert.assertTrue("p99=" + p99, p99 >= 99_000 && p99 <= 99_000 * 9 / 8);
+    }
+}
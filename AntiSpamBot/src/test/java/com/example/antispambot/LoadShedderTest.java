@@ -0,0 +1,78 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class LoadShedderTest {
+
+    @Test
+    public void testLevelRisesAndRecoversWithHysteresis() {
+        Metrics metrics = new Metrics();
+        LoadShedder shedder = new LoadShedder(metrics);
+        shedder.configure(100, 1000, 500, 5000);
+        Assert.assertEquals(LoadShedder.Level.FULL, shedder.observe(10, 0));
+        Assert.assertEquals(LoadShedder.Level.REDUCED, shedder.observe(100, 0));
+        Assert.assertEquals(LoadShedder.Level.MINIMAL, shedder.observe(10, TimeUnit.SECONDS.toNanos(6)));
+        Assert.assertEquals(2, metrics.getDegradationLevel());
+        // Ниже порога, но не ниже половины порогов: уровень сохраняется
+        Assert.assertEquals(LoadShedder.Level.MINIMAL, shedder.observe(300, 0));
+        Assert.assertEquals(LoadShedder.Level.REDUCED, shedder.observe(60, 0));
+        Assert.assertEquals(LoadShedder.Level.FULL, shedder.observe(0, 0));
+        Assert.assertEquals(0, metrics.getDegradationLevel());
+    }
+
+    @Test
+    public void testCheapChecksSurviveDegradation() {
+        SpamFilterService service = new SpamFilterService();
+        service.setFloodIntervalMillis(0);
+        LoadShedder shedder = new LoadShedder(service.getMetrics());
+        service.setLoadShedder(shedder);
+        shedder.configure(1, 0, 2, 0);
+
+        shedder.observe(1, 0);
+        Assert.assertEquals(Metrics.Rule.EXACT, service.check(TestUpdates.createUpdate("тут spamword1", 1L, 100L)));
+        Assert.assertNull("Фуззи-сравнение пропускается", service.check(TestUpdates.createUpdate("тут spamwrod1", 2L, 100L)));
+
+        shedder.observe(2, 0);
+        Assert.assertNull("Остаются только дешёвые проверки", service.check(TestUpdates.createUpdate("там spamword2", 3L, 100L)));
+        Assert.assertEquals(Metrics.Rule.REPEAT, service.check(TestUpdates.createUpdate("там spamword2", 3L, 100L)));
+        // Вердикт, запомненный при полной проверке, используется и при перегрузке
+        Assert.assertEquals(Metrics.Rule.EXACT, service.check(TestUpdates.createUpdate("тут spamword1", 4L, 100L)));
+        Assert.assertEquals(5, service.getMetrics().getDegradedChecks());
+        Assert.assertTrue(service.getStatus().contains("Перегрузка"));
+
+        shedder.observe(0, 0);
+        Assert.assertEquals(Metrics.Rule.FUZZY, service.check(TestUpdates.createUpdate("тут spamwrod1", 5L, 100L)));
+    }
+
+    @Test
+    public void testSyntheticFloodDegradesAndRecovers() throws Exception {
+        Metrics metrics = new Metrics();
+        LoadShedder shedder = new LoadShedder(metrics);
+        shedder.configure(50, 0, 200, 0);
+        Set<LoadShedder.Level> seen = ConcurrentHashMap.newKeySet();
+        UpdateDispatcher dispatcher = new UpdateDispatcher(1, update -> {
+            seen.add(shedder.level());
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, metrics);
+        dispatcher.setLoadShedder(shedder);
+        for (int i = 0; i < 500; i++) {
+            dispatcher.dispatch(TestUpdates.createUpdate("сообщение " + i, (long) i, 100L));
+        }
+        dispatcher.close();
+
+        Assert.assertEquals(0, dispatcher.getPendingCount());
+        Assert.assertTrue("Под потоком обновлений дорогие проверки отключаются", seen.contains(LoadShedder.Level.MINIMAL));
+        // Очередь разобрана — полная проверка восстановлена
+        Assert.assertEquals(LoadShedder.Level.FULL, shedder.level());
+        Assert.assertEquals(0, metrics.getDegradationLevel());
+    }
+}
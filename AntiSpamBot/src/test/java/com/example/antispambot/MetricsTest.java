@@ -0,0 +1,64 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+public class MetricsTest {
+
+    @Test
+    public void testRulesAreCountedSeparately() {
+        Metrics metrics = new Metrics();
+        SpamFilterService service = new SpamFilterService(new UserStateStore(1000, 3600), metrics);
+        service.isSpam(TestUpdates.createUpdate("обычное сообщение", 1L));
+        service.isSpam(TestUpdates.createUpdate("тут spamword1", 2L));
+        service.isSpam(TestUpdates.createUpdate("тут spamwrod1", 3L));
+        service.isSpam(TestUpdates.createUpdate("ещё одно", 1L));
+
+        Assert.assertEquals(4, metrics.getMessagesChecked());
+        Assert.assertEquals(3, metrics.getMessagesDeleted());
+        Assert.assertEquals(1, metrics.getRuleHits(Metrics.Rule.EXACT));
+        Assert.assertEquals(1, metrics.getRuleHits(Metrics.Rule.FUZZY));
+        Assert.assertEquals(1, metrics.getRuleHits(Metrics.Rule.FLOOD));
+        Assert.assertEquals(0, metrics.getRuleHits(Metrics.Rule.REPEAT));
+        Assert.assertTrue(metrics.getLatencyQuantile(Metrics.Stage.MATCH, 0.99) > 0);
+        Assert.assertTrue(service.getStatus().contains("p50 / p99"));
+    }
+
+    @Test
+    public void testPrometheusEndpoint() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.ruleHit(Metrics.Rule.FLOOD);
+        metrics.recordLatency(Metrics.Stage.TELEGRAM, 2_000_000);
+        MetricsServer server = new MetricsServer("127.0.0.1", 0, metrics);
+        server.start();
+        try {
+            URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + MetricsServer.PATH);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            Assert.assertEquals(200, connection.getResponseCode());
+            Assert.assertTrue(connection.getContentType().startsWith("text/plain"));
+            String body = read(connection.getInputStream());
+            Assert.assertTrue(body.contains("antispam_rule_hits_total{rule=\"flood\"} 1\n"));
+            Assert.assertTrue(body.contains("antispam_stage_latency_seconds_count{stage=\"telegram\"} 1\n"));
+        } finally {
+            server.close();
+        }
+    }
+
+    private static String read(InputStream input) throws Exception {
+        try (InputStream in = input) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+public class NaiveBayesClassifierTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String[] SPAM = {
+            "Заработок от 5000 в день без вложений, пиши в личку",
+            "Быстрый заработок на криптовалюте, переходи по ссылке",
+            "Без вложений и опыта, доход каждый день, пиши",
+            "Лучшие ставки и бонусы на криптовалюте, пиши в личку"
+    };
+    private static final String[] HAM = {
+            "Привет, кто идёт завтра на встречу?",
+            "Спасибо за помощь с домашним заданием",
+            "Во сколько начинается встреча завтра?",
+            "Кто-нибудь знает, где скачать задание?"
+    };
+
+    @Test
+    public void testSeparatesTrainedClasses() {
+        NaiveBayesClassifier classifier = train(new NaiveBayesClassifier(16));
+        Assert.assertTrue(classifier.isTrained(4));
+        Assert.assertTrue(classifier.spamProbability("Заработок без вложений, пиши") > 0.9);
+        Assert.assertTrue(classifier.spamProbability("Завтра встреча, кто идёт?") < 0.1);
+    }
+
+    @Test
+    public void testModelRoundTrip() throws Exception {
+        NaiveBayesClassifier classifier = train(new NaiveBayesClassifier(16));
+        Path file = folder.getRoot().toPath().resolve("model.bin");
+        classifier.save(file);
+        NaiveBayesClassifier loaded = NaiveBayesClassifier.load(file);
+        Assert.assertEquals(16, loaded.getFeatureBits());
+        Assert.assertEquals(classifier.getSpamDocuments(), loaded.getSpamDocuments());
+        Assert.assertEquals(classifier.getHamDocuments(), loaded.getHamDocuments());
+        for (String text : new String[]{"доход без вложений", "встреча завтра", "что-то совсем другое"}) {
+            Assert.assertEquals(classifier.spamProbability(text), loaded.spamProbability(text), 0.0);
+        }
+    }
+
+    @Test
+    public void testFilterUsesClassifierOnceTrained() {
+        SpamFilterService service = new SpamFilterService();
+        NaiveBayesClassifier classifier = new NaiveBayesClassifier(16);
+        service.setClassifier(classifier, 0.9, 4);
+        Assert.assertNull(service.check(TestUpdates.createUpdate("Заработок без вложений, пиши", 1L)));
+        train(classifier);
+        Assert.assertEquals(Metrics.Rule.CLASSIFIER, service.check(TestUpdates.createUpdate("Доход без вложений, пиши в личку", 2L)));
+        Assert.assertNull(service.check(TestUpdates.createUpdate("Кто идёт на встречу?", 3L)));
+        // Дообучение по подтверждённым удалениям: только правила по содержимому
+        service.spamDeleted("spamword1 тут", Metrics.Rule.EXACT);
+        service.spamDeleted("обычный текст", Metrics.Rule.FLOOD);
+        Assert.assertEquals(SPAM.length + 1, classifier.getSpamDocuments());
+    }
+
+    @Test
+    public void testClassRatioDoesNotMakeShortMessagesSpam() {
+        NaiveBayesClassifier classifier = new NaiveBayesClassifier(16);
+        for (int i = 0; i < 1000; i++) {
+            classifier.train(SPAM[i % SPAM.length], true);
+        }
+        for (String text : HAM) {
+            classifier.train(text, false);
+        }
+        Assert.assertTrue(classifier.spamProbability("ок") < 0.5);
+        Assert.assertTrue(classifier.spamProbability("Заработок без вложений, пиши") > 0.99);
+    }
+
+    @Test
+    public void testPassedMessagesBalanceLearnedSpam() {
+        SpamFilterService service = new SpamFilterService();
+        NaiveBayesClassifier classifier = new NaiveBayesClassifier(16);
+        service.setClassifier(classifier, 0.9, 1000);
+        Assert.assertNull(service.check(TestUpdates.createUpdate("Привет всем", 1L)));
+        Assert.assertEquals("Без выученного спама обычные сообщения не берутся", 0, classifier.getHamDocuments());
+
+        service.spamDeleted("spamword1 тут", Metrics.Rule.EXACT);
+        service.spamDeleted("spamword1 там", Metrics.Rule.EXACT);
+        service.spamDeleted("купи сейчас", Metrics.Rule.CLASSIFIER);
+        for (long userId = 2; userId <= 5; userId++) {
+            Assert.assertNull(service.check(TestUpdates.createUpdate("Обычное сообщение " + userId, userId)));
+        }
+        Assert.assertEquals(2, classifier.getSpamDocuments());
+        Assert.assertEquals(2, classifier.getHamDocuments());
+    }
+
+    private static NaiveBayesClassifier train(NaiveBayesClassifier classifier) {
+        for (String text : SPAM) {
+            classifier.train(text, true);
+        }
+        for (String text : HAM) {
+            classifier.train(text, false);
+        }
+        return classifier;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.antispambot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OutboundActionQueueTest {
+
+    @Test
+    public void testRetryAfterIsHonoured() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        FakeSender sender = new FakeSender() {
+            @Override
+            protected <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> sendApiMethodAsync(Method method) {
+                CompletableFuture<T> future = new CompletableFuture<>();
+                if (calls.incrementAndGet() == 1) {
+                    future.completeExceptionally(tooManyRequests(1));
+                } else {
+                    future.complete(null);
+                }
+                return future;
+            }
+        };
+        OutboundActionQueue queue = new OutboundActionQueue(sender, 100, 30, 20, 1);
+        long start = System.nanoTime();
+        queue.submit(-100L, delete(-100L, 1)).get(10, TimeUnit.SECONDS);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assert.assertEquals(2, calls.get());
+        Assert.assertTrue("Повтор должен выждать retry_after", elapsedMillis >= 900);
+        Assert.assertEquals(0, queue.getPendingCount());
+        queue.close();
+    }
+
+    @Test
+    public void testSubmitBlocksWhenQueueIsFull() throws Exception {
+        List<CompletableFuture<?>> inFlight = new CopyOnWriteArrayList<>();
+        FakeSender sender = new FakeSender() {
+            @Override
+            protected <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> sendApiMethodAsync(Method method) {
+                CompletableFuture<T> future = new CompletableFuture<>();
+                inFlight.add(future);
+                return future;
+            }
+        };
+        OutboundActionQueue queue = new OutboundActionQueue(sender, 2, 30, 20, 1);
+        queue.submit(-100L, delete(-100L, 1));
+        queue.submit(-100L, delete(-100L, 2));
+
+        CountDownLatch submitted = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            queue.submit(-100L, delete(-100L, 3));
+            submitted.countDown();
+        });
+        producer.start();
+        Assert.assertFalse("Третье действие должно ждать места в очереди", submitted.await(300, TimeUnit.MILLISECONDS));
+
+        while (inFlight.isEmpty()) {
+            Thread.sleep(10);
+        }
+        // Результат очереди не нужен, поэтому вызов завершается без значения и без приведения типов
+        inFlight.get(0).complete(null);
+        Assert.assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        producer.join();
+    }
+
+    @Test
+    public void testQueuesShareScheduler() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        FakeSender sender = new FakeSender() {
+            @Override
+            protected <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> sendApiMethodAsync(Method method) {
+                calls.incrementAndGet();
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+        ScheduledExecutorService scheduler = OutboundActionQueue.newScheduler();
+        try {
+            OutboundActionQueue first = new OutboundActionQueue(sender, 100, 30, 20, 1, new Metrics(), scheduler);
+            OutboundActionQueue second = new OutboundActionQueue(sender, 100, 30, 20, 1, new Metrics(), scheduler);
+            first.submit(-100L, delete(-100L, 1)).get(10, TimeUnit.SECONDS);
+            first.close();
+            // Закрытие одной очереди не останавливает общий планировщик
+            second.submit(-100L, delete(-100L, 1)).get(10, TimeUnit.SECONDS);
+            second.close();
+            Assert.assertEquals(2, calls.get());
+            Assert.assertFalse(scheduler.isShutdown());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static DeleteMessage delete(long chatId, int messageId) {
+        DeleteMessage deleteMessage = new DeleteMessage();
+        deleteMessage.setChatId(String.valueOf(chatId));
+        deleteMessage.setMessageId(messageId);
+        return deleteMessage;
+    }
+
+    private static TelegramApiRequestException tooManyRequests(int retryAfter) {
+        try {
+            ApiResponse<?> response = new ObjectMapper().readValue(
+                    "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests\","
+                            + "\"parameters\":{\"retry_after\":" + retryAfter + "}}", ApiResponse.class);
+            return new TelegramApiRequestException("Too Many Requests", response);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private abstract static class FakeSender extends DefaultAbsSender {
+        FakeSender() {
+            super(new DefaultBotOptions(), "test-token");
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PersistentStateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStateSurvivesRestart() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        UserStateStore users = new UserStateStore(1000, 3600);
+        SpamFilterService service = new SpamFilterService(users);
+        PersistentState shared = PersistentState.openShared(dir, service.getEngine(), 50, 1 << 20);
+        PersistentState state = PersistentState.openUsers(dir.resolve("bot"), service, users, 50, 1 << 20);
+        service.addBannedWord("казино");
+        service.removeBannedWord("spamword2");
+        service.addBannedWord(-100L, "реклама");
+        service.removeBannedWord(-100L, "spamword1");
+        service.isSpam(TestUpdates.createUpdate("лучшее казино", 42L));
+        shared.compact();
+        state.compact();
+        // Изменения после снимка попадают только в журнал
+        service.addBannedWord("ставки");
+        service.addBannedWord(-200L, "подписка");
+        service.isSpam(TestUpdates.createUpdate("ставки тут", 43L));
+        state.close();
+        shared.close();
+
+        UserStateStore restoredUsers = new UserStateStore(1000, 3600);
+        SpamFilterService restored = new SpamFilterService(restoredUsers);
+        PersistentState reopenedShared = PersistentState.openShared(dir, restored.getEngine(), 50, 1 << 20);
+        PersistentState reopened = PersistentState.openUsers(dir.resolve("bot"), restored, restoredUsers, 50, 1 << 20);
+        try {
+            Assert.assertTrue(restored.getBannedWords().contains(SpamFilterService.normalizeWord("казино")));
+            Assert.assertTrue(restored.getBannedWords().contains(SpamFilterService.normalizeWord("ставки")));
+            Assert.assertTrue(restored.getBannedWords().contains(SpamFilterService.normalizeWord("spamword1")));
+            Assert.assertFalse(restored.getBannedWords().contains(SpamFilterService.normalizeWord("spamword2")));
+            Assert.assertTrue(restored.getBannedWords(-100L).contains(SpamFilterService.normalizeWord("реклама")));
+            Assert.assertFalse(restored.getBannedWords(-100L).contains(SpamFilterService.normalizeWord("spamword1")));
+            Assert.assertTrue(restored.getBannedWords(-100L).contains(SpamFilterService.normalizeWord("ставки")));
+            Assert.assertTrue(restored.getBannedWords(-200L).contains(SpamFilterService.normalizeWord("подписка")));
+            Assert.assertEquals(1, restoredUsers.getSpamCount(42L));
+            Assert.assertEquals(1, restoredUsers.getSpamCount(43L));
+        } finally {
+            reopened.close();
+            reopenedShared.close();
+        }
+    }
+
+    @Test
+    public void testJournalIsReplayedAfterCrash() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        UserStateStore users = new UserStateStore(1000, 3600);
+        SpamFilterService service = new SpamFilterService(users);
+        PersistentState.openShared(dir, service.getEngine(), 60_000, 1 << 20);
+        service.addBannedWord("крипта");
+        // Без close(): новый экземпляр должен восстановиться по журналу
+
+        UserStateStore restoredUsers = new UserStateStore(1000, 3600);
+        SpamFilterService restored = new SpamFilterService(restoredUsers);
+        PersistentState reopened = PersistentState.openShared(dir, restored.getEngine(), 60_000, 1 << 20);
+        try {
+            Assert.assertTrue(restored.getBannedWords().contains(SpamFilterService.normalizeWord("крипта")));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testSharedListIsKeptOnceForSeveralBots() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        SpamFilterEngine engine = new SpamFilterEngine();
+        PersistentState shared = PersistentState.openShared(dir, engine, 50, 1 << 20);
+        UserStateStore firstUsers = new UserStateStore(1000, 3600);
+        SpamFilterService first = newService(engine, firstUsers);
+        PersistentState firstState = PersistentState.openUsers(dir.resolve("first"), first, firstUsers, 50, 1 << 20);
+        UserStateStore secondUsers = new UserStateStore(1000, 3600);
+        SpamFilterService second = newService(engine, secondUsers);
+        PersistentState secondState = PersistentState.openUsers(dir.resolve("second"), second, secondUsers, 50, 1 << 20);
+        first.addBannedWord("казино");
+        // Слово, удалённое через другого бота, удаляется и из общего сохранённого списка
+        second.removeBannedWord("spamword1");
+        second.isSpam(TestUpdates.createUpdate("лучшее казино", 42L));
+        firstState.close();
+        secondState.close();
+        shared.close();
+
+        SpamFilterEngine restoredEngine = new SpamFilterEngine();
+        PersistentState reopenedShared = PersistentState.openShared(dir, restoredEngine, 50, 1 << 20);
+        UserStateStore restoredFirstUsers = new UserStateStore(1000, 3600);
+        PersistentState reopenedFirst = PersistentState.openUsers(dir.resolve("first"),
+                newService(restoredEngine, restoredFirstUsers), restoredFirstUsers, 50, 1 << 20);
+        UserStateStore restoredSecondUsers = new UserStateStore(1000, 3600);
+        PersistentState reopenedSecond = PersistentState.openUsers(dir.resolve("second"),
+                newService(restoredEngine, restoredSecondUsers), restoredSecondUsers, 50, 1 << 20);
+        try {
+            Assert.assertTrue(restoredEngine.getBannedWords().contains(SpamFilterService.normalizeWord("казино")));
+            Assert.assertFalse(restoredEngine.getBannedWords().contains(SpamFilterService.normalizeWord("spamword1")));
+            // Счётчики спама у каждого бота свои
+            Assert.assertEquals(0, restoredFirstUsers.getSpamCount(42L));
+            Assert.assertEquals(1, restoredSecondUsers.getSpamCount(42L));
+        } finally {
+            reopenedFirst.close();
+            reopenedSecond.close();
+            reopenedShared.close();
+        }
+    }
+
+    @Test
+    public void testTornJournalTailIsIgnored() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("journal-1.log");
+        StateJournal journal = StateJournal.create(file, 1);
+        journal.bannedWordAdded("one");
+        journal.spamCountChanged(7L, 3, 1000L);
+        journal.bannedWordAdded("two");
+        journal.close();
+        // Обрезаем последнюю запись посередине, как при аварийной остановке
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2}), channel.size());
+        }
+
+        List<String> words = new ArrayList<>();
+        long[] counts = new long[1];
+        long records = StateJournal.replay(file, new StateChangeListener() {
+            @Override
+            public void bannedWordAdded(String word) {
+                words.add(word);
+            }
+
+            @Override
+            public void bannedWordRemoved(String word) {
+                words.remove(word);
+            }
+
+            @Override
+            public void chatWordChanged(long chatId, String word, ChatWordState state) {
+            }
+
+            @Override
+            public void spamCountChanged(long userId, int spamCount, long time) {
+                counts[0] = spamCount;
+            }
+        });
+        Assert.assertEquals(2, records);
+        Assert.assertEquals(1, words.size());
+        Assert.assertEquals(3, counts[0]);
+    }
+
+    @Test
+    public void testAppendNeverWritesToFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("journal-1.log");
+        StateJournal journal = StateJournal.create(file, 1);
+        long headerSize = Files.size(file);
+        // Больше 64 КБ записей без сброса: буфер растёт, файл не трогается
+        for (int i = 1; i <= 5000; i++) {
+            journal.spamCountChanged(i, i, 1000L);
+        }
+        Assert.assertEquals(headerSize, Files.size(file));
+        journal.close();
+
+        long[] last = new long[1];
+        long records = StateJournal.replay(file, new StateChangeListener() {
+            @Override
+            public void bannedWordAdded(String word) {
+            }
+
+            @Override
+            public void bannedWordRemoved(String word) {
+            }
+
+            @Override
+            public void chatWordChanged(long chatId, String word, ChatWordState state) {
+            }
+
+            @Override
+            public void spamCountChanged(long userId, int spamCount, long time) {
+                last[0] = userId;
+            }
+        });
+        Assert.assertEquals(5000, records);
+        Assert.assertEquals(5000, last[0]);
+    }
+
+    private static SpamFilterService newService(SpamFilterEngine engine, UserStateStore users) {
+        return new SpamFilterService(engine, users, new Metrics(),
+                new RaidDetector(0, 600, 16, RaidDetector.DEFAULT_MAX_DISTANCE, 10));
+    }
+}
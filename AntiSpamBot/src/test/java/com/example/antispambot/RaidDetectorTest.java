@@ -0,0 +1,88 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RaidDetectorTest {
+
+    private static final String AD = "Заработок от 5000 в день без вложений, пишите в личку, подробности по ссылке";
+
+    @Test
+    public void testVariedCopiesFromDistinctUsersAreFlagged() {
+        RaidDetector detector = new RaidDetector(5, 600, 4096, RaidDetector.DEFAULT_MAX_DISTANCE, 100);
+        long now = 1_000_000L;
+        for (int user = 1; user <= 4; user++) {
+            Assert.assertFalse(detector.check(-1L, user, normalize(vary(AD, user)), now + user));
+        }
+        Assert.assertTrue(detector.check(-1L, 5, normalize(vary(AD, 5)), now + 5));
+        // В другом чате рейда нет
+        Assert.assertFalse(detector.check(-2L, 6, normalize(vary(AD, 6)), now + 6));
+    }
+
+    @Test
+    public void testRaidParticipantsAreReported() {
+        RaidDetector detector = new RaidDetector(3, 600, 4096, RaidDetector.DEFAULT_MAX_DISTANCE, 100);
+        long now = 1_000_000L;
+        Assert.assertNull(detector.checkParticipants(-1L, 1L, normalize(AD), now));
+        Assert.assertNull(detector.checkParticipants(-1L, 2L, normalize(AD), now + 1));
+        long[] participants = detector.checkParticipants(-1L, 3L, normalize(AD), now + 2);
+        Assert.assertNotNull(participants);
+        Arrays.sort(participants);
+        Assert.assertArrayEquals(new long[]{1L, 2L}, participants);
+    }
+
+    @Test
+    public void testSameUserAndUnrelatedMessagesAreNotCounted() {
+        RaidDetector detector = new RaidDetector(3, 600, 4096, RaidDetector.DEFAULT_MAX_DISTANCE, 100);
+        long now = 1_000_000L;
+        for (int i = 0; i < 10; i++) {
+            Assert.assertFalse(detector.check(-1L, 1L, normalize(vary(AD, i)), now + i));
+        }
+        Random random = new Random(7);
+        for (int user = 2; user < 300; user++) {
+            Assert.assertFalse(detector.check(-1L, user, normalize(randomText(random)), now + 100 + user));
+        }
+    }
+
+    @Test
+    public void testOldMessagesLeaveTheWindow() {
+        RaidDetector detector = new RaidDetector(3, 60, 4096, RaidDetector.DEFAULT_MAX_DISTANCE, 100);
+        Assert.assertFalse(detector.check(-1L, 1L, normalize(AD), 1_000_000L));
+        // Первое сообщение уже вне окна: пользователей с похожими сообщениями пока двое
+        Assert.assertFalse(detector.check(-1L, 2L, normalize(AD), 1_000_000L + 61_000));
+        Assert.assertFalse(detector.check(-1L, 3L, normalize(AD), 1_000_000L + 62_000));
+        Assert.assertTrue(detector.check(-1L, 4L, normalize(AD), 1_000_000L + 63_000));
+    }
+
+    @Test
+    public void testSimHashIsCloseForSmallEdits() {
+        long a = RaidDetector.simHash(normalize(AD));
+        long b = RaidDetector.simHash(normalize(AD.replace("5000", "6000")));
+        long c = RaidDetector.simHash(normalize("Совсем другое сообщение о погоде и планах на выходные"));
+        Assert.assertTrue(Long.bitCount(a ^ b) <= RaidDetector.DEFAULT_MAX_DISTANCE);
+        Assert.assertTrue(Long.bitCount(a ^ c) > 2 * RaidDetector.DEFAULT_MAX_DISTANCE);
+    }
+
+    // Небольшие вариации: другое число, эмодзи, регистр
+    private static String vary(String text, int seed) {
+        return (seed % 2 == 0 ? text.toUpperCase() : text).replace("5000", String.valueOf(5000 + seed)) + " 🔥";
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            sb.append((char) ('а' + random.nextInt(32)));
+            if (random.nextInt(6) == 0) {
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String normalize(String text) {
+        return TextNormalizer.normalize(text).toString();
+    }
+}
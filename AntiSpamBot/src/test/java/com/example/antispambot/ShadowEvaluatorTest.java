@@ -0,0 +1,91 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class ShadowEvaluatorTest {
+
+    @Test
+    public void testHitsAndOverlapAreCountedPerWord() {
+        try (ShadowEvaluator shadow = new ShadowEvaluator(Arrays.asList("Казино", "ставки", "лотерея"), 0)) {
+            shadow.evaluate("Лучшее казино и ставки", true);
+            shadow.evaluate("Новое казино рядом", false);
+            shadow.evaluate("Обычное сообщение", false);
+
+            Assert.assertEquals(3, shadow.getEvaluated());
+            Assert.assertEquals(2, shadow.getHits("казино"));
+            Assert.assertEquals(1, shadow.getHits("ставки"));
+            Assert.assertEquals(0, shadow.getHits("лотерея"));
+            Assert.assertEquals(-1, shadow.getHits("реклама"));
+
+            String report = shadow.report(10);
+            Assert.assertTrue(report, report.contains("Сработали оба списка: 1, только теневой: 1, только действующий: 0"));
+            Assert.assertTrue(report, report.contains("Самые дорогие"));
+            Assert.assertTrue(report, report.contains("казино: "));
+            Assert.assertTrue(report, report.contains("Ни разу не сработали: 1 — лотерея"));
+        }
+    }
+
+    @Test
+    public void testSimilarWordIsCounted() {
+        try (ShadowEvaluator shadow = new ShadowEvaluator(Arrays.asList("казино"), 0)) {
+            shadow.evaluate("Играйте в казин0 онлайн", false);
+            Assert.assertEquals(1, shadow.getHits("казино"));
+        }
+    }
+
+    @Test
+    public void testSampledMessagesAreEvaluatedInBackground() throws InterruptedException {
+        try (ShadowEvaluator shadow = new ShadowEvaluator(Arrays.asList("казино"), 1.0)) {
+            BannedWords live = liveList("казино");
+            for (int i = 0; i < 10; i++) {
+                shadow.offer("казино " + i, live, null);
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (shadow.getEvaluated() < 10 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(10, shadow.getEvaluated());
+            Assert.assertEquals(10, shadow.getHits("казино"));
+            // Вердикт действующего списка считается в потоке теневой проверки по переданному снимку
+            String report = shadow.report(10);
+            Assert.assertTrue(report, report.contains("Сработали оба списка: 10, только теневой: 0"));
+        }
+    }
+
+    @Test
+    public void testCostIsCountedInSharedIndex() {
+        try (ShadowEvaluator shadow = new ShadowEvaluator(Arrays.asList("казино", "казина", "лотерея"), 0)) {
+            for (int i = 0; i < 5; i++) {
+                shadow.evaluate("Лучшее казино", false);
+            }
+            // Слова, похожие на слова потока, проверяются в общем индексе, остальные не стоят ничего
+            Assert.assertTrue(shadow.getComparisons("казино") > 0);
+            Assert.assertTrue(shadow.getComparisons("казина") > 0);
+            Assert.assertEquals(0, shadow.getComparisons("лотерея"));
+            Assert.assertEquals(5, shadow.getHits("казина"));
+            Assert.assertEquals(-1, shadow.getComparisons("реклама"));
+
+            String report = shadow.report(1);
+            Assert.assertTrue(report, report.contains("сравнений расстояния на 1000 сообщений"));
+            Assert.assertFalse(report, report.contains("лотерея: "));
+        }
+    }
+
+    @Test
+    public void testNothingIsSampledAtZeroRate() {
+        try (ShadowEvaluator shadow = new ShadowEvaluator(Arrays.asList("казино"), 0)) {
+            shadow.offer("казино", liveList("казино"), null);
+            Assert.assertEquals(0, shadow.getEvaluated());
+            Assert.assertTrue(shadow.report(10).contains("проверено сообщений 0"));
+        }
+    }
+
+    private static BannedWords liveList(String word) {
+        return BannedWords.of(new HashSet<>(Collections.singleton(SpamFilterService.normalizeWord(word))));
+    }
+}
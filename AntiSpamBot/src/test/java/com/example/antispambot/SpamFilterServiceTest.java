@@ -5,6 +5,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.telegram.telegrambots.meta.api.objects.*;
 
+import java.util.Collections;
+
 public class SpamFilterServiceTest {
 
     private SpamFilterService spamFilterService;
@@ -39,6 +41,80 @@ public class SpamFilterServiceTest {
         Assert.assertTrue("Второе сообщение должно определяться как спам из-за быстроты отправки", isSpam2);
     }
 
+    @Test
+    public void testFloodIntervalIsConfigurable() {
+        spamFilterService.setFloodIntervalMillis(0);
+        Assert.assertFalse(spamFilterService.isSpam(createUpdate("Первое сообщение", 5L)));
+        Assert.assertFalse("Без интервала частые сообщения не флуд",
+                spamFilterService.isSpam(createUpdate("Второе сообщение", 5L)));
+    }
+
+    @Test
+    public void testVerdictCacheFollowsBannedWords() {
+        Assert.assertFalse(spamFilterService.isSpam(createUpdate("лучшее казино", 6L)));
+        Assert.assertFalse(spamFilterService.isSpam(createUpdate("Лучшее  КАЗИНО", 7L)));
+        Assert.assertEquals(1, spamFilterService.getMetrics().getVerdictCacheHits());
+
+        // После изменения списка запомненный вердикт не используется
+        spamFilterService.addBannedWord("казино");
+        Assert.assertTrue(spamFilterService.isSpam(createUpdate("лучшее казино", 8L)));
+        Assert.assertTrue(spamFilterService.isSpam(createUpdate("ЛУЧШЕЕ казино", 9L)));
+        Assert.assertEquals(2, spamFilterService.getMetrics().getVerdictCacheHits());
+        Assert.assertEquals(2, spamFilterService.getMetrics().getRuleHits(Metrics.Rule.EXACT));
+    }
+
+    @Test
+    public void testVerdictCacheSeparatesTokens() {
+        Assert.assertNull(spamFilterService.check(createUpdate("spam word1", 10L)));
+        Assert.assertEquals("Слитное написание не получает вердикт раздельного",
+                Metrics.Rule.EXACT, spamFilterService.check(createUpdate("spamword1", 11L)));
+        Assert.assertEquals(0, spamFilterService.getMetrics().getVerdictCacheHits());
+    }
+
+    @Test
+    public void testVerdictCacheSeparatesTokensInReverseOrder() {
+        Assert.assertEquals(Metrics.Rule.EXACT, spamFilterService.check(createUpdate("spamword1", 10L)));
+        Assert.assertNull("Раздельное написание не получает вердикт слитного",
+                spamFilterService.check(createUpdate("spam word1", 11L)));
+        Assert.assertEquals(0, spamFilterService.getMetrics().getVerdictCacheHits());
+    }
+
+    @Test
+    public void testServicesShareEngineButNotUserState() {
+        SpamFilterEngine engine = new SpamFilterEngine();
+        SpamFilterService first = new SpamFilterService(engine, new UserStateStore(1000, 3600), new Metrics(),
+                new RaidDetector(0, 600, 16, RaidDetector.DEFAULT_MAX_DISTANCE, 10));
+        SpamFilterService second = new SpamFilterService(engine, new UserStateStore(1000, 3600), new Metrics(),
+                new RaidDetector(0, 600, 16, RaidDetector.DEFAULT_MAX_DISTANCE, 10));
+        Assert.assertTrue(first.addBannedWord("казино"));
+        // Слово, добавленное через одного бота, сразу действует и у другого
+        Assert.assertTrue(second.getBannedWords().contains(SpamFilterService.normalizeWord("казино")));
+        Assert.assertEquals(Metrics.Rule.EXACT, second.check(createUpdate("Лучшее казино", 6L)));
+
+        Assert.assertEquals(1, second.getSpamCount(6L));
+        Assert.assertEquals(0, first.getSpamCount(6L));
+        Assert.assertEquals(0, first.getMetrics().getMessagesChecked());
+        // Частота сообщений считается отдельно для каждого бота
+        Assert.assertNull(first.check(createUpdate("Привет", 6L)));
+    }
+
+    @Test
+    public void testShadowSeesLiveWordsBehindBlockedLink() throws InterruptedException {
+        spamFilterService.setBlockedDomains(DomainTrie.of(Collections.singleton("spam.example")));
+        spamFilterService.addBannedWord("казино");
+        try (ShadowEvaluator shadow = new ShadowEvaluator(Collections.singleton("казино"), 1.0)) {
+            spamFilterService.getEngine().setShadow(shadow);
+            // Сообщение удаляется по ссылке до проверки слов, но действующий список на нём тоже сработал бы
+            Assert.assertTrue(spamFilterService.isSpam(createUpdate("казино тут https://spam.example/x", 12L)));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (shadow.getEvaluated() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            String report = shadow.report(10);
+            Assert.assertTrue(report, report.contains("Сработали оба списка: 1, только теневой: 0"));
+        }
+    }
+
     private Update createUpdate(String text, Long userId) {
         Update update = new Update();
 
@@ -0,0 +1,66 @@
+package com.example.antispambot;
+
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+/**
+ * Входящие сообщения для тестов.
+ */
+final class TestUpdates {
+
+    private TestUpdates() {
+    }
+
+    /**
+     * Сообщение пользователя без чата: для проверок, которые от чата не зависят.
+     */
+    static Update createUpdate(String text, long userId) {
+        Message message = new Message();
+        message.setText(text);
+        message.setFrom(user(userId));
+        return update(message);
+    }
+
+    /**
+     * Сообщение пользователя в чате.
+     */
+    static Update createUpdate(String text, long userId, long chatId) {
+        Message message = new Message();
+        message.setMessageId(1);
+        message.setText(text);
+        message.setChat(chat(chatId));
+        message.setFrom(user(userId));
+        return update(message);
+    }
+
+    /**
+     * Сообщение без текста и автора: для проверок порядка обработки внутри чата.
+     */
+    static Update createUpdate(long chatId, int messageId) {
+        Message message = new Message();
+        message.setMessageId(messageId);
+        message.setChat(chat(chatId));
+        return update(message);
+    }
+
+    private static User user(long userId) {
+        User user = new User();
+        user.setId(userId);
+        user.setUserName("testUser" + userId);
+        return user;
+    }
+
+    private static Chat chat(long chatId) {
+        Chat chat = new Chat();
+        chat.setId(chatId);
+        return chat;
+    }
+
+    private static Update update(Message message) {
+        Update update = new Update();
+        update.setMessage(message);
+        return update;
+    }
+}
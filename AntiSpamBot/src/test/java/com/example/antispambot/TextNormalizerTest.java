@@ -0,0 +1,65 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TextNormalizerTest {
+
+    @Test
+    public void testLatinSubstitutions() {
+        Assert.assertEquals("spamwordl", TextNormalizer.normalizeWord("SpamWord1"));
+        Assert.assertEquals("casino", TextNormalizer.normalizeWord("C@S!N0"));
+        Assert.assertEquals("cafe", TextNormalizer.normalizeWord("Café"));
+    }
+
+    @Test
+    public void testCyrillicHomoglyphsFoldToLatin() {
+        // "саsinо" набрано вперемешку кириллицей и латиницей
+        Assert.assertEquals("casino", TextNormalizer.normalizeWord("саsinо"));
+        Assert.assertEquals(TextNormalizer.normalizeWord("КАЗИНО"), TextNormalizer.normalizeWord("казино"));
+    }
+
+    @Test
+    public void testRussianMessagesAreNotEmpty() {
+        String first = TextNormalizer.normalize("Привет, как дела?").toString();
+        String second = TextNormalizer.normalize("Где встречаемся завтра?").toString();
+        Assert.assertFalse(first.isEmpty());
+        Assert.assertNotEquals(first, second);
+    }
+
+    @Test
+    public void testTokensAndFullTextInOnePass() {
+        NormalizedText text = TextNormalizer.normalize("  Buy NOW!  ,,,  sp​am\tok ");
+        Assert.assertEquals("buynowspamok", text.toString());
+        Assert.assertEquals(4, text.tokenCount());
+        Assert.assertEquals("buy", text.subSequence(text.tokenStart(0), text.tokenEnd(0)));
+        Assert.assertEquals("now", text.subSequence(text.tokenStart(1), text.tokenEnd(1)));
+        Assert.assertEquals("spam", text.subSequence(text.tokenStart(2), text.tokenEnd(2)));
+        Assert.assertEquals("ok", text.subSequence(text.tokenStart(3), text.tokenEnd(3)));
+    }
+
+    @Test
+    public void testExclamationFoldsOnlyInsideWords() {
+        Assert.assertEquals("casino", TextNormalizer.normalizeWord("!!C@S!N0!!"));
+        Assert.assertEquals("kupi", TextNormalizer.normalizeWord("kupi!!!"));
+        NormalizedText text = TextNormalizer.normalize("Wow! c!!alis ! !go");
+        Assert.assertEquals("wowciialisgo", text.toString());
+        Assert.assertEquals(3, text.tokenCount());
+        Assert.assertEquals("wow", text.subSequence(text.tokenStart(0), text.tokenEnd(0)));
+        Assert.assertEquals("ciialis", text.subSequence(text.tokenStart(1), text.tokenEnd(1)));
+        Assert.assertEquals("go", text.subSequence(text.tokenStart(2), text.tokenEnd(2)));
+    }
+
+    @Test
+    public void testFullTextMatchesNormalizedWord() {
+        String message = "Это сообщение содержит spamword1";
+        Assert.assertEquals(TextNormalizer.normalizeWord(message), TextNormalizer.normalize(message).toString());
+    }
+
+    @Test
+    public void testContentHashKeepsTokenBoundaries() {
+        long split = TextNormalizer.normalize("spam word1").contentHash();
+        Assert.assertNotEquals(split, TextNormalizer.normalize("spamword1").contentHash());
+        Assert.assertEquals(split, TextNormalizer.normalize("  SPAM,   word1.").contentHash());
+    }
+}
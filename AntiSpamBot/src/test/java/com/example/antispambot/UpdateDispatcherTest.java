@@ -0,0 +1,46 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class UpdateDispatcherTest {
+
+    @Test
+    public void testOrderIsPreservedWithinChat() {
+        Map<Long, List<Integer>> seen = new ConcurrentHashMap<>();
+        UpdateDispatcher dispatcher = new UpdateDispatcher(4, update -> {
+            long chatId = update.getMessage().getChatId();
+            seen.computeIfAbsent(chatId, id -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(update.getMessage().getMessageId());
+        });
+        for (int messageId = 0; messageId < 200; messageId++) {
+            for (long chatId = 1; chatId <= 10; chatId++) {
+                dispatcher.dispatch(TestUpdates.createUpdate(chatId, messageId));
+            }
+        }
+        dispatcher.close();
+
+        Assert.assertEquals(10, seen.size());
+        for (List<Integer> ids : seen.values()) {
+            Assert.assertEquals(200, ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                Assert.assertEquals(Integer.valueOf(i), ids.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testPartitionIsStable() {
+        for (long chatId = -1000; chatId < 1000; chatId++) {
+            int partition = UpdateDispatcher.partition(chatId, 8);
+            Assert.assertTrue(partition >= 0 && partition < 8);
+            Assert.assertEquals(partition, UpdateDispatcher.partition(chatId, 8));
+        }
+    }
+}
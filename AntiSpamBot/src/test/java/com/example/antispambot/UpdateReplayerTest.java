@@ -0,0 +1,109 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+public class UpdateReplayerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplaysGzippedUpdatesThroughBot() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("updates.jsonl.gz");
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(file));
+             Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            for (int i = 1; i <= 300; i++) {
+                String text = i % 3 == 0 ? "купи spamword1 сейчас" : "привет " + i;
+                writer.write("{\"update_id\":" + i + ",\"message\":{\"message_id\":" + i + ",\"date\":0,"
+                        + "\"chat\":{\"id\":-" + (100 + i % 10) + ",\"type\":\"supergroup\"},"
+                        + "\"from\":{\"id\":" + i + ",\"is_bot\":false,\"first_name\":\"u\"},"
+                        + "\"text\":\"" + text + "\"}}\n");
+            }
+            writer.write("не JSON\n");
+        }
+
+        try (FakeTelegramBackend backend = new FakeTelegramBackend(1, 0.1, 0)) {
+            AntiSpamBot bot = new AntiSpamBot(backend);
+            UpdateReplayer.Report report;
+            try {
+                report = UpdateReplayer.replay(file, 0, bot, backend);
+            } finally {
+                bot.onClosing();
+            }
+            Assert.assertEquals(300, report.dispatched);
+            Assert.assertEquals(300, report.processed);
+            Assert.assertEquals(1, report.skipped);
+            Assert.assertEquals(100, report.deleted);
+            Assert.assertTrue(report.updatesPerSecond() > 0);
+            // После остановки бота очередь исходящих сброшена: каждое удаление дошло, 429 повторены
+            Assert.assertEquals(100 + backend.getTooManyRequestsCount(),
+                    (long) backend.getCallCounts().get("deleteMessage"));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testMessagesOfSanctionedUserAreCountedAsProcessed() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("sanctioned.jsonl");
+        StringBuilder updates = new StringBuilder();
+        for (int i = 1; i <= 40; i++) {
+            // Пользователь 1 спамит в начале и в конце прогона, между ними — обычные сообщения других
+            boolean spammer = i <= 5 || i > 35;
+            updates.append("{\"update_id\":").append(i).append(",\"message\":{\"message_id\":").append(i)
+                    .append(",\"date\":0,\"chat\":{\"id\":-100,\"type\":\"supergroup\"},")
+                    .append("\"from\":{\"id\":").append(spammer ? 1 : 100 + i)
+                    .append(",\"is_bot\":false,\"first_name\":\"u\"},")
+                    .append("\"text\":\"").append(spammer ? "купи spamword1 " + i : "привет " + i).append("\"}}\n");
+        }
+        Files.write(file, updates.toString().getBytes(StandardCharsets.UTF_8));
+
+        try (FakeTelegramBackend backend = new FakeTelegramBackend(0, 0, 0)) {
+            AntiSpamBot bot = new AntiSpamBot(backend);
+            UpdateReplayer.Report report;
+            try {
+                report = UpdateReplayer.replay(file, 500, bot, backend);
+            } finally {
+                bot.onClosing();
+            }
+            Assert.assertTrue("Пользователь наказан", backend.getCallCounts().containsKey("restrictchatmember"));
+            Assert.assertTrue("Поздние сообщения отброшены при приёме", bot.getMetrics().getMessagesDropped() > 0);
+            Assert.assertEquals(40, report.dispatched);
+            Assert.assertEquals(40, report.processed);
+        }
+    }
+
+    @Test
+    public void testReplayDoesNotWriteWorkingState() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("updates.jsonl");
+        Files.write(file, ("{\"update_id\":1,\"message\":{\"message_id\":1,\"date\":0,"
+                + "\"chat\":{\"id\":-100,\"type\":\"supergroup\"},"
+                + "\"from\":{\"id\":1,\"is_bot\":false,\"first_name\":\"u\"},"
+                + "\"text\":\"купи spamword1\"}}\n").getBytes(StandardCharsets.UTF_8));
+        Path state = folder.newFolder("state").toPath();
+        System.setProperty("persistence.dir", state.toString());
+        try (FakeTelegramBackend backend = new FakeTelegramBackend(0, 0, 0)) {
+            AntiSpamBot bot = new AntiSpamBot(backend);
+            try {
+                Assert.assertEquals(1, UpdateReplayer.replay(file, 0, bot, backend).deleted);
+            } finally {
+                bot.onClosing();
+            }
+        } finally {
+            System.clearProperty("persistence.dir");
+        }
+        try (Stream<Path> files = Files.list(state)) {
+            Assert.assertEquals("Прогон не пишет в каталог состояния", 0, files.count());
+        }
+    }
+}
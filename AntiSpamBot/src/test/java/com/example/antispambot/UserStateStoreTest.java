@@ -0,0 +1,89 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UserStateStoreTest {
+
+    @Test
+    public void testFieldsArePackedPerUser() {
+        UserStateStore store = new UserStateStore(1000, 60);
+        Assert.assertEquals(0, store.recordMessage(1L, 1000));
+        Assert.assertEquals(1000, store.recordMessage(1L, 1500));
+        Assert.assertEquals(0, store.swapMessageHash(1L, 42, 1500));
+        Assert.assertEquals(42, store.swapMessageHash(1L, 43, 1600));
+        Assert.assertEquals(1, store.incrementSpamCount(1L, 1600));
+        Assert.assertEquals(2, store.incrementSpamCount(1L, 1700));
+        store.setMode(1L, 2, 1700);
+        Assert.assertEquals(2, store.getMode(1L));
+        Assert.assertEquals(2, store.getSpamCount(1L));
+        Assert.assertEquals(0, store.getSpamCount(2L));
+        Assert.assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testSpamCountsAreObservedInOrder() throws InterruptedException {
+        UserStateStore store = new UserStateStore(1000, 60);
+        int[] last = new int[1];
+        boolean[] outOfOrder = new boolean[1];
+        // Наблюдатель вызывается под блокировкой счётчика, поэтому видит значения строго по возрастанию
+        UserStateStore.SpamCountVisitor observer = (userId, spamCount, time) -> {
+            if (spamCount != last[0] + 1) {
+                outOfOrder[0] = true;
+            }
+            last[0] = spamCount;
+        };
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int n = 0; n < 10_000; n++) {
+                    store.incrementSpamCount(1L, 1000, observer);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertFalse(outOfOrder[0]);
+        Assert.assertEquals(40_000, last[0]);
+        Assert.assertEquals(40_000, store.getSpamCount(1L));
+    }
+
+    @Test
+    public void testIdleUsersExpire() {
+        UserStateStore store = new UserStateStore(100000, 60);
+        for (long userId = 1; userId <= 5000; userId++) {
+            store.incrementSpamCount(userId, 0);
+        }
+        Assert.assertEquals(5000, store.size());
+        // Пользователь 1 остаётся активным, остальные молчат дольше TTL
+        store.recordMessage(1L, 50_000);
+        for (long userId = 1; userId <= 5000; userId++) {
+            store.getSpamCount(userId);
+            store.recordMessage(userId + 1_000_000, 100_000);
+        }
+        Assert.assertEquals(1, store.getSpamCount(1L));
+        Assert.assertEquals(0, store.getSpamCount(2L));
+        Assert.assertEquals(5001, store.size());
+    }
+
+    @Test
+    public void testSizeIsCapped() {
+        UserStateStore store = new UserStateStore(6400, 3600);
+        for (long userId = 0; userId < 100_000; userId++) {
+            store.recordMessage(userId, userId);
+        }
+        Assert.assertTrue(store.size() <= 6400);
+        Assert.assertTrue(store.getEvictionCount() >= 100_000 - 6400);
+        // Последние пользователи должны остаться в хранилище
+        Assert.assertEquals(99_999L, store.recordMessage(99_999L, 200_000));
+    }
+
+    @Test
+    public void testResetModeDoesNotCreateUser() {
+        UserStateStore store = new UserStateStore(100, 60);
+        store.setMode(5L, UserStateStore.NO_MODE, 0);
+        Assert.assertEquals(0, store.size());
+    }
+}
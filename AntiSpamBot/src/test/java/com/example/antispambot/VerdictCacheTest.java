@@ -0,0 +1,59 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VerdictCacheTest {
+
+    @Test
+    public void testStoredVerdictIsReturned() {
+        VerdictCache cache = new VerdictCache(100);
+        Assert.assertEquals(VerdictCache.MISS, cache.get(42L, 0));
+        cache.put(42L, 0, 3);
+        Assert.assertEquals(3, cache.get(42L, 0));
+        Assert.assertEquals(VerdictCache.MISS, cache.get(43L, 0));
+    }
+
+    @Test
+    public void testOtherGenerationIsMiss() {
+        VerdictCache cache = new VerdictCache(100);
+        cache.put(42L, 1, 3);
+        Assert.assertEquals(VerdictCache.MISS, cache.get(42L, 2));
+        Assert.assertEquals("Устаревшая запись удаляется", 0, cache.size());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        VerdictCache cache = new VerdictCache(1000);
+        for (long key = 1; key <= 100000; key++) {
+            cache.get(key, 0);
+            cache.put(key, 0, 0);
+        }
+        Assert.assertTrue(cache.size() <= 1000);
+    }
+
+    @Test
+    public void testFrequentKeysSurviveScan() {
+        VerdictCache cache = new VerdictCache(1000);
+        for (int round = 0; round < 5; round++) {
+            for (long key = 1; key <= 100; key++) {
+                if (cache.get(key, 0) == VerdictCache.MISS) {
+                    cache.put(key, 0, 1);
+                }
+            }
+        }
+        // Поток разовых текстов не должен вытеснить часто встречающиеся
+        for (long key = 1_000_000; key < 1_050_000; key++) {
+            if (cache.get(key, 0) == VerdictCache.MISS) {
+                cache.put(key, 0, 0);
+            }
+        }
+        int survived = 0;
+        for (long key = 1; key <= 100; key++) {
+            if (cache.get(key, 0) == 1) {
+                survived++;
+            }
+        }
+        Assert.assertTrue("Сохранилось " + survived + " из 100", survived >= 90);
+    }
+}
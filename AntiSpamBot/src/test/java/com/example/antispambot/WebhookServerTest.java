@@ -0,0 +1,52 @@
+package com.example.antispambot;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class WebhookServerTest {
+
+    private static final String UPDATE_JSON = "{\"update_id\":10,\"message\":{\"message_id\":5,\"date\":1700000000,"
+            + "\"chat\":{\"id\":-100,\"type\":\"supergroup\"},\"from\":{\"id\":7,\"is_bot\":false,\"first_name\":\"A\"},"
+            + "\"text\":\"привет\"}}";
+
+    @Test
+    public void testUpdatesAreParsedAndHandedOver() throws Exception {
+        BlockingQueue<Update> received = new LinkedBlockingQueue<>();
+        WebhookServer server = new WebhookServer("127.0.0.1", 0, "/telegram", "secret", null, null, received::add);
+        server.start();
+        try {
+            URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/telegram");
+            Assert.assertEquals(200, post(url, UPDATE_JSON, "secret"));
+            Update update = received.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(update);
+            Assert.assertEquals(Integer.valueOf(10), update.getUpdateId());
+            Assert.assertEquals("привет", update.getMessage().getText());
+
+            Assert.assertEquals(401, post(url, UPDATE_JSON, "wrong"));
+            Assert.assertEquals(400, post(url, "not json", "secret"));
+            Assert.assertTrue(received.isEmpty());
+        } finally {
+            server.close();
+        }
+    }
+
+    private static int post(URL url, String body, String secretToken) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty(WebhookServer.SECRET_TOKEN_HEADER, secretToken);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection.getResponseCode();
+    }
+}